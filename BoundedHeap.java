@@ -0,0 +1,214 @@
+
+import java.util.Comparator;
+import java.util.function.Consumer;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * Keeps the best K entries seen in a stream, where best means smallest
+ * under the comparator, i.e. the entries a MyHeap would hand out first.
+ *
+ * The entries are kept in a fixed array laid out as a heap with the worst
+ * survivor at the root. Once the heap is full, a new key that is no better
+ * than the worst is rejected after one comparison, and a better one
+ * replaces the worst in place with a single downheap. Nothing grows, so
+ * the memory used is fixed by the capacity.
+ *
+ * When the stream is done, finishSorted() sorts the survivors in place
+ * and hands them out best first.
+ */
+
+public class BoundedHeap<K,V> {
+
+	private final MyHeapEntry<K,V>[] _entries;
+	private final Comparator<K> _compare;
+	private int node_num=0;
+
+	/**
+	 * Creates an empty heap that keeps at most capacity entries.
+	 *
+	 * @param comparator to be used for heap keys
+	 * @param capacity the number of entries to keep
+	 * @throws IllegalArgumentException if comparator is null or capacity is not positive
+	 */
+	@SuppressWarnings("unchecked")
+	public BoundedHeap(Comparator<K> comparator, int capacity) {
+		if(comparator==null) {
+			throw new IllegalArgumentException("Comparator cannot be null.");
+		}
+		if(capacity<1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		_compare=comparator;
+		_entries=(MyHeapEntry<K,V>[]) new MyHeapEntry[capacity];
+	}
+
+	/**
+	 * Returns the size of the heap.
+	 * This method must run in O(1) time.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return node_num;
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 * This method must run in O(1) time.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return node_num==0;
+	}
+
+	/**
+	 * @return the most entries the heap keeps
+	 */
+	public int capacity() {
+		return _entries.length;
+	}
+
+	/**
+	 * @return true if the next insert has to reject or evict
+	 */
+	public boolean isFull() {
+		return node_num==_entries.length;
+	}
+
+	/**
+	 * Returns but does not remove the worst entry kept, the one the next
+	 * better key would evict.
+	 * This method must run in O(1) time.
+	 *
+	 * @return the entry with the largest key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> worst() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("The heap is empty!");
+		}
+		return _entries[0];
+	}
+
+	/**
+	 * Returns whether inserting the key would keep it, which lets a caller
+	 * skip building a value that would only be rejected.
+	 * This method must run in O(1) time.
+	 *
+	 * @param key to test
+	 * @return true if the heap has room or the key beats the worst entry
+	 */
+	public boolean accepts(K key) {
+		return node_num<_entries.length || _compare.compare(key,_entries[0].getKey())<0;
+	}
+
+	/**
+	 * Offers a key-value pair to the heap. While there is room it is simply
+	 * added. Once the heap is full, a key no better than the worst entry is
+	 * rejected without allocating anything; a better key takes the worst
+	 * entry's place and the worst entry is returned. Ties go to the entry
+	 * already kept.
+	 * This method must run in O(1) time for a rejected key and O(log K)
+	 * time otherwise.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the evicted entry, or null if nothing was evicted, either
+	 *         because there was room or because the key was rejected
+	 * @throws InvalidKeyException if the key is not suitable for this heap
+	 */
+	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
+		try {
+			if(node_num==_entries.length) {
+				if(_compare.compare(key,_entries[0].getKey())>=0) {
+					return null;
+				}
+				MyHeapEntry<K,V> evicted=_entries[0];
+				_entries[0]=new MyHeapEntry<K,V>(key,value);
+				downHeap(0,node_num);
+				return evicted;
+			}
+			_compare.compare(key,key);
+		}
+		catch(NullPointerException|ClassCastException e) {
+			throw new InvalidKeyException("The key is invalid.");
+		}
+		_entries[node_num]=new MyHeapEntry<K,V>(key,value);
+		upHeap(node_num);
+		node_num++;
+		return null;
+	}
+
+	/**
+	 * Sorts the entries kept in place and passes them to the consumer best
+	 * first, leaving the heap empty and ready for another stream. Sorting
+	 * reuses the heap's own array, so nothing is allocated.
+	 * This method must run in O(K log K) time.
+	 *
+	 * @param sink the consumer to hand the entries to
+	 * @return the number of entries passed on
+	 * @throws IllegalArgumentException if sink is null
+	 */
+	public int finishSorted(Consumer<? super Entry<K,V>> sink) throws IllegalArgumentException {
+		if(sink==null) {
+			throw new IllegalArgumentException("Sink cannot be null.");
+		}
+		//heapsort: the worst entry left goes to the end of the shrinking heap
+		for(int end=node_num-1;end>0;end--) {
+			MyHeapEntry<K,V> worst=_entries[0];
+			_entries[0]=_entries[end];
+			_entries[end]=worst;
+			downHeap(0,end);
+		}
+		int count=node_num;
+		node_num=0;
+		for(int i=0;i<count;i++) {
+			MyHeapEntry<K,V> entry=_entries[i];
+			_entries[i]=null;
+			sink.accept(entry);
+		}
+		return count;
+	}
+
+	/*
+	 * The array is a max-heap under the comparator: every entry is at
+	 * least as large as its children. Both sifts move a hole and write
+	 * the moving entry once, where it lands.
+	 */
+
+	private void downHeap(int slot, int size) {
+		MyHeapEntry<K,V> moving=_entries[slot];
+		K key=moving.getKey();
+		int child=2*slot+1;
+		while(child<size) {
+			if(child+1<size && _compare.compare(_entries[child+1].getKey(),_entries[child].getKey())>0) {
+				child++;
+			}
+			if(_compare.compare(_entries[child].getKey(),key)<=0) {
+				break;
+			}
+			_entries[slot]=_entries[child];
+			slot=child;
+			child=2*slot+1;
+		}
+		_entries[slot]=moving;
+	}
+
+	private void upHeap(int slot) {
+		MyHeapEntry<K,V> moving=_entries[slot];
+		K key=moving.getKey();
+		while(slot>0) {
+			int parent=(slot-1)>>>1;
+			if(_compare.compare(key,_entries[parent].getKey())<=0) {
+				break;
+			}
+			_entries[slot]=_entries[parent];
+			slot=parent;
+		}
+		_entries[slot]=moving;
+	}
+}
@@ -0,0 +1,82 @@
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * Tests the top-K BoundedHeap.
+ */
+public class BoundedHeapTest {
+
+	/**
+	 * Once full, better keys evict the worst entry and worse keys are rejected.
+	 */
+	@Test
+	public void insertEvictsWorstOrRejects() {
+		BoundedHeap<Integer, String> heap = new BoundedHeap<Integer, String>(new IntegerComparator(), 3);
+		assertTrue(heap.insert(5, "A") == null);
+		assertTrue(heap.insert(9, "B") == null);
+		assertTrue(heap.insert(7, "C") == null);
+		assertTrue(heap.isFull());
+		assertThat(heap.worst().getKey(), is(9));
+		assertTrue(!heap.accepts(9));
+		assertTrue(heap.insert(9, "D") == null);
+		assertTrue(heap.insert(12, "E") == null);
+		assertThat(heap.size(), is(3));
+		Entry<Integer,String> evicted = heap.insert(1, "F");
+		assertThat(evicted.getValue(), is("B"));
+		assertThat(heap.worst().getKey(), is(7));
+		final List<String> values = new ArrayList<String>();
+		assertThat(heap.finishSorted(e -> values.add(e.getValue())), is(3));
+		assertThat(values, is(Arrays.asList("F", "A", "C")));
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * The survivors of a long random stream are exactly its K smallest keys, in order.
+	 */
+	@Test
+	public void keepsSmallestKeysOfStream() {
+		BoundedHeap<Integer, String> heap = new BoundedHeap<Integer, String>(new IntegerComparator(), 100);
+		List<Integer> all = new ArrayList<Integer>();
+		Random random = new Random(14);
+		for(int i=0;i<20000;i++) {
+			int key=random.nextInt(1000000);
+			all.add(key);
+			heap.insert(key, null);
+		}
+		Collections.sort(all);
+		final List<Integer> kept = new ArrayList<Integer>();
+		heap.finishSorted(e -> kept.add(e.getKey()));
+		assertThat(kept, is(all.subList(0, 100)));
+	}
+
+	@Test(expected=EmptyPriorityQueueException.class)
+	public void testWorstThrowsEmptyPriority() {
+		BoundedHeap<Integer, String> heap = new BoundedHeap<Integer, String>(new IntegerComparator(), 3);
+		heap.worst();
+	}
+
+	@Test(expected=InvalidKeyException.class)
+	public void testInsertThrowsInvalidKeyException() {
+		BoundedHeap<Integer, String> heap = new BoundedHeap<Integer, String>(new IntegerComparator(), 3);
+		heap.insert(null, "A");
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testZeroCapacityIsRejected() {
+		new BoundedHeap<Integer, String>(new IntegerComparator(), 0);
+	}
+}
@@ -0,0 +1,312 @@
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A thread-safe adaptable priority queue with exact ordering, built on
+ * one MyHeap by flat combining. Instead of every thread taking a lock
+ * and touching the heap in turn, each thread publishes its request in
+ * its own slot; whichever thread gets the combiner lock applies every
+ * pending request in one pass while the others wait on their own slot.
+ *
+ * This keeps the heap hot in one core's cache, turns many lock handoffs
+ * into one, and lets the combiner load all inserts of a pass through
+ * MyHeap.insertAll, which rebuilds bottom-up when the batch is large.
+ * Requests in the same pass are concurrent, so applying the inserts
+ * first is a valid order. An insert either lands and returns its entry
+ * or throws and leaves nothing behind: if the comparator throws during
+ * a batch, the heap takes the whole batch back out and the combiner
+ * retries its requests one at a time, so only the inserts that fail on
+ * their own throw, and no entry is left in the heap without a handle.
+ *
+ * Entries are the MyHeapEntry objects of the underlying heap and can
+ * be used from any thread. As in the flat-combining paper, each slot is
+ * stamped with the combining pass that last served it, and every so
+ * often the combiner drops slots that have sat idle for a whole sweep
+ * interval. A thread whose slot was dropped publishes it again on its
+ * next request, so the slots of idle, pooled or finished threads do not
+ * pile up and slow down every pass.
+ */
+
+public class ConcurrentAdaptableHeap<K,V> implements AdaptablePriorityQueue<K,V> {
+
+	private static final int INSERT=1;
+	private static final int REMOVE_MIN=2;
+	private static final int REMOVE=3;
+	private static final int REPLACE_KEY=4;
+	private static final int REPLACE_VALUE=5;
+	private static final int MIN=6;
+
+	//how often a waiting thread spins before giving up its time slice
+	private static final int SPINS_PER_YIELD=64;
+	//combining passes between sweeps of idle slots
+	static final int SWEEP_INTERVAL=1024;
+
+	private final MyHeap<K,V> _heap;
+	private final ReentrantLock _combiner=new ReentrantLock();
+	//taken only to add a slot to _published or drop one from it
+	private final ReentrantLock _membership=new ReentrantLock();
+	private final List<Request> _published=new CopyOnWriteArrayList<Request>();
+	private final ThreadLocal<Request> _mine=new ThreadLocal<Request>() {
+		@Override
+		protected Request initialValue() {
+			return new Request();
+		}
+	};
+	//only touched by the thread holding _combiner
+	private final List<Request> _inserts=new ArrayList<Request>();
+	private int _pass=0;
+	private volatile int node_num=0;
+
+	//a thread's publication slot; it doubles as the key/value pair handed to insertAll
+	private final class Request implements Entry<K,V> {
+		int op;
+		K key;
+		V value;
+		Entry<K,V> entry;
+		Object result;
+		RuntimeException error;
+		volatile boolean pending;
+		//whether the slot is in _published; only changed under _membership
+		volatile boolean active;
+		//the combining pass that last served this slot
+		int age;
+
+		public K getKey() {
+			return key;
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		void finish(Object result_, RuntimeException error_) {
+			age=_pass;
+			result=result_;
+			error=error_;
+			pending=false;
+		}
+	}
+
+	/**
+	 * Creates an empty heap with the given comparator, backed by an
+	 * array-backed MyHeap.
+	 *
+	 * @param comparator to be used for heap keys
+	 */
+	public ConcurrentAdaptableHeap(Comparator<K> comparator) {
+		_heap=new MyHeap<K,V>(comparator,MyHeap.Layout.ARRAY);
+	}
+
+	/**
+	 * Returns the size of the heap as of the last combining pass.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return node_num;
+	}
+
+	public boolean isEmpty() {
+		return node_num==0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public Entry<K,V> min() throws EmptyPriorityQueueException {
+		return (Entry<K,V>) submit(MIN,null,null,null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
+		return (Entry<K,V>) submit(INSERT,key,value,null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
+		return (Entry<K,V>) submit(REMOVE_MIN,null,null,null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+		return (Entry<K,V>) submit(REMOVE,null,null,entry);
+	}
+
+	@SuppressWarnings("unchecked")
+	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		return (K) submit(REPLACE_KEY,key,null,entry);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {
+		return (V) submit(REPLACE_VALUE,null,value,entry);
+	}
+
+	//publishes a request and waits until some combiner, possibly this thread, has applied it
+	private Object submit(int op, K key, V value, Entry<K,V> entry) {
+		Request request=_mine.get();
+		request.op=op;
+		request.key=key;
+		request.value=value;
+		request.entry=entry;
+		request.pending=true;
+		//read after pending is set, so a sweep either sees the request or leaves the slot to be republished here
+		if(!request.active) {
+			publish(request);
+		}
+		int spins=0;
+		while(request.pending) {
+			if(_combiner.tryLock()) {
+				try {
+					combine();
+				}
+				finally {
+					_combiner.unlock();
+				}
+			}
+			else if(++spins%SPINS_PER_YIELD==0) {
+				Thread.yield();
+			}
+			else {
+				Thread.onSpinWait();
+			}
+		}
+		Object result=request.result;
+		RuntimeException error=request.error;
+		request.key=null;
+		request.value=null;
+		request.entry=null;
+		request.result=null;
+		request.error=null;
+		if(error!=null) {
+			throw error;
+		}
+		return result;
+	}
+
+	//applies every pending request; must hold _combiner
+	private void combine() {
+		_pass++;
+		for(Request request : _published) {
+			if(request.pending && request.op==INSERT) {
+				_inserts.add(request);
+			}
+		}
+		if(!_inserts.isEmpty()) {
+			try {
+				insertBatch();
+			}
+			finally {
+				_inserts.clear();
+			}
+		}
+		for(Request request : _published) {
+			if(request.pending) {
+				apply(request);
+			}
+		}
+		node_num=_heap.size();
+		if(_pass%SWEEP_INTERVAL==0) {
+			sweep();
+		}
+	}
+
+	private void publish(Request request) {
+		_membership.lock();
+		try {
+			if(!request.active) {
+				request.active=true;
+				_published.add(request);
+			}
+		}
+		finally {
+			_membership.unlock();
+		}
+	}
+
+	//drops the slots no pass has served for a whole interval; must hold _combiner
+	private void sweep() {
+		_membership.lock();
+		try {
+			for(Request request : _published) {
+				if(_pass-request.age<SWEEP_INTERVAL || request.pending) {
+					continue;
+				}
+				//cleared before pending is read again, so a request published meanwhile is never lost
+				request.active=false;
+				if(request.pending) {
+					request.active=true;
+				}
+				else {
+					_published.remove(request);
+				}
+			}
+		}
+		finally {
+			_membership.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of publication slots currently in the list
+	 */
+	int slots() {
+		return _published.size();
+	}
+
+	//loads the pending inserts in one pass; every one of them is finished on return, even if the comparator throws
+	private void insertBatch() {
+		List<Entry<K,V>> created;
+		try {
+			created=_heap.insertAllOrNothing(_inserts);
+		}
+		catch(RuntimeException e) {
+			//the heap took the whole batch back, so retry each request on its own for its own answer
+			for(Request request : _inserts) {
+				apply(request);
+			}
+			return;
+		}
+		for(int i=0;i<created.size();i++) {
+			_inserts.get(i).finish(created.get(i),null);
+		}
+	}
+
+	private void apply(Request request) {
+		try {
+			switch(request.op) {
+			case INSERT:
+				//all or nothing here too, so a failed insert leaves no entry without a handle
+				request.finish(_heap.insertAllOrNothing(Collections.singletonList(request)).get(0),null);
+				break;
+			case REMOVE_MIN:
+				request.finish(_heap.removeMin(),null);
+				break;
+			case REMOVE:
+				request.finish(_heap.remove(request.entry),null);
+				break;
+			case REPLACE_KEY:
+				request.finish(_heap.replaceKey(request.entry,request.key),null);
+				break;
+			case REPLACE_VALUE:
+				request.finish(_heap.replaceValue(request.entry,request.value),null);
+				break;
+			default:
+				request.finish(_heap.min(),null);
+				break;
+			}
+		}
+		catch(RuntimeException e) {
+			request.finish(null,e);
+		}
+	}
+}
@@ -0,0 +1,210 @@
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * Tests the flat-combining ConcurrentAdaptableHeap. Unlike the MultiQueueHeap
+ * its ordering is exact, so removals can be checked key by key.
+ */
+public class ConcurrentAdaptableHeapTest {
+
+	@Test
+	public void testRemoveMinHeapOrder() {
+		ConcurrentAdaptableHeap<Integer, String> heap = new ConcurrentAdaptableHeap<Integer, String>(new IntegerComparator());
+		heap.insert(11, "A");
+		Entry<Integer,String> b=heap.insert(13, "B");
+		heap.insert(64, "C");
+		heap.insert(16, "D");
+		heap.replaceKey(b, 70);
+		assertThat(heap.replaceValue(b, "E"), is("B"));
+		assertThat(heap.min().getKey(), is(11));
+		assertThat(heap.removeMin().getKey(), is(11));
+		assertThat(heap.removeMin().getKey(), is(16));
+		assertThat(heap.removeMin().getKey(), is(64));
+		assertThat(heap.remove(b).getValue(), is("E"));
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * Exceptions thrown by the combiner reach the thread that made the request.
+	 */
+	@Test(expected=InvalidKeyException.class)
+	public void invalidKeyIsThrownToCaller() {
+		ConcurrentAdaptableHeap<Integer, String> heap = new ConcurrentAdaptableHeap<Integer, String>(new IntegerComparator());
+		heap.insert(null, "A");
+	}
+
+	@Test(expected=EmptyPriorityQueueException.class)
+	public void removeMinFromEmptyHeap() {
+		ConcurrentAdaptableHeap<Integer, String> heap = new ConcurrentAdaptableHeap<Integer, String>(new IntegerComparator());
+		heap.removeMin();
+	}
+
+	/**
+	 * Producers insert and bump keys concurrently; afterwards the heap drains in exact order.
+	 */
+	@Test
+	public void concurrentProducersThenOrderedDrain() throws InterruptedException {
+		final ConcurrentAdaptableHeap<Integer, String> heap = new ConcurrentAdaptableHeap<Integer, String>(new IntegerComparator());
+		Thread[] threads = new Thread[8];
+		for(int t=0;t<threads.length;t++) {
+			final int seed=t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					List<Entry<Integer,String>> mine = new ArrayList<Entry<Integer,String>>();
+					for(int i=0;i<1000;i++) {
+						mine.add(heap.insert((i*31+seed)%997, "V"));
+					}
+					for(int i=0;i<1000;i+=10) {
+						heap.replaceKey(mine.get(i), -i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(heap.size(), is(8000));
+		int last=Integer.MIN_VALUE;
+		while(!heap.isEmpty()) {
+			int key=heap.removeMin().getKey();
+			assertTrue(key>=last);
+			last=key;
+		}
+	}
+
+	/**
+	 * A comparator that fails partway through a batched insert reaches the caller, and the
+	 * failed insert leaves nothing in the heap, now or in a later pass.
+	 */
+	@Test
+	public void comparatorFailureDoesNotWedgeTheBatch() {
+		final boolean[] failing = {false};
+		ConcurrentAdaptableHeap<Integer, String> heap = new ConcurrentAdaptableHeap<Integer, String>(new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if(failing[0] && !a.equals(b)) {
+					throw new IllegalStateException("comparator failed");
+				}
+				return a.compareTo(b);
+			}
+		});
+		heap.insert(11, "A");
+		failing[0] = true;
+		try {
+			heap.insert(13, "B");
+			fail();
+		}
+		catch(IllegalStateException e) {
+			assertThat(e.getMessage(), is("comparator failed"));
+		}
+		failing[0] = false;
+		heap.insert(12, "C");
+		assertThat(heap.size(), is(2));
+		assertThat(heap.removeMin().getKey(), is(11));
+		assertThat(heap.removeMin().getKey(), is(12));
+		assertTrue(heap.isEmpty());
+	}
+
+	/**
+	 * When the comparator throws mid-batch, every caller still gets its own answer: inserts that
+	 * fail on their own throw and leave nothing behind, and every other insert returns a handle
+	 * that stays usable.
+	 */
+	@Test
+	public void comparatorFailureMidBatchAnswersEachCaller() throws InterruptedException {
+		//any comparison between a poisoned key and another key throws
+		final ConcurrentAdaptableHeap<Integer, String> heap = new ConcurrentAdaptableHeap<Integer, String>(new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if(!a.equals(b) && (a%50==7 || b%50==7)) {
+					throw new IllegalStateException("poisoned");
+				}
+				return a.compareTo(b);
+			}
+		});
+		heap.insert(-1, "floor");
+		final List<List<Entry<Integer,String>>> handles = new ArrayList<List<Entry<Integer,String>>>();
+		final int[] failures = new int[8];
+		Thread[] threads = new Thread[8];
+		for(int t=0;t<threads.length;t++) {
+			final int seed=t;
+			final List<Entry<Integer,String>> mine = new ArrayList<Entry<Integer,String>>();
+			handles.add(mine);
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					for(int i=0;i<500;i++) {
+						int key=(i*37+seed*101)%1000;
+						try {
+							mine.add(heap.insert(key, "V"));
+							assertTrue(key%50!=7);
+						}
+						catch(IllegalStateException e) {
+							assertThat(key%50, is(7));
+							failures[seed]++;
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		int inserted=0;
+		for(int t=0;t<threads.length;t++) {
+			assertThat(failures[t]+handles.get(t).size(), is(500));
+			inserted+=handles.get(t).size();
+		}
+		assertThat(heap.size(), is(inserted+1));
+		for(List<Entry<Integer,String>> mine : handles) {
+			for(Entry<Integer,String> entry : mine) {
+				heap.replaceKey(entry, entry.getKey()+1000);
+			}
+		}
+		assertThat(heap.removeMin().getKey(), is(-1));
+		int last=Integer.MIN_VALUE;
+		while(!heap.isEmpty()) {
+			int key=heap.removeMin().getKey();
+			assertTrue(key>=last && key>=1000);
+			last=key;
+		}
+	}
+
+	/**
+	 * The slots of threads that have finished are swept, and a swept thread can publish again.
+	 */
+	@Test
+	public void idleSlotsAreSwept() throws InterruptedException {
+		final ConcurrentAdaptableHeap<Integer, String> heap = new ConcurrentAdaptableHeap<Integer, String>(new IntegerComparator());
+		for(int t=0;t<20;t++) {
+			final int key=t;
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					heap.insert(key, "V");
+				}
+			});
+			thread.start();
+			thread.join();
+		}
+		assertThat(heap.slots(), is(20));
+		Entry<Integer,String> mine = heap.insert(-1, "M");
+		for(int i=0;i<2*ConcurrentAdaptableHeap.SWEEP_INTERVAL;i++) {
+			heap.replaceValue(mine, "M"+i);
+		}
+		assertThat(heap.slots(), is(1));
+		assertThat(heap.removeMin().getKey(), is(-1));
+		assertThat(heap.size(), is(20));
+	}
+}
@@ -0,0 +1,220 @@
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Records what a MyHeap spends its time on: how many of each operation
+ * ran, how many comparator calls and entry position writes they made,
+ * how many levels each upHeap and downHeap walked, and how long each
+ * operation took. Attach one with MyHeap.setMetrics; a heap without one
+ * only pays a null check per operation.
+ *
+ * Depths and latencies are kept in power-of-two histograms: bucket 0
+ * counts zeros and bucket b counts values in [2^(b-1), 2^b). Like MyHeap
+ * itself this class is not thread-safe, so give each heap its own, and
+ * call snapshot() from the thread that uses the heap.
+ */
+
+public class HeapMetrics {
+
+	/**
+	 * The operations that get a count and a latency histogram. insertAll,
+	 * which the heapify factories use, and meld count once per call, with
+	 * the entries they added in entries(op). The drains (removeMin(k),
+	 * drainTo, drainWhile) take their entries out as one batch, and count
+	 * once per call as a DRAIN, with the entries they removed.
+	 */
+	public enum Op { INSERT, REMOVE_MIN, REPLACE_KEY, REMOVE, INSERT_ALL, MELD, DRAIN }
+
+	private static final int BUCKETS=64;
+
+	private final long[] _counts=new long[Op.values().length];
+	private final long[] _entries=new long[Op.values().length];
+	private final long[][] _latency=new long[Op.values().length][BUCKETS];
+	private final long[] _upDepth=new long[BUCKETS];
+	private final long[] _downDepth=new long[BUCKETS];
+	private long _comparisons=0;
+	private long _positionWrites=0;
+
+	/**
+	 * An immutable copy of the metrics at one point in time.
+	 */
+	public static final class Snapshot {
+		private final long[] counts;
+		private final long[] entries;
+		private final long[][] latency;
+		private final long[] upDepth;
+		private final long[] downDepth;
+		private final long comparisons;
+		private final long positionWrites;
+
+		private Snapshot(HeapMetrics metrics) {
+			counts=metrics._counts.clone();
+			entries=metrics._entries.clone();
+			latency=new long[metrics._latency.length][];
+			for(int i=0;i<latency.length;i++) {
+				latency[i]=metrics._latency[i].clone();
+			}
+			upDepth=metrics._upDepth.clone();
+			downDepth=metrics._downDepth.clone();
+			comparisons=metrics._comparisons;
+			positionWrites=metrics._positionWrites;
+		}
+
+		/**
+		 * @return how many times the operation ran
+		 */
+		public long count(Op op) {
+			return counts[op.ordinal()];
+		}
+
+		/**
+		 * @return how many entries the operation added or removed, over all the times it ran
+		 */
+		public long entries(Op op) {
+			return entries[op.ordinal()];
+		}
+
+		/**
+		 * @return the number of comparator calls, by every operation including batches
+		 */
+		public long comparisons() {
+			return comparisons;
+		}
+
+		/**
+		 * @return the number of times an entry's position or slot was written while sifting
+		 */
+		public long positionWrites() {
+			return positionWrites;
+		}
+
+		/**
+		 * @return the latency histogram of the operation, in nanoseconds
+		 */
+		public long[] latencyHistogram(Op op) {
+			return latency[op.ordinal()].clone();
+		}
+
+		/**
+		 * @return the histogram of levels walked by upHeap
+		 */
+		public long[] upHeapDepths() {
+			return upDepth.clone();
+		}
+
+		/**
+		 * @return the histogram of levels walked by downHeap
+		 */
+		public long[] downHeapDepths() {
+			return downDepth.clone();
+		}
+
+		/**
+		 * Returns an upper bound on the given latency percentile, accurate
+		 * to the power-of-two bucket it falls in.
+		 *
+		 * @param op the operation to look at
+		 * @param percentile between 0 and 100
+		 * @return nanoseconds, or 0 if the operation never ran
+		 */
+		public long latencyPercentile(Op op, double percentile) {
+			long[] histogram=latency[op.ordinal()];
+			long total=counts[op.ordinal()];
+			long wanted=(long) Math.ceil(total*percentile/100.0);
+			long seen=0;
+			for(int b=0;b<BUCKETS;b++) {
+				seen+=histogram[b];
+				if(seen>=wanted && seen>0) {
+					return b==0 ? 0 : (1L<<b)-1;
+				}
+			}
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder out=new StringBuilder();
+			for(Op op : Op.values()) {
+				out.append(op).append(": count=").append(count(op)).append(" entries=").append(entries(op))
+					.append(" p50<=").append(latencyPercentile(op,50)).append("ns")
+					.append(" p99<=").append(latencyPercentile(op,99)).append("ns\n");
+			}
+			out.append("comparisons=").append(comparisons).append(" positionWrites=").append(positionWrites).append('\n');
+			out.append("upHeap depths=").append(Arrays.toString(trim(upDepth))).append('\n');
+			out.append("downHeap depths=").append(Arrays.toString(trim(downDepth)));
+			return out.toString();
+		}
+
+		//drops the empty buckets at the top of a histogram for printing
+		private static long[] trim(long[] histogram) {
+			int length=histogram.length;
+			while(length>0 && histogram[length-1]==0) {
+				length--;
+			}
+			return Arrays.copyOf(histogram,length);
+		}
+	}
+
+	/**
+	 * @return a copy of everything recorded so far
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * Clears everything recorded so far.
+	 */
+	public void reset() {
+		Arrays.fill(_counts,0);
+		Arrays.fill(_entries,0);
+		for(long[] histogram : _latency) {
+			Arrays.fill(histogram,0);
+		}
+		Arrays.fill(_upDepth,0);
+		Arrays.fill(_downDepth,0);
+		_comparisons=0;
+		_positionWrites=0;
+	}
+
+	/*
+	 * Recording, called by MyHeap.
+	 */
+
+	void recordOperation(Op op, long nanos) {
+		recordOperation(op,nanos,1);
+	}
+
+	void recordOperation(Op op, long nanos, int entries) {
+		_counts[op.ordinal()]++;
+		_entries[op.ordinal()]+=entries;
+		_latency[op.ordinal()][bucket(nanos)]++;
+	}
+
+	void recordPositionWrites(int writes) {
+		_positionWrites+=writes;
+	}
+
+	void recordUpHeap(int levels) {
+		_upDepth[bucket(levels)]++;
+	}
+
+	void recordDownHeap(int levels) {
+		_downDepth[bucket(levels)]++;
+	}
+
+	//wraps a comparator so that every call is counted here
+	<K> Comparator<K> counting(final Comparator<K> comparator) {
+		return new Comparator<K>() {
+			public int compare(K a, K b) {
+				_comparisons++;
+				return comparator.compare(a,b);
+			}
+		};
+	}
+
+	private static int bucket(long value) {
+		return value<=0 ? 0 : 64-Long.numberOfLeadingZeros(value);
+	}
+}
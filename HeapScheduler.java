@@ -0,0 +1,371 @@
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.datastructures.Entry;
+
+/**
+ * A timer built on MyHeap: tasks are kept in a heap keyed by their due
+ * time, and one timer thread sleeps until the earliest of them is due,
+ * then removes everything that is due in one batch and hands it to an
+ * executor.
+ *
+ * The timer thread only wakes when something is due, or when a task is
+ * scheduled (or rescheduled) ahead of the one it is waiting for, so a
+ * large number of pending timers costs nothing while nothing fires.
+ * Cancelling is O(1): the heap runs with lazy deletion, so cancelled
+ * tasks stay in it as tombstones until they reach the top or are
+ * compacted away.
+ *
+ * Due times are in System.nanoTime() terms. By default tasks run on
+ * virtual threads where the JVM has them (Java 21 and later) and on a
+ * cached pool of daemon threads otherwise. If the executor refuses a
+ * task, say because it was shut down or its queue is full, that task is
+ * dropped and reported to the timer thread's uncaught exception handler;
+ * the rest of the batch and later tasks still fire.
+ */
+
+public class HeapScheduler implements AutoCloseable {
+
+	private static final Comparator<Long> DUE=new Comparator<Long>() {
+		public int compare(Long a, Long b) {
+			return Long.compare(a,b);
+		}
+	};
+
+	//the timer thread is awake and bound to look at the heap again anyway, waiting
+	//until _wakeAt, or waiting for anything at all to be scheduled
+	private static final int AWAKE=0;
+	private static final int TIMED=1;
+	private static final int IDLE=2;
+
+	private final MyHeap<Long,Handle> _heap=new MyHeap<Long,Handle>(DUE,MyHeap.Layout.ARRAY);
+	private final ReentrantLock _lock=new ReentrantLock();
+	private final Condition _changed=_lock.newCondition();
+	private final Executor _executor;
+	//shut down along with the scheduler if the scheduler created it
+	private final ExecutorService _ownExecutor;
+	private final Thread _timer;
+	//what the timer thread is doing
+	private int _waiting=AWAKE;
+	private long _wakeAt;
+	private boolean _shutdown=false;
+	private long _wakeups=0;
+	private long _rejected=0;
+
+	/**
+	 * A scheduled task, which can be cancelled or moved until it fires.
+	 */
+	public final class Handle {
+		private final Runnable task;
+		private Entry<Long,Handle> entry;
+
+		private Handle(Runnable task_) {
+			task=task_;
+		}
+
+		/**
+		 * Stops the task from firing.
+		 *
+		 * @return true if the task was pending and now will not run
+		 */
+		public boolean cancel() {
+			_lock.lock();
+			try {
+				if(entry==null) {
+					return false;
+				}
+				_heap.remove(entry);
+				entry=null;
+				return true;
+			}
+			finally {
+				_lock.unlock();
+			}
+		}
+
+		/**
+		 * Moves the task to a new due time.
+		 *
+		 * @param dueTime the new System.nanoTime() to fire at
+		 * @return true if the task was pending and has been moved
+		 */
+		public boolean reschedule(long dueTime) {
+			_lock.lock();
+			try {
+				if(entry==null) {
+					return false;
+				}
+				_heap.replaceKey(entry,dueTime);
+				wakeIfEarlier(dueTime);
+				return true;
+			}
+			finally {
+				_lock.unlock();
+			}
+		}
+
+		/**
+		 * @return whether the task is still waiting to fire
+		 */
+		public boolean isPending() {
+			_lock.lock();
+			try {
+				return entry!=null;
+			}
+			finally {
+				_lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Creates a scheduler that runs tasks on virtual threads where the JVM
+	 * supports them, and on a cached pool of daemon threads otherwise.
+	 */
+	public HeapScheduler() {
+		this(null);
+	}
+
+	/**
+	 * Creates a scheduler that hands due tasks to the given executor. The
+	 * executor is called from the timer thread, so one that runs tasks in
+	 * place delays everything behind them.
+	 *
+	 * @param executor to run tasks on, or null for the default
+	 */
+	public HeapScheduler(Executor executor) {
+		this(executor,null);
+	}
+
+	/**
+	 * Creates a scheduler that hands due tasks to the given executor and
+	 * reports tasks it could not hand over to the given handler.
+	 *
+	 * @param executor to run tasks on, or null for the default
+	 * @param handler to report refused tasks to, or null for the default one
+	 */
+	public HeapScheduler(Executor executor, Thread.UncaughtExceptionHandler handler) {
+		_heap.setLazyDeleteRatio(0.5);
+		if(executor==null) {
+			_ownExecutor=defaultExecutor();
+			_executor=_ownExecutor;
+		}
+		else {
+			_ownExecutor=null;
+			_executor=executor;
+		}
+		_timer=new Thread(this::runTimer,"HeapScheduler timer");
+		_timer.setDaemon(true);
+		if(handler!=null) {
+			_timer.setUncaughtExceptionHandler(handler);
+		}
+		_timer.start();
+	}
+
+	/**
+	 * Schedules a task to run once the given time has come.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param task to run
+	 * @param dueTime the System.nanoTime() to fire at
+	 * @return a handle to cancel or reschedule the task with
+	 * @throws IllegalArgumentException if task is null
+	 * @throws IllegalStateException if the scheduler has been shut down
+	 */
+	public Handle schedule(Runnable task, long dueTime) {
+		if(task==null) {
+			throw new IllegalArgumentException("Task cannot be null.");
+		}
+		Handle handle=new Handle(task);
+		_lock.lock();
+		try {
+			if(_shutdown) {
+				throw new IllegalStateException("The scheduler has been shut down.");
+			}
+			handle.entry=_heap.insert(dueTime,handle);
+			wakeIfEarlier(dueTime);
+		}
+		finally {
+			_lock.unlock();
+		}
+		return handle;
+	}
+
+	/**
+	 * Schedules a task to run after the given delay.
+	 *
+	 * @param task to run
+	 * @param delay how long from now to fire
+	 * @param unit of the delay
+	 * @return a handle to cancel or reschedule the task with
+	 */
+	public Handle schedule(Runnable task, long delay, TimeUnit unit) {
+		return schedule(task,System.nanoTime()+unit.toNanos(delay));
+	}
+
+	/**
+	 * @return the number of tasks waiting to fire
+	 */
+	public int pending() {
+		_lock.lock();
+		try {
+			return _heap.size();
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * @return how many times the timer thread has woken up so far
+	 */
+	public long wakeups() {
+		_lock.lock();
+		try {
+			return _wakeups;
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * @return how many due tasks the executor has refused so far
+	 */
+	public long rejected() {
+		_lock.lock();
+		try {
+			return _rejected;
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops the timer. Pending tasks never fire; tasks already handed to
+	 * the executor still run. A default executor is shut down as well.
+	 */
+	public void close() {
+		_lock.lock();
+		try {
+			_shutdown=true;
+			_changed.signal();
+		}
+		finally {
+			_lock.unlock();
+		}
+		try {
+			_timer.join();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(_ownExecutor!=null) {
+			_ownExecutor.shutdown();
+		}
+	}
+
+	//must hold the lock; compares due times as the wait loop does, so it holds across nanoTime overflow
+	private void wakeIfEarlier(long dueTime) {
+		if(_waiting==IDLE || (_waiting==TIMED && dueTime-_wakeAt<0)) {
+			_waiting=TIMED;
+			_wakeAt=dueTime;
+			_changed.signal();
+		}
+	}
+
+	private void runTimer() {
+		List<Handle> due=new ArrayList<Handle>();
+		while(true) {
+			_lock.lock();
+			try {
+				while(!_shutdown) {
+					long now=System.nanoTime();
+					if(!_heap.isEmpty() && _heap.min().getKey()-now<=0) {
+						break;
+					}
+					if(_heap.isEmpty()) {
+						_waiting=IDLE;
+						_changed.awaitUninterruptibly();
+					}
+					else {
+						_waiting=TIMED;
+						_wakeAt=_heap.min().getKey();
+						try {
+							_changed.awaitNanos(_wakeAt-now);
+						}
+						catch(InterruptedException e) {
+							//only close() stops the timer
+						}
+					}
+					_wakeups++;
+				}
+				if(_shutdown) {
+					return;
+				}
+				//everything due by now goes out in one batch
+				final long now=System.nanoTime();
+				_heap.drainWhile(dueTime -> dueTime-now<=0,entry -> {
+					entry.getValue().entry=null;
+					due.add(entry.getValue());
+				});
+				_waiting=AWAKE;
+			}
+			finally {
+				_lock.unlock();
+			}
+			for(Handle handle : due) {
+				try {
+					_executor.execute(handle.task);
+				}
+				catch(RuntimeException e) {
+					//a refused task is lost, but the timer and the rest of the batch are not
+					refused(e);
+				}
+			}
+			due.clear();
+		}
+	}
+
+	private void refused(RuntimeException e) {
+		_lock.lock();
+		try {
+			_rejected++;
+		}
+		finally {
+			_lock.unlock();
+		}
+		try {
+			_timer.getUncaughtExceptionHandler().uncaughtException(_timer,e);
+		}
+		catch(RuntimeException ignored) {
+			//a failing handler must not stop the timer either
+		}
+	}
+
+	//virtual threads are looked up reflectively so that this still compiles and runs before Java 21
+	private static ExecutorService defaultExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch(ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable task) {
+					Thread thread=new Thread(task,"HeapScheduler task");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,135 @@
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the HeapScheduler timer, running tasks on the timer thread so their order is observable.
+ */
+public class HeapSchedulerTest {
+
+	/**
+	 * Tasks fire in due order, no earlier than they are due, whatever order they were scheduled in.
+	 */
+	@Test
+	public void tasksFireInDueOrder() throws InterruptedException {
+		final List<Integer> fired = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(5);
+		HeapScheduler scheduler = new HeapScheduler(Runnable::run);
+		try {
+			final long start = System.nanoTime();
+			int[] delays = {40, 10, 30, 50, 20};
+			for(final int delay : delays) {
+				scheduler.schedule(() -> {
+					assertTrue(System.nanoTime()-start >= TimeUnit.MILLISECONDS.toNanos(delay));
+					fired.add(delay);
+					done.countDown();
+				}, start+TimeUnit.MILLISECONDS.toNanos(delay));
+			}
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertThat(fired.toString(), is("[10, 20, 30, 40, 50]"));
+			assertThat(scheduler.pending(), is(0));
+		}
+		finally {
+			scheduler.close();
+		}
+	}
+
+	/**
+	 * A cancelled task never runs, and a rescheduled one runs at its new time.
+	 */
+	@Test
+	public void cancelAndReschedule() throws InterruptedException {
+		final List<String> fired = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch done = new CountDownLatch(2);
+		HeapScheduler scheduler = new HeapScheduler(Runnable::run);
+		try {
+			long start = System.nanoTime();
+			HeapScheduler.Handle cancelled = scheduler.schedule(() -> fired.add("A"), start+TimeUnit.MILLISECONDS.toNanos(20));
+			HeapScheduler.Handle moved = scheduler.schedule(() -> { fired.add("B"); done.countDown(); }, start+TimeUnit.SECONDS.toNanos(60));
+			scheduler.schedule(() -> { fired.add("C"); done.countDown(); }, start+TimeUnit.MILLISECONDS.toNanos(60));
+			assertTrue(cancelled.cancel());
+			assertTrue(!cancelled.cancel());
+			assertTrue(moved.reschedule(start+TimeUnit.MILLISECONDS.toNanos(30)));
+			assertThat(scheduler.pending(), is(2));
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertThat(fired.toString(), is("[B, C]"));
+			assertTrue(!moved.isPending());
+			assertTrue(!moved.reschedule(start));
+			assertTrue(!moved.cancel());
+		}
+		finally {
+			scheduler.close();
+		}
+	}
+
+	/**
+	 * Scheduling behind the earliest task does not wake the timer.
+	 */
+	@Test
+	public void laterTasksDoNotWakeTimer() throws InterruptedException {
+		HeapScheduler scheduler = new HeapScheduler(Runnable::run);
+		try {
+			long start = System.nanoTime();
+			scheduler.schedule(() -> {}, start+TimeUnit.SECONDS.toNanos(60));
+			Thread.sleep(50);
+			long wakeups = scheduler.wakeups();
+			for(int i=0;i<10000;i++) {
+				scheduler.schedule(() -> {}, start+TimeUnit.SECONDS.toNanos(61+i));
+			}
+			Thread.sleep(50);
+			assertThat(scheduler.wakeups(), is(wakeups));
+			assertThat(scheduler.pending(), is(10001));
+		}
+		finally {
+			scheduler.close();
+		}
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void scheduleAfterCloseIsRejected() {
+		HeapScheduler scheduler = new HeapScheduler();
+		scheduler.close();
+		scheduler.schedule(() -> {}, 1, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * A task the executor refuses is reported, and neither the rest of its batch nor later tasks are lost.
+	 */
+	@Test
+	public void refusedTaskDoesNotStopTheTimer() throws InterruptedException {
+		final List<String> fired = Collections.synchronizedList(new ArrayList<String>());
+		final List<Throwable> reported = Collections.synchronizedList(new ArrayList<Throwable>());
+		final CountDownLatch done = new CountDownLatch(2);
+		HeapScheduler scheduler = new HeapScheduler(task -> {
+			if(fired.isEmpty() && reported.isEmpty()) {
+				throw new RejectedExecutionException("full");
+			}
+			task.run();
+		}, (thread, e) -> reported.add(e));
+		try {
+			long due = System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(20);
+			scheduler.schedule(() -> fired.add("A"), due);
+			scheduler.schedule(() -> { fired.add("B"); done.countDown(); }, due+1);
+			Thread.sleep(100);
+			scheduler.schedule(() -> { fired.add("C"); done.countDown(); }, 1, TimeUnit.MILLISECONDS);
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertThat(fired.toString(), is("[B, C]"));
+			assertThat(reported.size(), is(1));
+			assertTrue(reported.get(0) instanceof RejectedExecutionException);
+			assertThat(scheduler.rejected(), is(1L));
+		}
+		finally {
+			scheduler.close();
+		}
+	}
+}
@@ -0,0 +1,331 @@
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a MyHeap to a channel in a compact binary form and reads it back.
+ *
+ * The entries are written in level order, the order the complete tree is
+ * filled in, so reading appends each one as the new last node and gets
+ * the same tree back in O(n) time with no sifting, only one comparison
+ * per entry against its parent to catch a snapshot that is out of order.
+ * Keys and values are written by pluggable Codecs; the common ones are
+ * provided as constants.
+ *
+ * A snapshot is a header (magic, version, arity, shape, entry count),
+ * the encoded entries, and a CRC32 of everything before it. The shape
+ * says whether the slots were numbered in level order or as the blocked
+ * layout's B-heap. The layout of the reloaded heap can differ from the
+ * one written, as long as a d-ary heap is reloaded into the array
+ * layout; a heap reloaded into the other shape cannot keep its tree, so
+ * it is rebuilt bottom-up instead, still in O(n) time. Version 1
+ * snapshots, which had no shape, are level order.
+ */
+
+public final class HeapSnapshot {
+
+	private static final int MAGIC=0x48534e50;
+	private static final int VERSION=2;
+	private static final int LEVEL_ORDER=0;
+	private static final int BLOCKED=1;
+	private static final int BUFFER=1<<16;
+
+	/**
+	 * Turns keys or values into bytes and back. encode and decode work at
+	 * the buffer's position with its relative get/put methods, and must
+	 * let a BufferOverflowException or BufferUnderflowException escape
+	 * when the buffer runs out; the snapshot then makes room and calls
+	 * them again.
+	 */
+	public interface Codec<T> {
+		void encode(T value, ByteBuffer out);
+		T decode(ByteBuffer in);
+	}
+
+	public static final Codec<Long> LONG=new Codec<Long>() {
+		public void encode(Long value, ByteBuffer out) {
+			out.putLong(value);
+		}
+
+		public Long decode(ByteBuffer in) {
+			return in.getLong();
+		}
+	};
+
+	public static final Codec<Integer> INTEGER=new Codec<Integer>() {
+		public void encode(Integer value, ByteBuffer out) {
+			out.putInt(value);
+		}
+
+		public Integer decode(ByteBuffer in) {
+			return in.getInt();
+		}
+	};
+
+	public static final Codec<Double> DOUBLE=new Codec<Double>() {
+		public void encode(Double value, ByteBuffer out) {
+			out.putDouble(value);
+		}
+
+		public Double decode(ByteBuffer in) {
+			return in.getDouble();
+		}
+	};
+
+	/**
+	 * UTF-8 with a length in front; null is written as length -1.
+	 */
+	public static final Codec<String> STRING=new Codec<String>() {
+		public void encode(String value, ByteBuffer out) {
+			if(value==null) {
+				out.putInt(-1);
+				return;
+			}
+			byte[] bytes=value.getBytes(StandardCharsets.UTF_8);
+			if(out.remaining()<4+bytes.length) {
+				throw new BufferOverflowException();
+			}
+			out.putInt(bytes.length);
+			out.put(bytes);
+		}
+
+		public String decode(ByteBuffer in) {
+			int length=in.getInt();
+			if(length<0) {
+				return null;
+			}
+			if(in.remaining()<length) {
+				throw new BufferUnderflowException();
+			}
+			byte[] bytes=new byte[length];
+			in.get(bytes);
+			return new String(bytes,StandardCharsets.UTF_8);
+		}
+	};
+
+	private HeapSnapshot() {
+	}
+
+	/**
+	 * Writes every entry of the heap to the channel. The heap is not
+	 * changed, except that lazily deleted entries are compacted away
+	 * first. The channel is left open.
+	 * This method must run in O(n) time.
+	 *
+	 * @param heap to write
+	 * @param out the channel to write to
+	 * @param keys codec for the keys
+	 * @param values codec for the values
+	 * @throws IOException if the channel fails
+	 */
+	public static <K,V> void write(MyHeap<K,V> heap, WritableByteChannel out,
+			Codec<? super K> keys, Codec<? super V> values) throws IOException {
+		Writer writer=new Writer(out);
+		writer.buffer.putInt(MAGIC);
+		writer.buffer.putInt(VERSION);
+		writer.buffer.putInt(heap.getArity());
+		writer.buffer.putInt(heap.getLayout()==MyHeap.Layout.BLOCKED ? BLOCKED : LEVEL_ORDER);
+		writer.buffer.putInt(heap.size());
+		Iterator<MyHeapEntry<K,V>> entries=heap.levelOrderIterator();
+		while(entries.hasNext()) {
+			MyHeapEntry<K,V> entry=entries.next();
+			writer.write(keys,entry.getKey());
+			writer.write(values,entry.getValue());
+		}
+		writer.finish();
+	}
+
+	/**
+	 * Reads a heap written by write from the channel. The channel is left
+	 * open, but may have been read past the end of the snapshot.
+	 * This method must run in O(n) time.
+	 *
+	 * @param in the channel to read from
+	 * @param comparator the heap was ordered by
+	 * @param layout for the new heap
+	 * @param keys codec for the keys
+	 * @param values codec for the values
+	 * @return a heap holding the entries of the snapshot, in the same tree positions
+	 * @throws IOException if the channel fails, or the snapshot is malformed,
+	 *         truncated, corrupted, or not in heap order under the comparator
+	 */
+	public static <K,V> MyHeap<K,V> read(ReadableByteChannel in, Comparator<K> comparator, MyHeap.Layout layout,
+			Codec<? extends K> keys, Codec<? extends V> values) throws IOException {
+		Reader reader=new Reader(in);
+		if(reader.readInt()!=MAGIC) {
+			throw new IOException("Not a heap snapshot.");
+		}
+		int version=reader.readInt();
+		if(version<1 || version>VERSION) {
+			throw new IOException("Not a heap snapshot.");
+		}
+		int arity=reader.readInt();
+		int shape=version==1 ? LEVEL_ORDER : reader.readInt();
+		int count=reader.readInt();
+		if(count<0 || (shape!=LEVEL_ORDER && shape!=BLOCKED)) {
+			throw new IOException("Snapshot is corrupted.");
+		}
+		MyHeap<K,V> heap;
+		try {
+			heap=new MyHeap<K,V>(comparator,layout,arity);
+		}
+		catch(IllegalArgumentException e) {
+			throw new IOException("Snapshot of a "+arity+"-ary heap cannot be read into the "+layout+" layout.");
+		}
+		//trust the count only so far, it is not checked until the end
+		heap.reserve(Math.min(count,1<<24));
+		if(shape!=(layout==MyHeap.Layout.BLOCKED ? BLOCKED : LEVEL_ORDER)) {
+			List<MyHeapEntry<K,V>> entries=new ArrayList<MyHeapEntry<K,V>>(Math.min(count,1<<24));
+			for(int i=0;i<count;i++) {
+				K key=reader.read(keys);
+				entries.add(new MyHeapEntry<K,V>(key,reader.read(values)));
+			}
+			reader.finish();
+			heap.loadUnordered(entries);
+			return heap;
+		}
+		for(int i=0;i<count;i++) {
+			K key=reader.read(keys);
+			V value=reader.read(values);
+			if(!heap.appendInLevelOrder(new MyHeapEntry<K,V>(key,value))) {
+				throw new IOException("Snapshot is not in heap order.");
+			}
+		}
+		reader.finish();
+		return heap;
+	}
+
+	//buffers encoded bytes and checksums them on their way to the channel
+	private static final class Writer {
+		private final WritableByteChannel out;
+		private final CRC32 crc=new CRC32();
+		private ByteBuffer buffer=ByteBuffer.allocateDirect(BUFFER);
+
+		private Writer(WritableByteChannel out_) {
+			out=out_;
+		}
+
+		private <T> void write(Codec<T> codec, T value) throws IOException {
+			while(true) {
+				int mark=buffer.position();
+				try {
+					codec.encode(value,buffer);
+					return;
+				}
+				catch(BufferOverflowException e) {
+					buffer.position(mark);
+					if(mark==0) {
+						//a single value bigger than the buffer
+						buffer=ByteBuffer.allocateDirect(buffer.capacity()*2);
+					}
+					else {
+						flush();
+					}
+				}
+			}
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			crc.update(buffer.duplicate());
+			while(buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		private void finish() throws IOException {
+			flush();
+			buffer.putLong(crc.getValue());
+			buffer.flip();
+			while(buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	//keeps a buffer filled from the channel and checksums the bytes as they are used
+	private static final class Reader {
+		private final ReadableByteChannel in;
+		private final CRC32 crc=new CRC32();
+		private ByteBuffer buffer=ByteBuffer.allocateDirect(BUFFER);
+		private boolean eof=false;
+
+		private Reader(ReadableByteChannel in_) {
+			in=in_;
+			buffer.flip();
+		}
+
+		private <T> T read(Codec<T> codec) throws IOException {
+			while(true) {
+				int mark=buffer.position();
+				try {
+					return codec.decode(buffer);
+				}
+				catch(BufferUnderflowException e) {
+					buffer.position(mark);
+					fill();
+				}
+			}
+		}
+
+		private int readInt() throws IOException {
+			return read(INTEGER);
+		}
+
+		//moves the unread bytes to the front and reads more after them
+		private void fill() throws IOException {
+			if(eof) {
+				throw new IOException("Snapshot is truncated.");
+			}
+			ByteBuffer used=buffer.duplicate();
+			used.flip();
+			crc.update(used);
+			if(buffer.position()==0 && buffer.limit()==buffer.capacity()) {
+				//a single value bigger than the buffer
+				ByteBuffer bigger=ByteBuffer.allocateDirect(buffer.capacity()*2);
+				bigger.put(buffer);
+				buffer=bigger;
+			}
+			else {
+				buffer.compact();
+			}
+			if(in.read(buffer)<0) {
+				eof=true;
+			}
+			buffer.flip();
+		}
+
+		private void finish() throws IOException {
+			ByteBuffer used=buffer.duplicate();
+			used.flip();
+			crc.update(used);
+			long expected=crc.getValue();
+			//the trailer is not part of the checksum, so bypass read
+			while(buffer.remaining()<8) {
+				if(eof) {
+					throw new IOException("Snapshot is truncated.");
+				}
+				buffer.compact();
+				if(in.read(buffer)<0) {
+					eof=true;
+				}
+				buffer.flip();
+			}
+			if(buffer.getLong()!=expected) {
+				throw new IOException("Snapshot checksum does not match.");
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.Entry;
+
+/**
+ * Tests writing MyHeap snapshots and reading them back.
+ */
+public class HeapSnapshotTest {
+
+	private static byte[] write(MyHeap<Integer,String> heap) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		HeapSnapshot.write(heap, Channels.newChannel(bytes), HeapSnapshot.INTEGER, HeapSnapshot.STRING);
+		return bytes.toByteArray();
+	}
+
+	private static MyHeap<Integer,String> read(byte[] bytes, MyHeap.Layout layout) throws IOException {
+		return HeapSnapshot.read(Channels.newChannel(new ByteArrayInputStream(bytes)), new IntegerComparator(),
+				layout, HeapSnapshot.INTEGER, HeapSnapshot.STRING);
+	}
+
+	/**
+	 * A reloaded heap has the same tree, or a rebuilt one between level order and
+	 * the blocked layout, in any layout, and keeps working as a heap.
+	 */
+	@Test
+	public void roundTripKeepsTree() throws IOException {
+		for(MyHeap.Layout from : MyHeap.Layout.values()) {
+			for(MyHeap.Layout to : MyHeap.Layout.values()) {
+				MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), from);
+				Random random = new Random(16);
+				for(int i=0;i<5000;i++) {
+					heap.insert(random.nextInt(1000), i%7==0 ? null : "V"+i);
+				}
+				MyHeap<Integer, String> copy = read(write(heap), to);
+				assertThat(copy.size(), is(heap.size()));
+				assertThat(copy.getTree().root().element().getKey(), is(heap.min().getKey()));
+				copy.insert(-1, "new");
+				assertThat(copy.removeMin().getValue(), is("new"));
+				while(!heap.isEmpty()) {
+					Entry<Integer,String> expected = heap.removeMin();
+					Entry<Integer,String> actual = copy.removeMin();
+					assertThat(actual.getKey(), is(expected.getKey()));
+				}
+				assertTrue(copy.isEmpty());
+			}
+		}
+	}
+
+	/**
+	 * The array layout is restored slot for slot, including for a 4-ary heap.
+	 */
+	@Test
+	public void arrayLayoutRestoredSlotForSlot() throws IOException {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY, 4);
+		for(int i=0;i<100;i++) {
+			heap.insert((i*37)%101, "V"+i);
+		}
+		MyHeap<Integer, String> copy = read(write(heap), MyHeap.Layout.ARRAY);
+		assertThat(copy.getArity(), is(4));
+		MyArrayHeapTree<MyHeapEntry<Integer,String>> original = (MyArrayHeapTree<MyHeapEntry<Integer,String>>) heap.getTree();
+		MyArrayHeapTree<MyHeapEntry<Integer,String>> restored = (MyArrayHeapTree<MyHeapEntry<Integer,String>>) copy.getTree();
+		for(int slot=0;slot<100;slot++) {
+			assertThat(restored.get(slot).getKey(), is(original.get(slot).getKey()));
+			assertThat(restored.get(slot).getValue(), is(original.get(slot).getValue()));
+		}
+	}
+
+	/**
+	 * Entries handed back by a reloaded heap can be updated like any other.
+	 */
+	@Test
+	public void reloadedEntriesCanBeUpdated() throws IOException {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+		heap.insert(3, "C");
+		heap.insert(1, "A");
+		heap.insert(2, "B");
+		MyHeap<Integer, String> copy = read(write(heap), MyHeap.Layout.LINKED);
+		copy.replaceKey(copy.min(), 10);
+		List<String> values = new ArrayList<String>();
+		for(Entry<Integer,String> e : copy.removeMin(3)) {
+			values.add(e.getValue());
+		}
+		assertThat(values, is(Arrays.asList("B", "C", "A")));
+	}
+
+	/**
+	 * A flipped byte fails the checksum, and a cut-off snapshot is reported as truncated.
+	 */
+	@Test
+	public void damagedSnapshotsAreRejected() throws IOException {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		for(int i=0;i<100;i++) {
+			heap.insert(i, "V"+i);
+		}
+		byte[] bytes = write(heap);
+		byte[] flipped = bytes.clone();
+		flipped[flipped.length-20]^=1;
+		byte[] truncated = Arrays.copyOf(bytes, bytes.length-10);
+		for(byte[] damaged : Arrays.asList(flipped, truncated)) {
+			try {
+				read(damaged, MyHeap.Layout.ARRAY);
+				assertTrue(false);
+			}
+			catch(IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * A snapshot read with a comparator it is not ordered by is rejected rather than loaded broken.
+	 */
+	@Test(expected=IOException.class)
+	public void snapshotOutOfOrderIsRejected() throws IOException {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		for(int i=0;i<10;i++) {
+			heap.insert(i, "V"+i);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		HeapSnapshot.write(heap, Channels.newChannel(bytes), HeapSnapshot.INTEGER, HeapSnapshot.STRING);
+		HeapSnapshot.read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())),
+				(Integer a, Integer b) -> b.compareTo(a), MyHeap.Layout.ARRAY, HeapSnapshot.INTEGER, HeapSnapshot.STRING);
+	}
+}
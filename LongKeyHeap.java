@@ -0,0 +1,352 @@
+
+import java.util.Arrays;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * An adaptable priority queue specialized for primitive long keys
+ * (timestamps, costs). The keys live in a long[] laid out as an
+ * implicit binary heap, with the handles stored in a parallel array,
+ * so sifting compares raw longs and never boxes a key or calls a
+ * Comparator.
+ *
+ * insert returns a Handle which can later be given to replaceKey or
+ * remove, both of which run in O(log n) time. Code written against
+ * AdaptablePriorityQueue can use asAdaptablePriorityQueue() instead.
+ */
+
+public class LongKeyHeap<V> {
+
+	private static final int DEFAULT_CAPACITY=16;
+
+	private long[] _keys;
+	private Handle<V>[] _handles;
+	private int node_num=0;
+
+	/**
+	 * An entry of a LongKeyHeap. It remembers its slot so that
+	 * replaceKey and remove can find it without a search.
+	 */
+	public static final class Handle<V> implements Entry<Long,V> {
+		private final LongKeyHeap<V> owner;
+		private long key;
+		private V val;
+		private int slot;
+
+		private Handle(LongKeyHeap<V> owner_, long key_, V val_) {
+			owner=owner_;
+			key=key_;
+			val=val_;
+		}
+
+		/**
+		 * @return the key stored in this handle, without boxing
+		 */
+		public long longKey() {
+			return key;
+		}
+
+		/**
+		 * @return the key stored in this handle
+		 */
+		public Long getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the value stored in this handle
+		 */
+		public V getValue() {
+			return val;
+		}
+	}
+
+	/**
+	 * Creates an empty heap.
+	 */
+	public LongKeyHeap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty heap with room for the given number of entries
+	 * before its arrays have to grow.
+	 *
+	 * @param capacity the initial size of the backing arrays
+	 * @throws IllegalArgumentException if capacity is negative
+	 */
+	@SuppressWarnings("unchecked")
+	public LongKeyHeap(int capacity) {
+		if(capacity<0) {
+			throw new IllegalArgumentException("Capacity cannot be negative.");
+		}
+		_keys=new long[Math.max(capacity,1)];
+		_handles=(Handle<V>[]) new Handle[_keys.length];
+	}
+
+	/**
+	 * Returns the size of the heap.
+	 * This method must run in O(1) time.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return node_num;
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 * This method must run in O(1) time.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return node_num==0;
+	}
+
+	/**
+	 * Returns but does not remove the handle with minimum key.
+	 * This method must run in O(1) time.
+	 *
+	 * @return the handle with the minimum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Handle<V> min() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("The heap is empty!");
+		}
+		return _handles[0];
+	}
+
+	/**
+	 * Returns the minimum key without touching its handle.
+	 * This method must run in O(1) time.
+	 *
+	 * @return the minimum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public long minKey() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("The heap is empty!");
+		}
+		return _keys[0];
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the handle created.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the handle created using the key/value parameters
+	 */
+	public Handle<V> insert(long key, V value) {
+		if(node_num==_keys.length) {
+			_keys=Arrays.copyOf(_keys,node_num*2);
+			_handles=Arrays.copyOf(_handles,node_num*2);
+		}
+		Handle<V> handle=new Handle<V>(this,key,value);
+		place(node_num,key,handle);
+		node_num++;
+		upHeap(node_num-1);
+		return handle;
+	}
+
+	/**
+	 * Removes and returns the handle with the minimum key.
+	 * This method must run in O(log n) time.
+	 *
+	 * @return the handle with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Handle<V> removeMin() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("Heap is empty.");
+		}
+		return removeSlot(0);
+	}
+
+	/**
+	 * Removes and returns the given handle from the heap.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param handle to be removed from the heap
+	 * @return the handle specified for removal, now removed
+	 * @throws InvalidEntryException if the handle is not in this heap
+	 */
+	public Handle<V> remove(Handle<V> handle) throws InvalidEntryException {
+		return removeSlot(checkHandle(handle));
+	}
+
+	/**
+	 * Replaces the key of the given handle.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param handle within which the key will be replaced
+	 * @param key to replace the existing key in the handle
+	 * @return the old key formerly associated with the handle
+	 * @throws InvalidEntryException if the handle is not in this heap
+	 */
+	public long replaceKey(Handle<V> handle, long key) throws InvalidEntryException {
+		int slot=checkHandle(handle);
+		long save=handle.key;
+		handle.key=key;
+		_keys[slot]=key;
+		if(key<save) {
+			upHeap(slot);
+		}
+		else if(key>save) {
+			downHeap(slot);
+		}
+		return save;
+	}
+
+	/**
+	 * Replaces the value of the given handle.
+	 * This method must run in O(1) time.
+	 *
+	 * @param handle within which the value will be replaced
+	 * @param value to replace the existing value in the handle
+	 * @return the old value formerly associated with the handle
+	 * @throws InvalidEntryException if the handle is not in this heap
+	 */
+	public V replaceValue(Handle<V> handle, V value) throws InvalidEntryException {
+		checkHandle(handle);
+		V save=handle.val;
+		handle.val=value;
+		return save;
+	}
+
+	/**
+	 * Returns a view of this heap as an AdaptablePriorityQueue with Long
+	 * keys. The view boxes keys at its boundary only; the heap underneath
+	 * still sifts on the primitive array.
+	 *
+	 * @return an adaptable priority queue backed by this heap
+	 */
+	public AdaptablePriorityQueue<Long,V> asAdaptablePriorityQueue() {
+		return new Adapter();
+	}
+
+	//makes sure the handle is currently stored in this heap and returns its slot
+	private int checkHandle(Handle<V> handle) throws InvalidEntryException {
+		if(handle==null || handle.owner!=this) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		int slot=handle.slot;
+		if(slot<0 || slot>=node_num || _handles[slot]!=handle) {
+			throw new InvalidEntryException("Entry is not in this heap.");
+		}
+		return slot;
+	}
+
+	private void place(int slot, long key, Handle<V> handle) {
+		_keys[slot]=key;
+		_handles[slot]=handle;
+		handle.slot=slot;
+	}
+
+	//fills the given slot with the last entry and restores heap order around it
+	private Handle<V> removeSlot(int slot) {
+		Handle<V> save=_handles[slot];
+		int last=--node_num;
+		if(slot!=last) {
+			place(slot,_keys[last],_handles[last]);
+			if(upHeap(slot)==slot) {
+				downHeap(slot);
+			}
+		}
+		_handles[last]=null;
+		save.slot=-1;
+		return save;
+	}
+
+	private void downHeap(int slot) {
+		long key=_keys[slot];
+		Handle<V> handle=_handles[slot];
+		int left=2*slot+1;
+		while(left<node_num) {
+			int child=left;
+			if(left+1<node_num && _keys[left+1]<_keys[left]) {
+				child=left+1;
+			}
+			if(_keys[child]>=key) {
+				break;
+			}
+			place(slot,_keys[child],_handles[child]);
+			slot=child;
+			left=2*slot+1;
+		}
+		place(slot,key,handle);
+	}
+
+	//returns the slot the entry ended up in
+	private int upHeap(int slot) {
+		long key=_keys[slot];
+		Handle<V> handle=_handles[slot];
+		while(slot>0) {
+			int parent=(slot-1)>>>1;
+			if(key>=_keys[parent]) {
+				break;
+			}
+			place(slot,_keys[parent],_handles[parent]);
+			slot=parent;
+		}
+		place(slot,key,handle);
+		return slot;
+	}
+
+	//boxes keys on the way in and out, everything else goes straight to the heap
+	private class Adapter implements AdaptablePriorityQueue<Long,V> {
+
+		public int size() {
+			return node_num;
+		}
+
+		public boolean isEmpty() {
+			return node_num==0;
+		}
+
+		public Entry<Long,V> min() throws EmptyPriorityQueueException {
+			return LongKeyHeap.this.min();
+		}
+
+		public Entry<Long,V> insert(Long key, V value) throws InvalidKeyException {
+			if(key==null) {
+				throw new InvalidKeyException("The key is invalid.");
+			}
+			return LongKeyHeap.this.insert(key,value);
+		}
+
+		public Entry<Long,V> removeMin() throws EmptyPriorityQueueException {
+			return LongKeyHeap.this.removeMin();
+		}
+
+		public Entry<Long,V> remove(Entry<Long,V> entry) throws InvalidEntryException {
+			return LongKeyHeap.this.remove(convert(entry));
+		}
+
+		public Long replaceKey(Entry<Long,V> entry, Long key) throws InvalidEntryException, InvalidKeyException {
+			if(key==null) {
+				throw new InvalidKeyException("The key is invalid.");
+			}
+			return LongKeyHeap.this.replaceKey(convert(entry),key);
+		}
+
+		public V replaceValue(Entry<Long,V> entry, V value) throws InvalidEntryException {
+			return LongKeyHeap.this.replaceValue(convert(entry),value);
+		}
+
+		@SuppressWarnings("unchecked")
+		private Handle<V> convert(Entry<Long,V> entry) throws InvalidEntryException {
+			if(!(entry instanceof Handle)) {
+				throw new InvalidEntryException("Invalid entry");
+			}
+			return (Handle<V>) entry;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * Tests the LongKeyHeap, both through its primitive API and through
+ * its AdaptablePriorityQueue adapter.
+ */
+public class LongKeyHeapTest {
+
+	/**
+	 * Keys come back out of removeMin in ascending order.
+	 */
+	@Test
+	public void testRemoveMinHeapOrder() {
+		LongKeyHeap<String> heap = new LongKeyHeap<String>(2);
+		heap.insert(11, "A");
+		heap.insert(13, "B");
+		heap.insert(64, "C");
+		heap.insert(16, "D");
+		heap.insert(44, "E");
+
+		List<Long> actualKeys = new ArrayList<Long>();
+		while(!heap.isEmpty()) {
+			actualKeys.add(heap.removeMin().longKey());
+		}
+		assertThat(actualKeys, is(Arrays.asList(11L, 13L, 16L, 44L, 64L)));
+	}
+
+	@Test(expected=EmptyPriorityQueueException.class)
+	public void testMinThrowsEmptyPriority() {
+		LongKeyHeap<String> heap = new LongKeyHeap<String>();
+		heap.minKey();
+	}
+
+	/**
+	 * Handles stay usable for replaceKey and remove while other entries move around.
+	 */
+	@Test
+	public void replaceKeyAndRemoveThroughHandles() {
+		LongKeyHeap<String> heap = new LongKeyHeap<String>();
+		List<LongKeyHeap.Handle<String>> handles = new ArrayList<LongKeyHeap.Handle<String>>();
+		for(int i=0;i<200;i++) {
+			handles.add(heap.insert((i*71)%199, "V"+i));
+		}
+		for(int i=0;i<200;i+=4) {
+			assertThat(heap.remove(handles.get(i)).getValue(), is("V"+i));
+		}
+		for(int i=1;i<200;i+=4) {
+			long old=handles.get(i).longKey();
+			assertThat(heap.replaceKey(handles.get(i), 1000-i), is(old));
+		}
+		assertThat(heap.size(), is(150));
+		long last=Long.MIN_VALUE;
+		while(!heap.isEmpty()) {
+			long key=heap.removeMin().longKey();
+			assertTrue(key>=last);
+			last=key;
+		}
+	}
+
+	/**
+	 * A handle that has been removed cannot be used again.
+	 */
+	@Test(expected=InvalidEntryException.class)
+	public void removedHandleIsRejected() {
+		LongKeyHeap<String> heap = new LongKeyHeap<String>();
+		LongKeyHeap.Handle<String> one=heap.insert(1, "A");
+		heap.insert(2, "B");
+		heap.removeMin();
+		heap.replaceKey(one, 0);
+	}
+
+	/**
+	 * The adapter behaves like any other adaptable priority queue.
+	 */
+	@Test
+	public void adapterReplaceKey() {
+		AdaptablePriorityQueue<Long, String> queue = new LongKeyHeap<String>().asAdaptablePriorityQueue();
+		Entry<Long,String> one=queue.insert(5L, "A");
+		queue.insert(3L, "B");
+		assertThat(queue.replaceKey(one, 1L), is(5L));
+		assertThat(queue.min().getValue(), is("A"));
+		assertThat(queue.replaceValue(one, "C"), is("A"));
+		assertThat(queue.remove(one).getValue(), is("C"));
+		assertThat(queue.size(), is(1));
+	}
+
+	@Test(expected=InvalidKeyException.class)
+	public void adapterRejectsNullKey() {
+		AdaptablePriorityQueue<Long, String> queue = new LongKeyHeap<String>().asAdaptablePriorityQueue();
+		queue.insert(null, "A");
+	}
+}
@@ -0,0 +1,374 @@
+
+import java.util.Collections;
+import java.util.Comparator;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A double-ended adaptable priority queue by means of a min-max heap,
+ * for workloads that need both ends of the order, e.g. serving the most
+ * urgent entry while shedding the least valuable one.
+ *
+ * The entries form one complete binary tree, kept in a MyArrayHeapTree,
+ * whose levels alternate: an entry on an even level (the root's) is no
+ * bigger than anything below it, and an entry on an odd level is no
+ * smaller than anything below it. The minimum is therefore the root and
+ * the maximum one of its two children, so min and max run in O(1) time,
+ * and every update walks one root-to-leaf path, in O(log n) time.
+ *
+ * Entries are MyHeapEntry handles, as in MyHeap's array layout, and it
+ * offers the same methods and exceptions as MyHeap plus max and
+ * removeMax, so it replaces a pair of cross-linked heaps with half the
+ * entries and one sift per update.
+ */
+
+public class MinMaxHeap<K,V> implements AdaptablePriorityQueue<K,V> {
+
+	private final MyArrayHeapTree<MyHeapEntry<K,V>> _array=new MyArrayHeapTree<MyHeapEntry<K,V>>();
+	private Comparator<K> _compare;
+	//_compare the other way round, the order of the max levels
+	private Comparator<K> _reversed;
+	private int node_num=0;
+
+	/**
+	 * Creates an empty heap with the given comparator.
+	 *
+	 * @param comparator to be used for heap keys
+	 */
+	public MinMaxHeap(Comparator<K> comparator) {
+		this._compare=comparator;
+		this._reversed=Collections.reverseOrder(comparator);
+	}
+
+	/**
+	 * Sets the comparator used for comparing items in the heap to the
+	 * comparator passed in.
+	 *
+	 * @param comparator, the comparator to be used for heap keys
+	 * @throws IllegalStateException if priority queue is not empty
+	 * @throws IllegalArgumentException if null comparator is passed in
+	 */
+	public void setComparator(Comparator<K> comparator)
+			throws IllegalStateException, IllegalArgumentException {
+		if(comparator==null) {
+			throw new IllegalArgumentException("Comparator cannot be null.");
+		}
+		if(node_num!=0) {
+			throw new IllegalStateException("A heap is already in place!");
+		}
+		this._compare=comparator;
+		this._reversed=Collections.reverseOrder(comparator);
+	}
+
+	/**
+	 * Returns the size of the heap.
+	 * This method must run in O(1) time.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return node_num;
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 * This method must run in O(1) time.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return node_num==0;
+	}
+
+	/**
+	 * Returns but does not remove the entry with minimum key.
+	 * This method must run in O(1) time.
+	 *
+	 * @return the entry with the minimum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> min() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("The heap is empty!");
+		}
+		return _array.get(0);
+	}
+
+	/**
+	 * Returns but does not remove the entry with maximum key.
+	 * This method must run in O(1) time.
+	 *
+	 * @return the entry with the maximum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> max() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("The heap is empty!");
+		}
+		return _array.get(maxSlot());
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the entry created using the key/value parameters
+	 * @throws InvalidKeyException if the key is not suitable for this heap
+	 */
+	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
+		checkKey(key);
+		MyHeapEntry<K,V> newEnt=new MyHeapEntry<K,V>(key,value);
+		newEnt.setSlot(_array.addLast(newEnt));
+		node_num++;
+		restore(node_num-1);
+		return newEnt;
+	}
+
+	/**
+	 * Removes and returns the entry with the minimum key.
+	 * This method must run in O(log n) time.
+	 *
+	 * @return the entry with the with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("Heap is empty.");
+		}
+		return removeSlot(0);
+	}
+
+	/**
+	 * Removes and returns the entry with the maximum key.
+	 * This method must run in O(log n) time.
+	 *
+	 * @return the entry with the with the maximum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> removeMax() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("Heap is empty.");
+		}
+		return removeSlot(maxSlot());
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param entry to be removed from the heap
+	 * @return the entry specified for removal by the parameter, now removed
+	 * @throws InvalidEntryException if the entry cannot be removed from this heap
+	 */
+	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+		MyHeapEntry<K,V> checkedEntry=this.checkAndConvertEntry(entry);
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("Heap is empty.");
+		}
+		return removeSlot(checkSlot(checkedEntry));
+	}
+
+	/**
+	 * Replaces the key of the given entry.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is invalid
+	 * @throws InvalidKeyException if the key is invalid
+	 */
+	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		checkKey(key);
+		MyHeapEntry<K,V> checkedEntry=this.checkAndConvertEntry(entry);
+		int slot=checkSlot(checkedEntry);
+		K save=checkedEntry.getKey();
+		checkedEntry.setKey(key);
+		restore(slot);
+		return save;
+	}
+
+	/**
+	 * Replaces the value of the given entry.
+	 * This method must run in O(1) time.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry cannot have its value replaced
+	 */
+	public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {
+		MyHeapEntry<K,V> checkedEntry=this.checkAndConvertEntry(entry);
+		checkSlot(checkedEntry);
+		V save=checkedEntry.getValue();
+		checkedEntry.setValue(value);
+		return save;
+	}
+
+	/**
+	 * Determines whether a given entry is valid and converts it to a
+	 * MyHeapEntry, the same way MyHeap does.
+	 *
+	 * @param entry to be checked for validity with respect to the heap
+	 * @return the entry cast as a MyHeapEntry if considered valid
+	 * @throws InvalidEntryException if the entry is not of the proper class
+	 */
+	public MyHeapEntry<K,V> checkAndConvertEntry(Entry<K,V> entry)
+			throws InvalidEntryException {
+		if (entry == null || !(entry instanceof MyHeapEntry)) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		return (MyHeapEntry<K, V>) entry;
+	}
+
+	//throws if the comparator cannot handle the key
+	private void checkKey(K key) throws InvalidKeyException {
+		try {
+			this._compare.compare(key,key);
+		}
+		catch(NullPointerException|ClassCastException e){
+			throw new InvalidKeyException("The key is invalid.");
+		}
+	}
+
+	//makes sure the entry is still stored in this heap
+	private int checkSlot(MyHeapEntry<K,V> entry) throws InvalidEntryException {
+		int slot=entry.getSlot();
+		if(slot<0 || slot>=node_num || _array.get(slot)!=entry) {
+			throw new InvalidEntryException("Entry is not in this heap.");
+		}
+		return slot;
+	}
+
+	//the root when it is alone, otherwise the bigger of its children
+	private int maxSlot() {
+		if(node_num==1) {
+			return 0;
+		}
+		if(node_num>2 && _compare.compare(_array.get(1).getKey(),_array.get(2).getKey())<0) {
+			return 2;
+		}
+		return 1;
+	}
+
+	//fills the slot with the last entry and puts that entry back in order
+	private MyHeapEntry<K,V> removeSlot(int slot) {
+		MyHeapEntry<K,V> removed=_array.get(slot);
+		MyHeapEntry<K,V> last=_array.removeLast();
+		node_num--;
+		removed.setSlot(-1);
+		if(last!=removed) {
+			put(slot,last);
+			restore(slot);
+		}
+		return removed;
+	}
+
+	/*
+	 * Sifts. A slot's level is floor(log2(slot+1)); even levels hold
+	 * minimums of their subtrees and odd levels maximums. An entry only
+	 * ever moves two levels at a time, between levels of its own kind,
+	 * except for one step across to its parent when it belongs to the
+	 * other kind of level. Each sift takes the order of the level it
+	 * works on, _compare on min levels and _reversed on max levels, so
+	 * one loop serves both, and moves a hole along its path the way
+	 * MyHeap's sifts do, writing each displaced entry once.
+	 */
+
+	private static boolean isMinLevel(int slot) {
+		return ((31-Integer.numberOfLeadingZeros(slot+1))&1)==0;
+	}
+
+	//puts the entry at the slot, whose key may be anything, back in order
+	private void restore(int slot) {
+		MyHeapEntry<K,V> entry=_array.get(slot);
+		if(slot==0) {
+			downHeap(0,entry,_compare);
+			return;
+		}
+		Comparator<K> order=isMinLevel(slot) ? _compare : _reversed;
+		Comparator<K> other=order==_compare ? _reversed : _compare;
+		int parent=MyArrayHeapTree.parentSlot(slot);
+		MyHeapEntry<K,V> above=_array.get(parent);
+		if(order.compare(above.getKey(),entry.getKey())<0) {
+			//it belongs among the other kind of level: trade places with the parent
+			upHeap(parent,entry,other);
+			downHeap(slot,above,order);
+		}
+		else if(upHeap(slot,entry,order)==slot) {
+			downHeap(slot,entry,order);
+		}
+	}
+
+	//moves the entry up from the hole by grandparents, returning the slot it ends in
+	private int upHeap(int hole, MyHeapEntry<K,V> entry, Comparator<K> order) {
+		K key=entry.getKey();
+		while(hole>2) {
+			int grandparent=MyArrayHeapTree.parentSlot(MyArrayHeapTree.parentSlot(hole));
+			MyHeapEntry<K,V> above=_array.get(grandparent);
+			if(order.compare(key,above.getKey())>=0) {
+				break;
+			}
+			put(hole,above);
+			hole=grandparent;
+		}
+		put(hole,entry);
+		return hole;
+	}
+
+	private void downHeap(int hole, MyHeapEntry<K,V> entry, Comparator<K> order) {
+		K key=entry.getKey();
+		while(true) {
+			int left=MyArrayHeapTree.leftSlot(hole);
+			if(left>=node_num) {
+				break;
+			}
+			//the most extreme of up to two children and four grandchildren
+			int best=left;
+			K bestKey=_array.get(left).getKey();
+			int right=left+1;
+			if(right<node_num && order.compare(_array.get(right).getKey(),bestKey)<0) {
+				best=right;
+				bestKey=_array.get(right).getKey();
+			}
+			int grandchild=MyArrayHeapTree.leftSlot(left);
+			int end=Math.min(grandchild+4,node_num);
+			for(;grandchild<end;grandchild++) {
+				K nextKey=_array.get(grandchild).getKey();
+				if(order.compare(nextKey,bestKey)<0) {
+					best=grandchild;
+					bestKey=nextKey;
+				}
+			}
+			if(order.compare(bestKey,key)>=0) {
+				break;
+			}
+			put(hole,_array.get(best));
+			hole=best;
+			if(best<=right) {
+				//a child has no children of its own left to check
+				break;
+			}
+			int parent=MyArrayHeapTree.parentSlot(best);
+			MyHeapEntry<K,V> between=_array.get(parent);
+			if(order.compare(between.getKey(),key)<0) {
+				//the parent, of the other kind, must not be passed: swap the entry for it
+				put(parent,entry);
+				entry=between;
+				key=between.getKey();
+			}
+		}
+		put(hole,entry);
+	}
+
+	private void put(int slot, MyHeapEntry<K,V> entry) {
+		_array.set(slot,entry);
+		entry.setSlot(slot);
+	}
+}
@@ -0,0 +1,112 @@
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * Tests the double-ended MinMaxHeap.
+ */
+public class MinMaxHeapTest {
+
+	@Test
+	public void minAndMaxFromBothEnds() {
+		MinMaxHeap<Integer, String> heap = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		int[] keys = {5, 9, 1, 7, 3, 8, 2, 6, 4};
+		for(int key : keys) {
+			heap.insert(key, "v" + key);
+		}
+		assertThat(heap.min().getKey(), is(1));
+		assertThat(heap.max().getKey(), is(9));
+		assertThat(heap.removeMax().getValue(), is("v9"));
+		assertThat(heap.removeMin().getValue(), is("v1"));
+		assertThat(heap.removeMax().getKey(), is(8));
+		assertThat(heap.removeMin().getKey(), is(2));
+		assertThat(heap.size(), is(5));
+		assertThat(heap.min().getKey(), is(3));
+		assertThat(heap.max().getKey(), is(7));
+	}
+
+	/**
+	 * A random mix of every update keeps both ends right, checked against a sorted list.
+	 */
+	@Test
+	public void randomOperationsKeepBothEnds() {
+		MinMaxHeap<Integer, Integer> heap = new MinMaxHeap<Integer, Integer>(new IntegerComparator());
+		List<Entry<Integer,Integer>> entries = new ArrayList<Entry<Integer,Integer>>();
+		List<Integer> keys = new ArrayList<Integer>();
+		Random random = new Random(21);
+		for(int i=0;i<20000;i++) {
+			int op = random.nextInt(6);
+			if(entries.isEmpty() || op<2) {
+				int key = random.nextInt(1000);
+				entries.add(heap.insert(key, i));
+				keys.add(key);
+			}
+			else if(op==2) {
+				Entry<Integer,Integer> min = heap.removeMin();
+				assertThat(min.getKey(), is(Collections.min(keys)));
+				entries.remove(min);
+				keys.remove(min.getKey());
+			}
+			else if(op==3) {
+				Entry<Integer,Integer> max = heap.removeMax();
+				assertThat(max.getKey(), is(Collections.max(keys)));
+				entries.remove(max);
+				keys.remove(max.getKey());
+			}
+			else if(op==4) {
+				Entry<Integer,Integer> entry = entries.remove(random.nextInt(entries.size()));
+				keys.remove(entry.getKey());
+				assertTrue(heap.remove(entry) == entry);
+			}
+			else {
+				Entry<Integer,Integer> entry = entries.get(random.nextInt(entries.size()));
+				int key = random.nextInt(1000);
+				keys.remove(entry.getKey());
+				keys.add(key);
+				heap.replaceKey(entry, key);
+			}
+			assertThat(heap.size(), is(keys.size()));
+			if(!keys.isEmpty()) {
+				assertThat(heap.min().getKey(), is(Collections.min(keys)));
+				assertThat(heap.max().getKey(), is(Collections.max(keys)));
+			}
+		}
+	}
+
+	@Test(expected=InvalidEntryException.class)
+	public void removedEntryIsRejected() {
+		MinMaxHeap<Integer, String> heap = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		heap.insert(1, "A");
+		Entry<Integer,String> entry = heap.insert(2, "B");
+		heap.insert(3, "C");
+		heap.removeMax();
+		heap.replaceKey(entry, 0);
+		heap.remove(entry);
+		heap.remove(entry);
+	}
+
+	@Test(expected=InvalidKeyException.class)
+	public void testInsertThrowsInvalidKey() {
+		MinMaxHeap<Integer, String> heap = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		heap.insert(null, "A");
+	}
+
+	@Test(expected=EmptyPriorityQueueException.class)
+	public void testMaxThrowsEmptyPriority() {
+		MinMaxHeap<Integer, String> heap = new MinMaxHeap<Integer, String>(new IntegerComparator());
+		heap.max();
+	}
+}
@@ -0,0 +1,348 @@
+
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A relaxed concurrent priority queue made of many MyHeap shards, each
+ * behind its own lock (the MultiQueue design). insert goes into a random
+ * shard; removeMin looks at the minimum of two random shards and takes
+ * the smaller one. No thread ever waits on a busy shard for insert or
+ * removeMin, it just samples again, so throughput scales with threads.
+ *
+ * The price is that removeMin is only approximately the minimum: it
+ * returns an entry whose rank among all entries is small on average
+ * (proportional to the number of shards), not necessarily the smallest.
+ * The JMH benchmarks MultiQueueBenchmark and MultiQueueRankBenchmark
+ * measure the throughput and this rank error.
+ *
+ * Entries returned by insert are handles that remember their shard, so
+ * replaceKey, replaceValue and remove lock only that one shard.
+ */
+
+public class MultiQueueHeap<K,V> implements AdaptablePriorityQueue<K,V> {
+
+	/**
+	 * An entry of a MultiQueueHeap. getKey() reads the key without taking
+	 * the shard lock, so while another thread is changing it the result
+	 * may be the old or the new key.
+	 */
+	public static final class Handle<K,V> implements Entry<K,V> {
+		private final MultiQueueHeap<K,V> owner;
+		private final int shard;
+		private Entry<K,Handle<K,V>> entry;
+		private volatile V val;
+		//cleared when the handle leaves its shard; guarded by the shard lock
+		private boolean queued=true;
+
+		private Handle(MultiQueueHeap<K,V> owner_, int shard_, V val_) {
+			owner=owner_;
+			shard=shard_;
+			val=val_;
+		}
+
+		public K getKey() {
+			return entry.getKey();
+		}
+
+		public V getValue() {
+			return val;
+		}
+	}
+
+	//one heap, its lock, and a copy of its minimum key that can be read without the lock
+	private final class Shard {
+		final ReentrantLock lock=new ReentrantLock();
+		final MyHeap<K,Handle<K,V>> heap=new MyHeap<K,Handle<K,V>>(_compare,MyHeap.Layout.ARRAY);
+		volatile K top;
+
+		//must be called with the lock held, after every change to heap
+		void refreshTop() {
+			top=heap.isEmpty() ? null : heap.min().getKey();
+		}
+	}
+
+	private final Comparator<K> _compare;
+	private final Shard[] _shards;
+	private final AtomicInteger node_num=new AtomicInteger();
+
+	/**
+	 * Creates an empty queue sized for the machine: two shards per
+	 * available processor.
+	 *
+	 * @param comparator to be used for keys
+	 */
+	public MultiQueueHeap(Comparator<K> comparator) {
+		this(comparator,Runtime.getRuntime().availableProcessors(),2);
+	}
+
+	/**
+	 * Creates an empty queue with c shards for each expected thread.
+	 * More shards per thread means less contention but a larger rank error.
+	 *
+	 * @param comparator to be used for keys
+	 * @param threads the number of threads expected to use the queue
+	 * @param c the number of shards per thread
+	 * @throws IllegalArgumentException if comparator is null or threads or c is not positive
+	 */
+	@SuppressWarnings("unchecked")
+	public MultiQueueHeap(Comparator<K> comparator, int threads, int c) {
+		if(comparator==null) {
+			throw new IllegalArgumentException("Comparator cannot be null.");
+		}
+		if(threads<1 || c<1) {
+			throw new IllegalArgumentException("Threads and shards per thread must be positive.");
+		}
+		_compare=comparator;
+		_shards=(Shard[]) new MultiQueueHeap.Shard[threads*c];
+		for(int i=0;i<_shards.length;i++) {
+			_shards[i]=new Shard();
+		}
+	}
+
+	/**
+	 * @return the number of shards the entries are spread over
+	 */
+	public int shardCount() {
+		return _shards.length;
+	}
+
+	/**
+	 * Returns the number of entries. Under concurrent updates this is a
+	 * snapshot that may already be out of date.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return node_num.get();
+	}
+
+	public boolean isEmpty() {
+		return node_num.get()==0;
+	}
+
+	/**
+	 * Inserts a key-value pair into a random shard that is not busy and
+	 * returns the handle created.
+	 *
+	 * @param key to be used as the key the queue is sorting with
+	 * @param value stored with the associated key
+	 * @return the handle created using the key/value parameters
+	 * @throws InvalidKeyException if the key is not suitable for this queue
+	 */
+	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
+		ThreadLocalRandom random=ThreadLocalRandom.current();
+		while(true) {
+			int index=random.nextInt(_shards.length);
+			Shard shard=_shards[index];
+			if(!shard.lock.tryLock()) {
+				continue;
+			}
+			try {
+				Handle<K,V> handle=new Handle<K,V>(this,index,value);
+				handle.entry=shard.heap.insert(key,handle);
+				shard.refreshTop();
+				node_num.incrementAndGet();
+				return handle;
+			}
+			finally {
+				shard.lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns the entry with the smallest key across all shards. This
+	 * scans every shard's minimum, so it is exact only when no other
+	 * thread is changing the queue.
+	 *
+	 * @return an entry with a minimum key
+	 * @throws EmptyPriorityQueueException if the queue is empty
+	 */
+	public Entry<K,V> min() throws EmptyPriorityQueueException {
+		while(true) {
+			Shard best=smallestShard();
+			if(best==null) {
+				throw new EmptyPriorityQueueException("The heap is empty!");
+			}
+			best.lock.lock();
+			try {
+				if(!best.heap.isEmpty()) {
+					return best.heap.min().getValue();
+				}
+			}
+			finally {
+				best.lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Removes and returns an entry with a small key: the minimum of the
+	 * better of two randomly sampled shards.
+	 *
+	 * @return the entry removed
+	 * @throws EmptyPriorityQueueException if the queue is empty
+	 */
+	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
+		Entry<K,V> removed=pollMin();
+		if(removed==null) {
+			throw new EmptyPriorityQueueException("Heap is empty.");
+		}
+		return removed;
+	}
+
+	/**
+	 * Same as removeMin, but returns null instead of throwing when the
+	 * queue is empty, which suits consumer loops that race with producers.
+	 *
+	 * @return the entry removed, or null if the queue is empty
+	 */
+	public Entry<K,V> pollMin() {
+		ThreadLocalRandom random=ThreadLocalRandom.current();
+		int misses=0;
+		while(node_num.get()>0) {
+			Shard shard;
+			if(misses<_shards.length) {
+				Shard one=_shards[random.nextInt(_shards.length)];
+				Shard two=_shards[random.nextInt(_shards.length)];
+				shard=better(one,two);
+			}
+			else {
+				//sampling keeps hitting empty shards, the queue is nearly drained
+				shard=smallestShard();
+			}
+			if(shard==null || shard.top==null || !shard.lock.tryLock()) {
+				misses++;
+				continue;
+			}
+			try {
+				if(shard.heap.isEmpty()) {
+					misses++;
+					continue;
+				}
+				Handle<K,V> handle=shard.heap.removeMin().getValue();
+				handle.queued=false;
+				shard.refreshTop();
+				node_num.decrementAndGet();
+				return handle;
+			}
+			finally {
+				shard.lock.unlock();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the given entry, locking only its shard.
+	 *
+	 * @param entry to be removed
+	 * @return the entry removed
+	 * @throws InvalidEntryException if the entry is not in this queue
+	 */
+	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+		Handle<K,V> handle=checkHandle(entry);
+		Shard shard=_shards[handle.shard];
+		shard.lock.lock();
+		try {
+			checkQueued(handle);
+			shard.heap.remove(handle.entry);
+			handle.queued=false;
+			shard.refreshTop();
+			node_num.decrementAndGet();
+			return handle;
+		}
+		finally {
+			shard.lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the key of the given entry, locking only its shard.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is not in this queue
+	 * @throws InvalidKeyException if the key is invalid
+	 */
+	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		Handle<K,V> handle=checkHandle(entry);
+		Shard shard=_shards[handle.shard];
+		shard.lock.lock();
+		try {
+			checkQueued(handle);
+			K save=shard.heap.replaceKey(handle.entry,key);
+			shard.refreshTop();
+			return save;
+		}
+		finally {
+			shard.lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the value of the given entry.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry does not belong to this queue
+	 */
+	public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {
+		Handle<K,V> handle=checkHandle(entry);
+		V save=handle.val;
+		handle.val=value;
+		return save;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Handle<K,V> checkHandle(Entry<K,V> entry) throws InvalidEntryException {
+		if(!(entry instanceof Handle) || ((Handle<K,V>) entry).owner!=this) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		return (Handle<K,V>) entry;
+	}
+
+	//must be called with the handle's shard locked, so that a removed handle never reaches the shard's heap
+	private void checkQueued(Handle<K,V> handle) throws InvalidEntryException {
+		if(!handle.queued) {
+			throw new InvalidEntryException("Entry is not in this heap.");
+		}
+	}
+
+	//the shard whose cached minimum is smaller, ignoring empty shards
+	private Shard better(Shard one, Shard two) {
+		K a=one.top;
+		K b=two.top;
+		if(a==null) {
+			return two;
+		}
+		if(b==null) {
+			return one;
+		}
+		return _compare.compare(a,b)<=0 ? one : two;
+	}
+
+	//scans every shard's cached minimum, null if they all look empty
+	private Shard smallestShard() {
+		Shard best=null;
+		K bestKey=null;
+		for(Shard shard : _shards) {
+			K top=shard.top;
+			if(top!=null && (bestKey==null || _compare.compare(top,bestKey)<0)) {
+				best=shard;
+				bestKey=top;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,110 @@
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+
+/**
+ * Tests the MultiQueueHeap. Ordering is relaxed, so these check that
+ * nothing is lost or duplicated rather than the exact order of removals.
+ */
+public class MultiQueueHeapTest {
+
+	/**
+	 * With a single shard the queue is exact.
+	 */
+	@Test
+	public void singleShardIsExact() {
+		MultiQueueHeap<Integer, String> queue = new MultiQueueHeap<Integer, String>(new IntegerComparator(), 1, 1);
+		queue.insert(11, "A");
+		queue.insert(13, "B");
+		queue.insert(4, "C");
+		assertThat(queue.min().getKey(), is(4));
+		assertThat(queue.removeMin().getKey(), is(4));
+		assertThat(queue.removeMin().getKey(), is(11));
+		assertThat(queue.removeMin().getKey(), is(13));
+	}
+
+	@Test(expected=EmptyPriorityQueueException.class)
+	public void removeMinFromEmptyQueue() {
+		MultiQueueHeap<Integer, String> queue = new MultiQueueHeap<Integer, String>(new IntegerComparator(), 2, 2);
+		queue.removeMin();
+	}
+
+	/**
+	 * Handles keep working across shards, and a removed handle is rejected.
+	 */
+	@Test(expected=InvalidEntryException.class)
+	public void handlesUpdateTheirShard() {
+		MultiQueueHeap<Integer, String> queue = new MultiQueueHeap<Integer, String>(new IntegerComparator(), 4, 2);
+		List<Entry<Integer,String>> handles = new ArrayList<Entry<Integer,String>>();
+		for(int i=0;i<100;i++) {
+			handles.add(queue.insert(i+10, "V"+i));
+		}
+		assertThat(queue.replaceKey(handles.get(50), -1), is(60));
+		assertThat(queue.min().getValue(), is("V50"));
+		assertThat(queue.remove(handles.get(50)).getValue(), is("V50"));
+		assertThat(queue.size(), is(99));
+		queue.remove(handles.get(50));
+	}
+
+	/**
+	 * A handle taken by removeMin is rejected even once its shard is empty.
+	 */
+	@Test(expected=InvalidEntryException.class)
+	public void removedHandleOfEmptyShardIsInvalid() {
+		MultiQueueHeap<Integer, String> queue = new MultiQueueHeap<Integer, String>(new IntegerComparator(), 1, 1);
+		Entry<Integer,String> handle = queue.insert(1, "A");
+		assertThat(queue.removeMin().getValue(), is("A"));
+		queue.remove(handle);
+	}
+
+	/**
+	 * Several threads inserting and removing at once must see every key exactly once.
+	 */
+	@Test
+	public void concurrentDrainLosesNothing() throws InterruptedException {
+		final MultiQueueHeap<Integer, String> queue = new MultiQueueHeap<Integer, String>(new IntegerComparator(), 4, 2);
+		final int perThread=5000;
+		final boolean[] seen = new boolean[4*perThread];
+		Thread[] threads = new Thread[4];
+		for(int t=0;t<4;t++) {
+			final int base=t*perThread;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					for(int i=0;i<perThread;i++) {
+						queue.insert(base+i, null);
+						if(i%2==1) {
+							Entry<Integer,String> min=queue.pollMin();
+							synchronized(seen) {
+								assertTrue(!seen[min.getKey()]);
+								seen[min.getKey()]=true;
+							}
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(queue.size(), is(2*perThread));
+		while(!queue.isEmpty()) {
+			int key=queue.removeMin().getKey();
+			assertTrue(!seen[key]);
+			seen[key]=true;
+		}
+		for(boolean s : seen) {
+			assertTrue(s);
+		}
+	}
+}
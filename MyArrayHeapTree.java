@@ -0,0 +1,352 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import net.datastructures.BoundaryViolationException;
+import net.datastructures.CompleteBinaryTree;
+import net.datastructures.EmptyTreeException;
+import net.datastructures.InvalidPositionException;
+import net.datastructures.Position;
+
+/**
+ * An implementation of a complete binary tree by means of a
+ * contiguous array. Seen as a CompleteBinaryTree, the node stored
+ * in slot i has its parent in slot (i-1)/2 and its children in
+ * slots 2i+1 and 2i+2, so no nodes or deque cells are allocated
+ * and moving between levels is plain index arithmetic.
+ *
+ * MyHeap works on the int slots directly. The Position based
+ * methods of CompleteBinaryTree are only there so the visualizer
+ * can walk the tree through getTree(); the positions they hand
+ * out are light views of a slot and are created on demand.
+ *
+ * The Position based methods always use the binary mapping above.
+ * A d-ary or blocked MyHeap numbers its slots with the other slot
+ * arithmetic below instead, so for those heaps the tree walked
+ * through getTree() is the storage order, not the heap links.
+ */
+
+public class MyArrayHeapTree<E> implements CompleteBinaryTree<E> {
+
+	private static final int DEFAULT_CAPACITY=16;
+
+	private Object[] _slots;
+	private int node_num;
+
+	/**
+	 * Default constructor. The tree begins empty.
+	 */
+	public MyArrayHeapTree() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty tree with room for the given number of
+	 * nodes before the backing array has to grow.
+	 *
+	 * @param capacity the initial size of the backing array
+	 * @throws IllegalArgumentException if capacity is negative
+	 */
+	public MyArrayHeapTree(int capacity) {
+		if(capacity<0) {
+			throw new IllegalArgumentException("Capacity cannot be negative.");
+		}
+		_slots=new Object[Math.max(capacity,1)];
+		node_num=0;
+	}
+
+	/**
+	 * Adds an element to the tree just after the last node and returns
+	 * the slot it was stored in.
+	 *
+	 * This method runs in amortized O(1) time.
+	 *
+	 * @param element to be added to the tree as the new last node
+	 * @return the slot of the newly inserted element
+	 */
+	public int addLast(E element) {
+		if(node_num==_slots.length) {
+			_slots=Arrays.copyOf(_slots,_slots.length*2);
+		}
+		_slots[node_num]=element;
+		return node_num++;
+	}
+
+	/**
+	 * Grows the backing array, if needed, so that it can hold at least
+	 * the given number of nodes without further copying.
+	 *
+	 * @param capacity the number of nodes the tree should be able to hold
+	 */
+	public void ensureCapacity(int capacity) {
+		if(capacity>_slots.length) {
+			_slots=Arrays.copyOf(_slots,Math.max(capacity,_slots.length*2));
+		}
+	}
+
+	/**
+	 * Removes and returns the element stored in the last node of the tree.
+	 *
+	 * This method must run in O(1) time.
+	 *
+	 * @return the element formerly stored in the last node
+	 * @throws EmptyTreeException if the tree is empty and no last node exists
+	 */
+	public E removeLast() throws EmptyTreeException {
+		if(node_num==0) {
+			throw new EmptyTreeException("You cannot remove from an empty tree.");
+		}
+		E save=get(--node_num);
+		_slots[node_num]=null;
+		return save;
+	}
+
+	/**
+	 * @param slot of the node to read
+	 * @return the element stored in the given slot
+	 */
+	@SuppressWarnings("unchecked")
+	public E get(int slot) {
+		return (E) _slots[slot];
+	}
+
+	/**
+	 * Stores an element in an occupied slot, replacing whatever was there.
+	 *
+	 * @param slot of the node to overwrite
+	 * @param element to store in the slot
+	 */
+	public void set(int slot, E element) {
+		_slots[slot]=element;
+	}
+
+	/**
+	 * Swaps the elements stored in two slots.
+	 */
+	public void swap(int one, int two) {
+		Object save=_slots[one];
+		_slots[one]=_slots[two];
+		_slots[two]=save;
+	}
+
+	//slot arithmetic, shared with MyHeap and MinMaxHeap so the formulas live in one place
+
+	public static int parentSlot(int slot) {
+		return (slot-1)>>>1;
+	}
+
+	public static int leftSlot(int slot) {
+		return 2*slot+1;
+	}
+
+	public static int rightSlot(int slot) {
+		return 2*slot+2;
+	}
+
+	//the same for a d-ary tree, given the arity as a shift
+	public static int parentSlot(int slot, int shift) {
+		return (slot-1)>>>shift;
+	}
+
+	public static int firstChildSlot(int slot, int shift) {
+		return (slot<<shift)+1;
+	}
+
+	/*
+	 * B-heap numbering, after Kamp's binary heap in Varnish, in blocks of
+	 * 1<<blockShift slots. It counts from 1 at the root, one more than
+	 * the slot, so that offset 0 of the first block is the unused one.
+	 */
+
+	public static int blockParentSlot(int slot, int blockShift) {
+		int index=slot+1;
+		int mask=(1<<blockShift)-1;
+		int offset=index&mask;
+		if(index<=mask || offset>3) {
+			return ((index&~mask)|(offset>>>1))-1;
+		}
+		if(offset>1) {
+			return index-3;
+		}
+		//offset 0 or 1 of a later block: back to the bottom row of its parent block
+		int parent=(index-(1<<blockShift))>>>blockShift;
+		parent+=parent&~(mask>>>1);
+		return (parent|((1<<blockShift)>>>1))-1;
+	}
+
+	public static int blockFirstChildSlot(int slot, int blockShift) {
+		int index=slot+1;
+		int mask=(1<<blockShift)-1;
+		if(hasSingleChild(slot,blockShift)) {
+			return index+1;
+		}
+		if((index&((1<<blockShift)>>>1))!=0) {
+			//the bottom row of a block starts a new block, possibly past any int slot
+			long block=(((index&~mask)>>>1)|(index&(mask>>>1)))+1;
+			return (int) Math.min((block<<blockShift)-1,Integer.MAX_VALUE);
+		}
+		return index+(index&mask)-1;
+	}
+
+	//the first two slots of every block after the first have a single child
+	public static boolean hasSingleChild(int slot, int blockShift) {
+		int index=slot+1;
+		return index>(1<<blockShift)-1 && (index&((1<<blockShift)-2))==0;
+	}
+
+	/**
+	 * @return the slot of the last node, or -1 if the tree is empty
+	 */
+	public int lastSlot() {
+		return node_num-1;
+	}
+
+	public int size() {
+		return node_num;
+	}
+
+	public boolean isEmpty() {
+		return node_num==0;
+	}
+
+	/*
+	 * Position view used by the visualizer. Everything below here
+	 * translates positions back into slots.
+	 */
+
+	@Override
+	public Position<E> add(E element) {
+		return new SlotPosition(addLast(element));
+	}
+
+	@Override
+	public E remove() throws EmptyTreeException {
+		return removeLast();
+	}
+
+	@Override
+	public Position<E> root() throws EmptyTreeException {
+		if(node_num==0) {
+			throw new EmptyTreeException("The tree is empty.");
+		}
+		return new SlotPosition(0);
+	}
+
+	@Override
+	public Position<E> parent(Position<E> v) throws BoundaryViolationException {
+		int slot=checkPosition(v);
+		if(slot==0) {
+			throw new BoundaryViolationException("The root has no parent.");
+		}
+		return new SlotPosition(parentSlot(slot));
+	}
+
+	@Override
+	public Position<E> left(Position<E> v) throws BoundaryViolationException {
+		if(!hasLeft(v)) {
+			throw new BoundaryViolationException("No left child.");
+		}
+		return new SlotPosition(leftSlot(checkPosition(v)));
+	}
+
+	@Override
+	public Position<E> right(Position<E> v) throws BoundaryViolationException {
+		if(!hasRight(v)) {
+			throw new BoundaryViolationException("No right child.");
+		}
+		return new SlotPosition(rightSlot(checkPosition(v)));
+	}
+
+	@Override
+	public boolean hasLeft(Position<E> v) {
+		return leftSlot(checkPosition(v))<node_num;
+	}
+
+	@Override
+	public boolean hasRight(Position<E> v) {
+		return rightSlot(checkPosition(v))<node_num;
+	}
+
+	@Override
+	public boolean isInternal(Position<E> v) {
+		return hasLeft(v);
+	}
+
+	@Override
+	public boolean isExternal(Position<E> v) {
+		return !hasLeft(v);
+	}
+
+	@Override
+	public boolean isRoot(Position<E> v) {
+		return checkPosition(v)==0;
+	}
+
+	@Override
+	public Iterable<Position<E>> children(Position<E> v) {
+		List<Position<E>> children=new ArrayList<Position<E>>(2);
+		if(hasLeft(v)) {
+			children.add(left(v));
+		}
+		if(hasRight(v)) {
+			children.add(right(v));
+		}
+		return children;
+	}
+
+	@Override
+	public Iterable<Position<E>> positions() {
+		List<Position<E>> positions=new ArrayList<Position<E>>(node_num);
+		for(int i=0;i<node_num;i++) {
+			positions.add(new SlotPosition(i));
+		}
+		return positions;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		List<E> elements=new ArrayList<E>(node_num);
+		for(int i=0;i<node_num;i++) {
+			elements.add(get(i));
+		}
+		return elements.iterator();
+	}
+
+	@Override
+	public E replace(Position<E> v, E element) {
+		int slot=checkPosition(v);
+		E save=get(slot);
+		set(slot,element);
+		return save;
+	}
+
+	private int checkPosition(Position<E> v) throws InvalidPositionException {
+		if(!(v instanceof MyArrayHeapTree.SlotPosition)) {
+			throw new InvalidPositionException("Position does not belong to this tree.");
+		}
+		SlotPosition pos=(SlotPosition) v;
+		if(pos.owner()!=this || pos.slot>=node_num) {
+			throw new InvalidPositionException("Position is no longer in the tree.");
+		}
+		return pos.slot;
+	}
+
+	//a position is just a slot number tied to this tree
+	private class SlotPosition implements Position<E> {
+		private final int slot;
+
+		SlotPosition(int slot_) {
+			slot=slot_;
+		}
+
+		public E element() {
+			return get(slot);
+		}
+
+		MyArrayHeapTree<E> owner() {
+			return MyArrayHeapTree.this;
+		}
+	}
+}
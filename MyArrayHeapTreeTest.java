@@ -0,0 +1,99 @@
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyTreeException;
+import net.datastructures.InvalidPositionException;
+import net.datastructures.Position;
+
+
+/**
+ * Tests the functionality of the MyArrayHeapTree implementation, both the
+ * slot based methods used by MyHeap and the Position view used by the visualizer.
+ */
+public class MyArrayHeapTreeTest {
+	
+	/**
+	 * Checks that the first element added goes into slot 0, the root.
+	 */
+	@Test
+	public void testAddOneElement() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		assertThat(tree.addLast(1), is(0));
+		assertThat(tree.size(), is(1));
+		assertThat(tree.root().element(), is(1));
+	}
+	
+	/**
+	 * Removing from an empty tree should raise an EmptyTreeException
+	 */
+	@Test(expected = EmptyTreeException.class)
+	public void testRemoveThrowsEmptyTreeException() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		tree.add(1);
+		tree.remove();
+		tree.remove();
+	}
+	
+	/**
+	 * Adds enough elements to force the backing array to grow, then
+	 * removes them again, checking they come back last-in first-out.
+	 */
+	@Test
+	public void addAndRemovePastInitialCapacity() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>(2);
+		for(int i=0;i<50;i++) {
+			assertThat(tree.addLast(i), is(i));
+		}
+		assertThat(tree.size(), is(50));
+		assertThat(tree.lastSlot(), is(49));
+		for(int i=49;i>=0;i--) {
+			assertThat(tree.removeLast(), is(i));
+		}
+		assertTrue(tree.isEmpty());
+	}
+	
+	/**
+	 * Checks that the slot arithmetic and the Position view describe the same tree.
+	 */
+	@Test
+	public void positionsFollowSlotArithmetic() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		for(int i=0;i<6;i++) {
+			tree.add(i);
+		}
+		Position<Integer> root=tree.root();
+		assertThat(tree.left(root).element(), is(1));
+		assertThat(tree.right(root).element(), is(2));
+		Position<Integer> two=tree.right(root);
+		assertThat(tree.left(two).element(), is(5));
+		assertFalse(tree.hasRight(two));
+		assertThat(tree.parent(two).element(), is(0));
+		assertTrue(tree.isExternal(tree.left(two)));
+		assertThat(MyArrayHeapTree.parentSlot(5), is(2));
+		assertThat(MyArrayHeapTree.leftSlot(2), is(5));
+		assertThat(MyArrayHeapTree.rightSlot(2), is(6));
+		assertThat(MyArrayHeapTree.parentSlot(9,2), is(2));
+		assertThat(MyArrayHeapTree.firstChildSlot(2,2), is(9));
+		//the bottom row of the first 8-slot block leads to the second block, whose first slot has one child
+		assertThat(MyArrayHeapTree.blockFirstChildSlot(3,3), is(7));
+		assertTrue(MyArrayHeapTree.hasSingleChild(7,3));
+		assertThat(MyArrayHeapTree.blockFirstChildSlot(7,3), is(9));
+		assertThat(MyArrayHeapTree.blockParentSlot(9,3), is(7));
+		assertThat(MyArrayHeapTree.blockParentSlot(7,3), is(3));
+	}
+	
+	/**
+	 * A position whose slot has been removed can no longer be used.
+	 */
+	@Test(expected = InvalidPositionException.class)
+	public void removedPositionIsInvalid() {
+		MyArrayHeapTree<Integer> tree = new MyArrayHeapTree<Integer>();
+		tree.add(1);
+		Position<Integer> last=tree.add(2);
+		tree.remove();
+		tree.isExternal(last);
+	}
+}
@@ -1,7 +1,23 @@
 
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import net.datastructures.CompleteBinaryTree;
 import net.datastructures.DefaultComparator;
 import net.datastructures.EmptyPriorityQueueException;
@@ -23,18 +39,122 @@ import support.heap.HeapWrapper;
 
 public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V> {
 	
+	/**
+	 * The complete binary tree a heap can be built on. LINKED is the
+	 * original MyLinkedHeapTree; ARRAY keeps the entries in one
+	 * contiguous MyArrayHeapTree and tracks them by int slot. BLOCKED
+	 * is ARRAY with the slots numbered as a B-heap, see BLOCK_SHIFT.
+	 * 
+	 * getTree() presents the slots of a blocked heap as a binary tree in
+	 * storage order, as it does for a d-ary one, so the visualizer shows
+	 * the storage order rather than the heap links: from the second
+	 * block on, the first two slots of each block have a single child,
+	 * and the parents and children drawn there are not the heap's.
+	 */
+	public enum Layout { LINKED, ARRAY, BLOCKED }
+	
+	// a parallel build only pays off on large trees, and each task gets a subtree at least this big
+	private static final int PARALLEL_THRESHOLD=1<<16;
+	private static final int SEQUENTIAL_SUBTREE=1<<13;
+	
+	// The BLOCKED layout numbers slots the way Kamp's B-heap does: the
+	// slots are cut into blocks of 1<<BLOCK_SHIFT, a 4KB page of compressed
+	// references, and each block holds a whole subtree several levels deep.
+	// In the first block the numbering is the usual one. In every later
+	// block, the first two slots are the children of a node on the bottom
+	// row of an earlier block, and each has one child, in slots 2 and 3,
+	// from which a plain binary subtree fills the rest of the block. A
+	// sift from the root to a leaf then crosses one block per eight or
+	// nine levels instead of one cache line per level near the bottom.
+	// The numbering is still contiguous and every parent comes before
+	// its children, so appending, removing the last slot and the
+	// bottom-up build work unchanged. The tree is deeper than a complete
+	// one, by about a quarter, and it saves pages, not lines: the entries
+	// are still separate objects, so it only pays off when the slot
+	// array's pages are what a sift waits on, not the entries.
+	private static final int BLOCK_SHIFT=10;
+	
 	// This the underlying data structure of your heap
+	// exactly one of _tree and _array is in use, depending on the layout
 	private MyLinkedHeapTree<MyHeapEntry<K,V>> _tree;
+	private MyArrayHeapTree<MyHeapEntry<K,V>> _array;
 	private Comparator<K> _compare;
+	// the comparator as given; _compare wraps it while metrics are attached
+	private Comparator<K> _baseCompare;
 	private int node_num=0;
+	// null unless someone asked for metrics, so the hot paths only pay a null check
+	private HeapMetrics _metrics;
+	// children per node in the array layout, kept as a shift since it is a power of two
+	private int _shift=1;
+	// BLOCK_SHIFT for the blocked layout, 0 for level order
+	private int _blockShift=0;
+	// lazy deletion: entries marked removed but still in the tree, and the share
+	// of the tree they may take up before it is rebuilt; 0 means remove eagerly
+	private int _tombstones=0;
+	private double _lazyRatio=0;
+	// pooling: removed entries kept for insert to reuse, null when pooling is off
+	private MyHeapEntry<K,V>[] _pool;
+	private int _pooled=0;
+	// key extraction: when set, every entry caches its key as a long and the
+	// sifts compare those, unless metrics need to see the comparator's calls
+	private ToLongFunction<? super K> _sortKey;
+	private boolean _primitive=false;
 	/** 
 	 * Creates an empty heap with the given comparator. 
 	 * 
 	 * @param the comparator to be used for heap keys
 	 */
 	public MyHeap(Comparator<K> comparator) {
-		_tree= new MyLinkedHeapTree<MyHeapEntry<K,V>>();
+		this(comparator,Layout.LINKED);
+	}
+
+	/** 
+	 * Creates an empty heap with the given comparator, built on the
+	 * given tree layout.
+	 * 
+	 * @param comparator to be used for heap keys
+	 * @param layout of the underlying complete binary tree
+	 * @throws IllegalArgumentException if layout is null
+	 */
+	public MyHeap(Comparator<K> comparator, Layout layout) {
+		this(comparator,layout,2);
+	}
+
+	/** 
+	 * Creates an empty d-ary heap with the given comparator and arity.
+	 * A wider node makes the tree shallower, so removeMin walks fewer
+	 * levels at the cost of scanning more children on each one, while
+	 * insert only ever compares against parents and gets strictly cheaper.
+	 * 
+	 * Only the array layout supports arities other than 2. getTree()
+	 * still presents the slots as a binary tree, so for a d-ary heap
+	 * the visualizer shows the storage order rather than the heap links.
+	 * 
+	 * @param comparator to be used for heap keys
+	 * @param layout of the underlying tree
+	 * @param arity number of children per node, one of 2, 4, 8 or 16
+	 * @throws IllegalArgumentException if layout is null or the arity is unsupported
+	 */
+	public MyHeap(Comparator<K> comparator, Layout layout, int arity) {
+		if(layout==null) {
+			throw new IllegalArgumentException("Layout cannot be null.");
+		}
+		if(arity<2 || arity>16 || Integer.bitCount(arity)!=1) {
+			throw new IllegalArgumentException("Arity must be 2, 4, 8 or 16.");
+		}
+		if(arity!=2 && layout!=Layout.ARRAY) {
+			throw new IllegalArgumentException("Only the array layout supports an arity other than 2.");
+		}
+		_shift=Integer.numberOfTrailingZeros(arity);
+		if(layout!=Layout.LINKED) {
+			_array= new MyArrayHeapTree<MyHeapEntry<K,V>>();
+			_blockShift=layout==Layout.BLOCKED ? BLOCK_SHIFT : 0;
+		}
+		else {
+			_tree= new MyLinkedHeapTree<MyHeapEntry<K,V>>();
+		}
 		this._compare=comparator;
+		this._baseCompare=comparator;
 	}
 
 	/**
@@ -50,11 +170,143 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 		if(comparator==null) {
 			throw new IllegalArgumentException("Comparator cannot be null.");
 		}
-		if(!(_tree.size()==0)) {
+		if(!(size()==0)) {
 			throw new IllegalStateException("A tree is already in place!");
 		}
-		this._compare=comparator;
-		throw new IllegalStateException();
+		if(node_num!=0) {
+			//only tombstones left, which must not be ordered by the new comparator
+			compact();
+		}
+		this._baseCompare=comparator;
+		this._compare=_metrics==null ? comparator : _metrics.counting(comparator);
+		//the heap no longer orders by the extracted key
+		this._sortKey=null;
+		this._primitive=false;
+	}
+
+	/**
+	 * Attaches metrics that record every operation on this heap from now
+	 * on, or detaches them when passed null. While no metrics are attached
+	 * the heap runs exactly as before, apart from one null check per
+	 * operation.
+	 * 
+	 * @param metrics to record into, or null to stop recording
+	 */
+	public void setMetrics(HeapMetrics metrics) {
+		this._metrics=metrics;
+		this._compare=metrics==null ? _baseCompare : metrics.counting(_baseCompare);
+		this._primitive=_sortKey!=null && metrics==null;
+	}
+
+	/**
+	 * @return the metrics attached to this heap, or null if there are none
+	 */
+	public HeapMetrics getMetrics() {
+		return _metrics;
+	}
+
+	/**
+	 * Switches lazy deletion on or off. With lazy deletion, remove(entry)
+	 * only marks the entry as a tombstone, in O(1) time, and leaves it in
+	 * the tree; min and removeMin drop tombstones as they reach the root.
+	 * Once tombstones make up more than the given share of the tree, the
+	 * tree is rebuilt without them in O(n) time, so memory stays within
+	 * a constant factor of size(). Passing 0 goes back to eager removal
+	 * and drops any tombstones right away.
+	 * 
+	 * A lower ratio keeps the tree smaller and rebuilds more often; either
+	 * way each remove costs O(1) amortized.
+	 * 
+	 * @param ratio the share of the tree tombstones may take, at least 0 and below 1
+	 * @throws IllegalArgumentException if the ratio is out of range
+	 */
+	public void setLazyDeleteRatio(double ratio) throws IllegalArgumentException {
+		if(!(ratio>=0 && ratio<1)) {
+			throw new IllegalArgumentException("Ratio must be at least 0 and below 1.");
+		}
+		this._lazyRatio=ratio;
+		if(ratio==0 && _tombstones!=0) {
+			compact();
+		}
+	}
+
+	/**
+	 * @return the share of the tree tombstones may take, or 0 if removal is eager
+	 */
+	public double getLazyDeleteRatio() {
+		return _lazyRatio;
+	}
+
+	/**
+	 * Switches entry pooling on or off. With pooling, insert reuses the
+	 * entries the caller has handed back through release(entry) instead
+	 * of allocating one, so a heap whose size holds steady, and whose
+	 * caller releases what it removes, allocates nothing. The array
+	 * layout needs no per-node allocation of its own, so it is the only
+	 * layout that pools.
+	 * 
+	 * An entry is only reused once the caller releases it, so the entries
+	 * that removeMin, remove and the drains return stay the caller's for
+	 * as long as it needs them, and a consumer that re-inserts while
+	 * draining is safe. After release the caller must drop every handle
+	 * to the entry. checkAndConvertEntry, and with it the plain remove and
+	 * replaceKey, cannot tell a reused entry from the one the caller had:
+	 * the entry is the handle, so its generation changes along with it.
+	 * Each reuse moves the entry to the next generation, so a caller that
+	 * records getGeneration() with a handle can pass it to
+	 * remove(entry, generation) and replaceKey(entry, generation, key),
+	 * which reject the handle once the entry has been reused.
+	 * 
+	 * The pool holds at most as many entries as were released;
+	 * switching pooling off lets them go.
+	 * 
+	 * @param pooled true to reuse removed entries
+	 * @throws IllegalStateException if the heap uses the linked layout
+	 */
+	@SuppressWarnings("unchecked")
+	public void setPooled(boolean pooled) throws IllegalStateException {
+		if(_array==null) {
+			throw new IllegalStateException("Only the array layout can pool entries.");
+		}
+		if(!pooled) {
+			_pool=null;
+			_pooled=0;
+		}
+		else if(_pool==null) {
+			_pool=(MyHeapEntry<K,V>[]) new MyHeapEntry[16];
+		}
+	}
+
+	/**
+	 * @return whether released entries are reused by insert
+	 */
+	public boolean isPooled() {
+		return _pool!=null;
+	}
+
+	/**
+	 * Hands a removed entry back to a pooling heap, for insert to reuse.
+	 * An entry removed lazily is still a tombstone in the tree, and is
+	 * reused only once the heap drops it. A heap that does not pool
+	 * leaves the entry alone. The caller must not use the entry, or any
+	 * handle to it, afterwards; see setPooled.
+	 * This method must run in O(1) time.
+	 * 
+	 * @param entry an entry this heap has removed
+	 * @throws InvalidEntryException if the entry is still in the heap or has already been released
+	 */
+	public void release(Entry<K,V> entry) throws InvalidEntryException {
+		MyHeapEntry<K,V> checkedEntry = this.checkAndConvertEntry(entry);
+		if(_pool==null) {
+			return;
+		}
+		if(checkedEntry.isReleased() || (checkedEntry.getSlot()>=0 && !checkedEntry.isTombstone())) {
+			throw new InvalidEntryException("Entry cannot be released.");
+		}
+		checkedEntry.setReleased(true);
+		if(checkedEntry.getSlot()<0) {
+			keep(checkedEntry);
+		}
 	}
 
 	/**
@@ -69,6 +321,9 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 	 * @return the underlying binary tree on which the heap is based
 	 */
 	public CompleteBinaryTree<MyHeapEntry<K,V>> getTree() {
+		if(_array!=null) {
+			return _array;
+		}
 		return _tree;
 	}
 	
@@ -79,7 +334,7 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 	 * @return an int representing the number of entries stored
 	 */
 	public int size() {
-		return node_num;
+		return node_num-_tombstones;
 	}
 
 	/** 
@@ -95,18 +350,36 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 		return false;
 	}
 
+	/**
+	 * @return the number of children per node
+	 */
+	public int getArity() {
+		return 1<<_shift;
+	}
+
+	/**
+	 * @return the layout of the underlying tree
+	 */
+	public Layout getLayout() {
+		if(_array==null) {
+			return Layout.LINKED;
+		}
+		return _blockShift==0 ? Layout.ARRAY : Layout.BLOCKED;
+	}
+
 	/** 
 	 * Returns but does not remove the entry with minimum key.
-	 * This method must run in O(1) time.
+	 * This method must run in O(1) time, or O(1) amortized when
+	 * lazy deletion has left tombstones at the root.
 	 * 
 	 * @return the entry with the minimum key in the heap
 	 * @throws EmptyPriorityQueueException if the heap is empty
 	 */
 	public Entry<K,V> min() throws EmptyPriorityQueueException {
-		if(_tree.size()==0) {
+		if(size()==0) {
 			throw new EmptyPriorityQueueException("The heap is empty!");
 		}
-		return _tree.return_min();
+		return minEntry();
 	}
 
 	/** 
@@ -119,211 +392,1698 @@ public class MyHeap<K,V> implements HeapWrapper<K,V>, AdaptablePriorityQueue<K,V
 	 * @throws InvalidKeyException if the key is not suitable for this heap
 	 */
 	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
-		try {
-			this._compare.compare(key,key);
+		if(_metrics==null) {
+			return insertEntry(key,value);
 		}
-		catch(NullPointerException|ClassCastException e){
-			throw new InvalidKeyException("The key is invalid.");
+		long start=System.nanoTime();
+		Entry<K,V> inserted=insertEntry(key,value);
+		_metrics.recordOperation(HeapMetrics.Op.INSERT,System.nanoTime()-start);
+		return inserted;
+	}
+
+	private Entry<K,V> insertEntry(K key, V value) throws InvalidKeyException {
+		checkKey(key);
+		MyHeapEntry<K,V> newEnt;
+		if(_pooled!=0) {
+			newEnt=_pool[--_pooled];
+			_pool[_pooled]=null;
+			newEnt.recycle(key,value);
+		}
+		else {
+			newEnt= new MyHeapEntry<K,V>(key,value);
+		}
+		cacheSortKey(newEnt);
+		if(_array!=null) {
+			newEnt.setSlot(_array.addLast(newEnt));
+			node_num++;
+			upHeapSlot(newEnt.getSlot());
+			return newEnt;
 		}
-		MyHeapEntry<K,V> newEnt= new MyHeapEntry<K,V>(key,value);
 		Position<MyHeapEntry<K,V>> pos=_tree.add(newEnt);
 		pos.element().setPos(pos);
 		node_num++;
-		if(_tree.size()>1) {
-		upHeap(pos,key);
-		}
+		upHeap(pos);
 		return newEnt; 
 	}
 
 	/** 
-	 * Removes and returns the entry with the minimum key.
-	 * This method must run in O(log n) time.
+	 * Inserts a batch of key-value pairs and returns the entries created,
+	 * in the same order as the pairs. The returned entries can be passed
+	 * to replaceKey/remove like those returned by insert.
 	 * 
-	 * @return the entry with the with the minimum key, now removed 
-	 * @throws EmptyPriorityQueueException if the heap is empty
+	 * When the batch is at least as large as the heap already is, the new
+	 * entries are appended and the whole tree is rebuilt bottom-up (Floyd's
+	 * heapify), which takes O(n) comparisons in total. A small batch into
+	 * a large heap is cheaper to sift up one entry at a time, so that case
+	 * costs O(m log n) like m separate inserts. The linked layout rebuilds
+	 * by taking its tree apart and putting it back together, also O(n).
+	 * 
+	 * All keys are checked before anything is added, so an invalid key
+	 * leaves the heap unchanged.
+	 * 
+	 * @param pairs the key-value pairs to insert
+	 * @return the entries created, in input order
+	 * @throws InvalidKeyException if any key is not suitable for this heap
+	 * @throws IllegalArgumentException if pairs is null
 	 */
-	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
-		if(_tree.size()==0) {
-			throw new EmptyPriorityQueueException("Heap is empty.");
-		}
-		Position<MyHeapEntry<K,V>> swapPos= _tree.root();
-		_tree.swap(swapPos, _tree.return_newest());
-		MyHeapEntry<K,V> save=_tree.remove();
-		//checkedEntry.setPos(save.getPos());
-		node_num--;
-		if(node_num!=0) {
-			Position<MyHeapEntry<K,V>> pos=_tree.root();
-			if(_tree.size()>1) {
-				downHeap(pos);
-			}
-		}
-		return save;
+	public List<Entry<K,V>> insertAll(Iterable<? extends Entry<K,V>> pairs) throws InvalidKeyException {
+		return insertAll(pairs,null);
 	}
 
 	/** 
-	 * Removes and returns the given entry from the heap.
-	 * This method must run in O(log n) time.
-	 *
-	 * @param entry to be removed from the heap
-	 * @return the entry specified for removal by the parameter, now removed
-	 * @throws InvalidEntryException if the entry cannot be removed from this heap
+	 * Like insertAll(pairs), but when the heap is rebuilt bottom-up the
+	 * rebuild runs on the given pool. Subtrees below the top few levels
+	 * are independent, so they are built concurrently, and each node above
+	 * them is sifted down once all of its subtrees are done. The result
+	 * is exactly the heap the sequential build gives, and so are the
+	 * returned entries.
+	 * 
+	 * Small heaps, and heaps with metrics attached (which are not
+	 * thread-safe), are built sequentially. The comparator is called
+	 * from the pool's threads.
+	 * 
+	 * @param pairs the key-value pairs to insert
+	 * @param pool to build on, or null to build on the calling thread
+	 * @return the entries created, in input order
+	 * @throws InvalidKeyException if any key is not suitable for this heap
+	 * @throws IllegalArgumentException if pairs is null
 	 */
-	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
-		MyHeapEntry<K,V> checkedEntry = this.checkAndConvertEntry(entry);
-		if(_tree.size()==0) {
-			throw new EmptyPriorityQueueException("Heap is empty.");
+	public List<Entry<K,V>> insertAll(Iterable<? extends Entry<K,V>> pairs, ForkJoinPool pool) throws InvalidKeyException {
+		if(pairs==null) {
+			throw new IllegalArgumentException("Pairs cannot be null.");
 		}
-		Position<MyHeapEntry<K,V>> swapPos= checkedEntry.getPos();
-		_tree.swap(swapPos, _tree.return_newest());
-		MyHeapEntry<K,V> save=_tree.remove();
-		checkedEntry.setPos(save.getPos());
-		node_num--;
-		Position<MyHeapEntry<K,V>> pos=checkedEntry.getPos();
-		if(_tree.size()>1) {
-			downHeap(pos);
+		if(_metrics==null) {
+			return insertEntries(pairs,pool);
 		}
-		return save;
+		long start=System.nanoTime();
+		List<Entry<K,V>> inserted=insertEntries(pairs,pool);
+		_metrics.recordOperation(HeapMetrics.Op.INSERT_ALL,System.nanoTime()-start,inserted.size());
+		return inserted;
 	}
 
-	/** 
-	 * Replaces the key of the given entry.
-	 * This method must run in O(log n) time.
-	 *
-	 * @param entry within which the key will be replaced
-	 * @param key to replace the existing key in the entry
-	 * @return the old key formerly associated with the entry
-	 * @throws InvalidEntryException if the entry is invalid
-	 * @throws InvalidKeyException if the key is invalid
+	private List<Entry<K,V>> insertEntries(Iterable<? extends Entry<K,V>> pairs, ForkJoinPool pool) throws InvalidKeyException {
+		List<MyHeapEntry<K,V>> created=createEntries(pairs);
+		addEntries(created,pool);
+		return new ArrayList<Entry<K,V>>(created);
+	}
+
+	//checks every key and creates the entries, adding nothing to the tree yet
+	private List<MyHeapEntry<K,V>> createEntries(Iterable<? extends Entry<K,V>> pairs) throws InvalidKeyException {
+		List<MyHeapEntry<K,V>> created=new ArrayList<MyHeapEntry<K,V>>();
+		for(Entry<K,V> pair : pairs) {
+			if(pair==null) {
+				throw new InvalidKeyException("The key is invalid.");
+			}
+			checkKey(pair.getKey());
+			MyHeapEntry<K,V> newEnt=new MyHeapEntry<K,V>(pair.getKey(),pair.getValue());
+			cacheSortKey(newEnt);
+			created.add(newEnt);
+		}
+		return created;
+	}
+
+	/*
+	 * insertAll for ConcurrentAdaptableHeap, which answers each request
+	 * of a batch on its own and so cannot leave half a batch in the heap.
+	 * If the comparator throws partway, the new entries are taken back
+	 * out without calling it again: a bottom-up build puts back the
+	 * slots it saved beforehand, in O(n) like the build itself, and
+	 * entries sifted in one at a time walk their sift paths back down,
+	 * last first, in O(log n) each. The heap is then exactly as it was.
+	 * Only the array layout can do this, and metrics are not recorded.
 	 */
-	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+	@SuppressWarnings("unchecked")
+	List<Entry<K,V>> insertAllOrNothing(Iterable<? extends Entry<K,V>> pairs) throws InvalidKeyException {
+		if(_array==null) {
+			throw new IllegalStateException("Only the array layout can take a batch back.");
+		}
+		List<MyHeapEntry<K,V>> created=createEntries(pairs);
+		int before=node_num;
+		//addEntries rebuilds bottom-up exactly when the batch is at least as large as the heap
+		MyHeapEntry<K,V>[] saved=null;
+		if(created.size()>=before) {
+			saved=(MyHeapEntry<K,V>[]) new MyHeapEntry[before];
+			for(int i=0;i<before;i++) {
+				saved[i]=_array.get(i);
+			}
+		}
 		try {
-			this._compare.compare(key,key);
+			addEntries(created,null);
 		}
-		catch(ClassCastException e){
-			throw new InvalidKeyException("The key is invalid.");
+		catch(RuntimeException e) {
+			if(saved!=null) {
+				restoreSlots(saved,created);
+			}
+			else {
+				unsift(created);
+			}
+			throw e;
 		}
-		if(entry==null) {
-			throw new InvalidEntryException("Entry is invalid.");
+		return new ArrayList<Entry<K,V>>(created);
+	}
+
+	//puts back the slots saved before a failed build and drops the entries it added
+	private void restoreSlots(MyHeapEntry<K,V>[] saved, List<MyHeapEntry<K,V>> added) {
+		while(node_num>saved.length) {
+			_array.removeLast();
+			node_num--;
 		}
-		MyHeapEntry<K,V> checkedEntry = this.checkAndConvertEntry(entry);
-		K save=checkedEntry.getKey();
-		checkedEntry.setKey(key);
-		if(this._compare.compare(key,save)==0) {
-			return save;
+		for(int i=0;i<saved.length;i++) {
+			_array.set(i,saved[i]);
+			saved[i].setSlot(i);
 		}
-		else if(this._compare.compare(key,save)>0) {
-			downHeap(checkedEntry.getPos());
+		for(MyHeapEntry<K,V> entry : added) {
+			entry.setSlot(-1);
 		}
-		else {
-			upHeap(checkedEntry.getPos(),key);
+	}
+
+	//takes back entries sifted in one at a time, last first; each one's sift shifted the
+	//entries on the path from the last slot up to where it stopped one level down
+	private void unsift(List<MyHeapEntry<K,V>> added) {
+		int[] path=new int[64];
+		for(int i=added.size()-1;i>=0;i--) {
+			MyHeapEntry<K,V> entry=added.get(i);
+			int slot=entry.getSlot();
+			if(slot<0) {
+				continue;
+			}
+			int length=0;
+			for(int at=node_num-1;at!=slot;at=parentSlot(at)) {
+				path[length++]=at;
+			}
+			for(int j=length-1;j>=0;j--) {
+				MyHeapEntry<K,V> moved=_array.get(path[j]);
+				_array.set(slot,moved);
+				moved.setSlot(slot);
+				slot=path[j];
+			}
+			_array.removeLast();
+			node_num--;
+			entry.setSlot(-1);
 		}
-		return save;
 	}
 
 	/** 
-	 * Replaces the value of the given entry.
-	 * This method must run in O(1) time.
-	 *
-	 * @param entry within which the value will be replaced
-	 * @param value to replace the existing value in the entry
-	 * @return the old value formerly associated with the entry
-	 * @throws InvalidEntryException if the entry cannot have its value replaced
+	 * Moves every entry of the other heap into this one, leaving the other
+	 * heap empty. The entries keep their identity, so entries the other
+	 * heap handed out can be passed to replaceKey/remove on this heap.
+	 * The entries are ordered by this heap's comparator from now on.
+	 * 
+	 * Like insertAll, when the other heap is at least as large as this
+	 * one the two are concatenated and rebuilt bottom-up in O(n+m) time;
+	 * a smaller heap is sifted in one entry at a time in O(m log(n+m)).
+	 * 
+	 * @param other the heap to take the entries of
+	 * @throws InvalidKeyException if a key of the other heap is not suitable
+	 *         for this heap's comparator, in which case neither heap changes
+	 * @throws IllegalArgumentException if other is null or this heap
 	 */
-	public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {		
-		MyHeapEntry<K,V> checkedEntry = this.checkAndConvertEntry(entry);
-		if(entry==null) {
-			throw new InvalidEntryException("Entry is invalid.");
+	public void meld(MyHeap<K,V> other) throws InvalidKeyException {
+		if(other==null || other==this) {
+			throw new IllegalArgumentException("Can only meld a different heap.");
 		}
-		V save=checkedEntry.getValue();
-		checkedEntry.setValue(value);
-		return save;
+		if(_metrics==null) {
+			meldEntries(other);
+			return;
+		}
+		long start=System.nanoTime();
+		int melded=other.size();
+		meldEntries(other);
+		_metrics.recordOperation(HeapMetrics.Op.MELD,System.nanoTime()-start,melded);
 	}
-	
 
-	/**
-	 * Determines whether a given entry is valid and converts it to a
-	 * MyHeapEntry. Don't change this method.
-	 *
-	 * @param entry to be checked for validity with respect to the heap
-	 * @return the entry cast as a MyHeapEntry if considered valid 
-	 *
-	 * @throws InvalidEntryException if the entry is not of the proper class
-	 */
-	public MyHeapEntry<K,V> checkAndConvertEntry(Entry<K,V> entry)
-			throws InvalidEntryException {
-		if (entry == null || !(entry instanceof MyHeapEntry)) {
-			throw new InvalidEntryException("Invalid entry");
+	private void meldEntries(MyHeap<K,V> other) throws InvalidKeyException {
+		Iterator<MyHeapEntry<K,V>> entries=other.levelOrderIterator();
+		while(entries.hasNext()) {
+			checkKey(entries.next().getKey());
 		}
-		return (MyHeapEntry<K, V>) entry;
+		List<MyHeapEntry<K,V>> taken=other.takeAll(false);
+		for(MyHeapEntry<K,V> entry : taken) {
+			cacheSortKey(entry);
+		}
+		addEntries(taken,null);
 	}
-	
-	private void downHeap(Position<MyHeapEntry<K,V>> pos_){
-		Position<MyHeapEntry<K,V>> pos=pos_;
-		if(_tree.isExternal(pos)) {
-			return;
+
+	/** 
+	 * Creates a heap holding the given key-value pairs, built bottom-up in
+	 * O(n) time rather than by n separate inserts. Use insertAll on an
+	 * empty heap instead when the entries are needed for later updates.
+	 * 
+	 * @param comparator to be used for heap keys
+	 * @param layout of the underlying tree
+	 * @param pairs the key-value pairs to load
+	 * @return a heap containing every pair
+	 * @throws InvalidKeyException if any key is not suitable for the heap
+	 */
+	public static <K,V> MyHeap<K,V> heapify(Comparator<K> comparator, Layout layout,
+			Iterable<? extends Entry<K,V>> pairs) throws InvalidKeyException {
+		return heapify(comparator,layout,pairs,null);
+	}
+
+	/** 
+	 * Like heapify(comparator, layout, pairs), building on the given pool
+	 * as insertAll(pairs, pool) does.
+	 * 
+	 * @param comparator to be used for heap keys
+	 * @param layout of the underlying tree
+	 * @param pairs the key-value pairs to load
+	 * @param pool to build on, or null to build on the calling thread
+	 * @return a heap containing every pair
+	 * @throws InvalidKeyException if any key is not suitable for the heap
+	 */
+	public static <K,V> MyHeap<K,V> heapify(Comparator<K> comparator, Layout layout,
+			Iterable<? extends Entry<K,V>> pairs, ForkJoinPool pool) throws InvalidKeyException {
+		return heapify(comparator,layout,pairs,pool,null);
+	}
+
+	/** 
+	 * Like heapify(comparator, layout, pairs, pool), with the given metrics
+	 * attached before the build, so that it is recorded as an INSERT_ALL.
+	 * 
+	 * @param comparator to be used for heap keys
+	 * @param layout of the underlying tree
+	 * @param pairs the key-value pairs to load
+	 * @param pool to build on, or null to build on the calling thread
+	 * @param metrics to attach to the new heap, or null for none
+	 * @return a heap containing every pair
+	 * @throws InvalidKeyException if any key is not suitable for the heap
+	 */
+	public static <K,V> MyHeap<K,V> heapify(Comparator<K> comparator, Layout layout,
+			Iterable<? extends Entry<K,V>> pairs, ForkJoinPool pool, HeapMetrics metrics) throws InvalidKeyException {
+		MyHeap<K,V> heap=new MyHeap<K,V>(comparator,layout);
+		heap.setMetrics(metrics);
+		heap.insertAll(pairs,pool);
+		return heap;
+	}
+
+	/** 
+	 * Creates an empty heap ordered by a long extracted from each key.
+	 * The long is worked out once when an entry is inserted or gets a new
+	 * key, and kept in the entry, so the sifts compare two longs instead
+	 * of calling a comparator on two key objects. However heavy the keys,
+	 * a comparison then costs the same. The heap otherwise behaves exactly
+	 * like one built with the comparator Long.compare(sortKey(a), sortKey(b)),
+	 * which is the comparator it reports and uses for everything else.
+	 * 
+	 * A key must keep its extracted value while it is in the heap.
+	 * setComparator switches the heap back to that comparator's order.
+	 * 
+	 * @param sortKey extracts the long to order keys by
+	 * @param layout of the underlying tree
+	 * @param arity number of children per node, one of 2, 4, 8 or 16
+	 * @return an empty heap ordered by the extracted longs
+	 * @throws IllegalArgumentException if sortKey or layout is null, or the arity is unsupported
+	 */
+	public static <K,V> MyHeap<K,V> withLongKey(final ToLongFunction<? super K> sortKey, Layout layout, int arity) {
+		if(sortKey==null) {
+			throw new IllegalArgumentException("Key extractor cannot be null.");
 		}
-		if(_tree.hasLeft(pos) && _tree.hasRight(pos)) {
-			if(this._compare.compare(_tree.left(pos).element().getKey(),_tree.right(pos).element().getKey())<=0) {
-				if(this._compare.compare(_tree.left(pos).element().getKey(),pos.element().getKey())<0) {
-					//switch their positions
-					_tree.left(pos).element().setPos(pos);
-					pos.element().setPos(_tree.left(pos));
-					//swap elements in the tree
-					_tree.downheap(pos,-1);
-					pos=_tree.left(pos);
-					downHeap(pos);
-				}
-			}
-			if(_tree.hasRight(pos)&&this._compare.compare(_tree.right(pos).element().getKey(),_tree.left(pos).element().getKey())<=0) {
-				if(this._compare.compare(_tree.right(pos).element().getKey(),pos.element().getKey())<0) {
-					//switch their positions
-					_tree.right(pos).element().setPos(pos);
-					pos.element().setPos(_tree.right(pos));
-					//swap elements in the tree
-					_tree.downheap(pos,1);
-					pos=_tree.right(pos);
-					downHeap(pos);
-				}
+		MyHeap<K,V> heap=new MyHeap<K,V>(new Comparator<K>() {
+			public int compare(K a, K b) {
+				return Long.compare(sortKey.applyAsLong(a),sortKey.applyAsLong(b));
 			}
-			return;
+		},layout,arity);
+		heap._sortKey=sortKey;
+		heap._primitive=true;
+		return heap;
+	}
+
+	/** 
+	 * Like withLongKey(sortKey, layout, arity), for a binary heap.
+	 * 
+	 * @param sortKey extracts the long to order keys by
+	 * @param layout of the underlying tree
+	 * @return an empty heap ordered by the extracted longs
+	 */
+	public static <K,V> MyHeap<K,V> withLongKey(ToLongFunction<? super K> sortKey, Layout layout) {
+		return withLongKey(sortKey,layout,2);
+	}
+
+	/** 
+	 * Like withLongKey, for keys ordered by a double. The double is kept
+	 * as a long whose order is that of Double.compare, NaN last.
+	 * 
+	 * @param sortKey extracts the double to order keys by
+	 * @param layout of the underlying tree
+	 * @param arity number of children per node, one of 2, 4, 8 or 16
+	 * @return an empty heap ordered by the extracted doubles
+	 * @throws IllegalArgumentException if sortKey or layout is null, or the arity is unsupported
+	 */
+	public static <K,V> MyHeap<K,V> withDoubleKey(final ToDoubleFunction<? super K> sortKey, Layout layout, int arity) {
+		if(sortKey==null) {
+			throw new IllegalArgumentException("Key extractor cannot be null.");
 		}
-		if(_tree.hasLeft(pos) && !(_tree.hasRight(pos))){
-			if(this._compare.compare(_tree.left(pos).element().getKey(),pos.element().getKey())<0) {
-				//switch their positions
-				_tree.left(pos).element().setPos(pos);
-				pos.element().setPos(_tree.left(pos));
-				//swap elements in the tree
-				_tree.downheap(pos,-1);
-				pos=_tree.left(pos);
-				downHeap(pos);
+		return withLongKey(new ToLongFunction<K>() {
+			public long applyAsLong(K key) {
+				//flipping the magnitude bits of negatives makes the bits sort as signed longs
+				long bits=Double.doubleToLongBits(sortKey.applyAsDouble(key));
+				return bits^((bits>>63)&Long.MAX_VALUE);
 			}
-			return;
+		},layout,arity);
+	}
+
+	/** 
+	 * Removes and returns the entry with the minimum key.
+	 * This method must run in O(log n) time.
+	 * 
+	 * @return the entry with the with the minimum key, now removed 
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
+		if(size()==0) {
+			throw new EmptyPriorityQueueException("Heap is empty.");
 		}
-		if(_tree.hasRight(pos) && !(_tree.hasLeft(pos))){
-			if(this._compare.compare(_tree.right(pos).element().getKey(),pos.element().getKey())<0) {
-				//switch their positions
-				_tree.right(pos).element().setPos(pos);
-				pos.element().setPos(_tree.right(pos));
-				//swap elements in the tree
-				_tree.downheap(pos,1);
-				pos=_tree.right(pos);
-				downHeap(pos);
-			}
-			return;
+		if(_metrics==null) {
+			return removeRoot();
+		}
+		long start=System.nanoTime();
+		Entry<K,V> removed=removeRoot();
+		_metrics.recordOperation(HeapMetrics.Op.REMOVE_MIN,System.nanoTime()-start);
+		return removed;
+	}
+
+	/** 
+	 * Removes up to k entries with the smallest keys and returns them in
+	 * ascending key order. Asking for more entries than the heap holds
+	 * simply empties it. The entries come out as one batch rather than
+	 * k separate removeMins; see removeBatch.
+	 * This method must run in O(k log n) time.
+	 * 
+	 * @param k the maximum number of entries to remove
+	 * @return the removed entries, smallest key first
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public List<Entry<K,V>> removeMin(int k) throws IllegalArgumentException {
+		if(k<0) {
+			throw new IllegalArgumentException("Cannot remove a negative number of entries.");
+		}
+		return new ArrayList<Entry<K,V>>(removeBatchRecorded(k,null));
+	}
+
+	/** 
+	 * Removes up to max entries with the smallest keys and adds them to
+	 * the given collection in ascending key order.
+	 * This method must run in O(max log n) time.
+	 * 
+	 * @param sink the collection to add the removed entries to
+	 * @param max the maximum number of entries to remove
+	 * @return the number of entries removed
+	 * @throws IllegalArgumentException if sink is null or max is negative
+	 */
+	public int drainTo(Collection<? super Entry<K,V>> sink, int max) throws IllegalArgumentException {
+		if(sink==null) {
+			throw new IllegalArgumentException("Sink cannot be null.");
+		}
+		return drainTo((Consumer<Entry<K,V>>) sink::add,max);
+	}
+
+	/** 
+	 * Removes up to max entries with the smallest keys and passes them to
+	 * the given consumer in ascending key order. The whole batch is taken
+	 * out and the heap made valid again before the first entry is passed
+	 * on, so the consumer sees the heap without any of them and may use
+	 * it freely. If the consumer throws, the entries it has not been
+	 * given yet are out of the heap all the same.
+	 * This method must run in O(max log n) time.
+	 * 
+	 * @param sink the consumer to hand the removed entries to
+	 * @param max the maximum number of entries to remove
+	 * @return the number of entries removed
+	 * @throws IllegalArgumentException if sink is null or max is negative
+	 */
+	public int drainTo(Consumer<? super Entry<K,V>> sink, int max) throws IllegalArgumentException {
+		if(sink==null) {
+			throw new IllegalArgumentException("Sink cannot be null.");
+		}
+		if(max<0) {
+			throw new IllegalArgumentException("Cannot remove a negative number of entries.");
+		}
+		return handOver(removeBatchRecorded(max,null),sink);
+	}
+
+	/** 
+	 * Removes entries in ascending key order for as long as the minimum
+	 * key satisfies the condition, passing each one to the consumer. A
+	 * typical use is draining everything that is due, e.g.
+	 * drainWhile(due -> due <= now, sink). The condition is tested while
+	 * the batch is found, before anything is removed, and the consumer
+	 * gets the batch afterwards, as for drainTo.
+	 * This method must run in O((r+1) log n) time for r entries removed.
+	 * 
+	 * @param condition tested against the current minimum key
+	 * @param sink the consumer to hand the removed entries to
+	 * @return the number of entries removed
+	 * @throws IllegalArgumentException if condition or sink is null
+	 */
+	public int drainWhile(Predicate<? super K> condition, Consumer<? super Entry<K,V>> sink)
+			throws IllegalArgumentException {
+		if(condition==null || sink==null) {
+			throw new IllegalArgumentException("Condition and sink cannot be null.");
+		}
+		return handOver(removeBatchRecorded(Integer.MAX_VALUE,condition),sink);
+	}
+
+	private int handOver(List<MyHeapEntry<K,V>> removed, Consumer<? super Entry<K,V>> sink) {
+		for(MyHeapEntry<K,V> entry : removed) {
+			sink.accept(entry);
+		}
+		return removed.size();
+	}
+
+	//removeBatch, recorded as one DRAIN when metrics are attached
+	private List<MyHeapEntry<K,V>> removeBatchRecorded(int max, Predicate<? super K> condition) {
+		if(_metrics==null) {
+			return removeBatch(max,condition);
+		}
+		long start=System.nanoTime();
+		List<MyHeapEntry<K,V>> removed=removeBatch(max,condition);
+		_metrics.recordOperation(HeapMetrics.Op.DRAIN,System.nanoTime()-start,removed.size());
+		return removed;
+	}
+
+	/*
+	 * Batch removal. The smallest k entries, and any tombstones above
+	 * them, make up a subtree hanging from the root, and a frontier walk
+	 * like sortedView's finds it in O(k log k) time without changing the
+	 * heap. Then all m nodes of that subtree come out at once: the
+	 * entries of the last m nodes fill the holes the subtree leaves
+	 * above them, and the holes, which are again a subtree hanging from
+	 * the root, are each sifted down once, children before parents.
+	 * That is Floyd's bottom-up build limited to the holes, so a hole
+	 * near the root only sifts through what lies below it, and the
+	 * whole batch costs no more than a rebuild of the entire heap would.
+	 * The walk pops a node only after its parent, so the reverse of its
+	 * order is a children-first order of the holes.
+	 */
+
+	private List<MyHeapEntry<K,V>> removeBatch(int max, Predicate<? super K> condition) {
+		List<MyHeapEntry<K,V>> live=new ArrayList<MyHeapEntry<K,V>>(Math.min(max,size()));
+		if(max==0 || size()==0) {
+			return live;
+		}
+		//the nodes of the subtree in the order the walk popped them, with their level-order index
+		List<MyHeapEntry<K,V>> popped=new ArrayList<MyHeapEntry<K,V>>();
+		int[] index=new int[16];
+		Frontier frontier=new Frontier();
+		frontier.push(_array!=null ? _array.get(0) : _tree.root().element(),0);
+		while(live.size()<max && frontier.size!=0) {
+			MyHeapEntry<K,V> entry=frontier.entries[0];
+			int at=frontier.index[0];
+			if(!entry.isTombstone()) {
+				if(condition!=null && !condition.test(entry.getKey())) {
+					break;
+				}
+				live.add(entry);
+			}
+			frontier.pop();
+			if(popped.size()==index.length) {
+				index=Arrays.copyOf(index,index.length*2);
+			}
+			index[popped.size()]=at;
+			popped.add(entry);
+			if(_array!=null) {
+				int first=firstChildSlot(at);
+				int end=childrenEnd(at,first);
+				for(int child=first;child<end;child++) {
+					frontier.push(_array.get(child),child);
+				}
+			}
+			else if(_tree.hasLeft(entry.getPos())) {
+				Position<MyHeapEntry<K,V>> pos=entry.getPos();
+				frontier.push(_tree.left(pos).element(),2*at+1);
+				Position<MyHeapEntry<K,V>> right=_tree.right(pos);
+				if(right!=null) {
+					frontier.push(right.element(),2*at+2);
+				}
+			}
+		}
+		takeSubtree(popped,index);
+		return live;
+	}
+
+	//removes the popped subtree, fills its holes from the last nodes and sifts the holes down
+	private void takeSubtree(List<MyHeapEntry<K,V>> popped, int[] index) {
+		int m=popped.size();
+		int remaining=node_num-m;
+		//the holes that stay inside the shrunken tree, children first
+		int holes=0;
+		int[] holeSlots=_array!=null ? new int[m] : null;
+		List<Position<MyHeapEntry<K,V>>> holePositions=_array!=null ? null : new ArrayList<Position<MyHeapEntry<K,V>>>(m);
+		for(int i=m-1;i>=0;i--) {
+			if(index[i]<remaining) {
+				if(_array!=null) {
+					holeSlots[holes]=index[i];
+				}
+				else {
+					holePositions.add(popped.get(i).getPos());
+				}
+				holes++;
+			}
+		}
+		for(MyHeapEntry<K,V> entry : popped) {
+			if(_array!=null) {
+				entry.setSlot(-1);
+			}
+			else {
+				entry.setPos(null);
+			}
+			if(entry.isTombstone()) {
+				_tombstones--;
+				if(entry.isReleased()) {
+					keep(entry);
+				}
+			}
+		}
+		//the last m nodes leave the tree; those not in the subtree move into the holes
+		int filled=0;
+		for(int i=0;i<m;i++) {
+			if(_array!=null) {
+				MyHeapEntry<K,V> last=_array.removeLast();
+				if(last.getSlot()>=0) {
+					_array.set(holeSlots[filled],last);
+					last.setSlot(holeSlots[filled++]);
+				}
+			}
+			else {
+				MyHeapEntry<K,V> last=_tree.remove();
+				if(last.getPos()!=null) {
+					Position<MyHeapEntry<K,V>> pos=holePositions.get(filled++);
+					_tree.replace(pos,last);
+					last.setPos(pos);
+				}
+			}
+		}
+		node_num=remaining;
+		if(_metrics!=null) {
+			_metrics.recordPositionWrites(filled);
+		}
+		for(int i=0;i<holes;i++) {
+			if(_array!=null) {
+				downHeapSlot(holeSlots[i]);
+			}
+			else {
+				downHeap(holePositions.get(i));
+			}
+		}
+	}
+
+	//a small binary heap of the nodes the walk can pop next, with their level-order index
+	private class Frontier {
+		@SuppressWarnings("unchecked")
+		private MyHeapEntry<K,V>[] entries=(MyHeapEntry<K,V>[]) new MyHeapEntry[16];
+		private int[] index=new int[16];
+		private int size=0;
+		
+		private void push(MyHeapEntry<K,V> entry, int at) {
+			if(size==entries.length) {
+				entries=Arrays.copyOf(entries,size*2);
+				index=Arrays.copyOf(index,size*2);
+			}
+			int slot=size++;
+			while(slot>0) {
+				int parent=(slot-1)>>1;
+				if(compareEntries(entry,entries[parent])>=0) {
+					break;
+				}
+				entries[slot]=entries[parent];
+				index[slot]=index[parent];
+				slot=parent;
+			}
+			entries[slot]=entry;
+			index[slot]=at;
+		}
+		
+		private void pop() {
+			MyHeapEntry<K,V> entry=entries[--size];
+			int at=index[size];
+			entries[size]=null;
+			if(size==0) {
+				return;
+			}
+			int slot=0;
+			int child=1;
+			while(child<size) {
+				if(child+1<size && compareEntries(entries[child+1],entries[child])<0) {
+					child++;
+				}
+				if(compareEntries(entries[child],entry)>=0) {
+					break;
+				}
+				entries[slot]=entries[child];
+				index[slot]=index[child];
+				slot=child;
+				child=2*slot+1;
+			}
+			entries[slot]=entry;
+			index[slot]=at;
+		}
+	}
+
+	/** 
+	 * Returns a Spliterator over the entries in no particular order, for
+	 * looking at the heap without taking it apart, e.g. through
+	 * StreamSupport.stream(heap.entries(), true). It splits for parallel
+	 * streams by slot range on the array layout and by subtree on the
+	 * linked one. The heap must not be modified while it is in use.
+	 * This method must run in O(1) time.
+	 * 
+	 * @return a Spliterator over the entries of the heap
+	 */
+	public Spliterator<Entry<K,V>> entries() {
+		if(_array!=null) {
+			return new SlotSpliterator(0,node_num);
+		}
+		SubtreeSpliterator all=new SubtreeSpliterator(size());
+		if(node_num!=0) {
+			all.subtrees.push(_tree.root());
+		}
+		return all;
+	}
+
+	/** 
+	 * Returns a lazy Stream of the entries in ascending key order, leaving
+	 * the heap untouched. The stream walks the tree from the root with a
+	 * small frontier heap of the nodes it can reach next, so taking the
+	 * first k entries costs O(k log k) time and O(k) space whatever the
+	 * size of the heap. The heap must not be modified while the stream is
+	 * in use.
+	 * This method must run in O(1) time.
+	 * 
+	 * @return a sequential stream of the entries, smallest key first
+	 */
+	public Stream<Entry<K,V>> sortedView() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new SortedIterator(),
+				Spliterator.ORDERED|Spliterator.NONNULL),false);
+	}
+
+	//min() without the emptiness check, for callers that already made it
+	private MyHeapEntry<K,V> minEntry() {
+		dropRootTombstones();
+		if(_array!=null) {
+			return _array.get(0);
+		}
+		return _tree.return_min();
+	}
+
+	//removeMin() without the emptiness check, for callers that already made it
+	private MyHeapEntry<K,V> removeRoot() {
+		dropRootTombstones();
+		return removeTop();
+	}
+
+	//pops tombstones off the root until a live entry is there; callers know one exists
+	private void dropRootTombstones() {
+		while(_tombstones!=0 && (_array!=null ? _array.get(0) : _tree.return_min()).isTombstone()) {
+			removeTop();
+			_tombstones--;
+		}
+	}
+
+	//physically removes whatever entry is at the root
+	private MyHeapEntry<K,V> removeTop() {
+		if(_array!=null) {
+			return removeSlot(0);
+		}
+		MyHeapEntry<K,V> save=_tree.return_min();
+		MyHeapEntry<K,V> last=_tree.remove();
+		node_num--;
+		save.setPos(null);
+		if(last!=save) {
+			//the last entry fills the hole at the root and sinks from there
+			Position<MyHeapEntry<K,V>> pos=_tree.root();
+			_tree.replace(pos,last);
+			last.setPos(pos);
+			downHeap(pos);
+		}
+		return save;
+	}
+
+	/** 
+	 * Removes and returns the given entry from the heap.
+	 * This method must run in O(log n) time, or O(1) amortized
+	 * with lazy deletion switched on.
+	 *
+	 * @param entry to be removed from the heap
+	 * @return the entry specified for removal by the parameter, now removed
+	 * @throws InvalidEntryException if the entry cannot be removed from this heap
+	 */
+	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+		if(_metrics==null) {
+			return removeEntry(entry);
+		}
+		long start=System.nanoTime();
+		Entry<K,V> removed=removeEntry(entry);
+		_metrics.recordOperation(HeapMetrics.Op.REMOVE,System.nanoTime()-start);
+		return removed;
+	}
+
+	/** 
+	 * Removes the given entry, provided it is still in the generation the
+	 * caller recorded; see setPooled.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param entry to be removed from the heap
+	 * @param generation the entry's getGeneration() when the caller got hold of it
+	 * @return the entry specified for removal by the parameter, now removed
+	 * @throws InvalidEntryException if the entry cannot be removed from this heap,
+	 *         or has been reused since
+	 */
+	public Entry<K,V> remove(Entry<K,V> entry, int generation) throws InvalidEntryException {
+		return remove(checkGeneration(entry,generation));
+	}
+
+	private Entry<K,V> removeEntry(Entry<K,V> entry) throws InvalidEntryException {
+		MyHeapEntry<K,V> checkedEntry = this.checkAndConvertEntry(entry);
+		if(size()==0) {
+			throw new EmptyPriorityQueueException("Heap is empty.");
+		}
+		if(_lazyRatio!=0) {
+			return markTombstone(checkedEntry);
+		}
+		if(_array!=null) {
+			return removeSlot(checkSlot(checkedEntry));
+		}
+		Position<MyHeapEntry<K,V>> pos=checkPos(checkedEntry);
+		MyHeapEntry<K,V> last=_tree.remove();
+		node_num--;
+		checkedEntry.setPos(null);
+		if(last!=checkedEntry) {
+			//the last entry fills the hole and may need to move either way
+			_tree.replace(pos,last);
+			last.setPos(pos);
+			if(upHeap(pos)==pos) {
+				downHeap(pos);
+			}
+		}
+		return checkedEntry;
+	}
+
+	/** 
+	 * Replaces the key of the given entry.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is invalid
+	 * @throws InvalidKeyException if the key is invalid
+	 */
+	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		if(_metrics==null) {
+			return changeKey(entry,key);
+		}
+		long start=System.nanoTime();
+		K old=changeKey(entry,key);
+		_metrics.recordOperation(HeapMetrics.Op.REPLACE_KEY,System.nanoTime()-start);
+		return old;
+	}
+
+	/** 
+	 * Replaces the key of the given entry, provided it is still in the
+	 * generation the caller recorded; see setPooled.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param generation the entry's getGeneration() when the caller got hold of it
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is invalid, or has been reused since
+	 * @throws InvalidKeyException if the key is invalid
+	 */
+	public K replaceKey(Entry<K,V> entry, int generation, K key) throws InvalidEntryException, InvalidKeyException {
+		return replaceKey(checkGeneration(entry,generation),key);
+	}
+
+	private K changeKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		try {
+			this._compare.compare(key,key);
+		}
+		catch(ClassCastException e){
+			throw new InvalidKeyException("The key is invalid.");
+		}
+		if(entry==null) {
+			throw new InvalidEntryException("Entry is invalid.");
+		}
+		MyHeapEntry<K,V> checkedEntry = this.checkAndConvertEntry(entry);
+		if(_array!=null) {
+			checkSlot(checkedEntry);
+		}
+		else {
+			checkPos(checkedEntry);
+		}
+		K save=checkedEntry.getKey();
+		long saveSortKey=checkedEntry.getSortKey();
+		checkedEntry.setKey(key);
+		cacheSortKey(checkedEntry);
+		//one comparison decides the direction
+		int change=_primitive ? Long.compare(checkedEntry.getSortKey(),saveSortKey) : this._compare.compare(key,save);
+		if(change==0) {
+			return save;
+		}
+		else if(_array!=null) {
+			if(change>0) {
+				downHeapSlot(checkedEntry.getSlot());
+			}
+			else {
+				upHeapSlot(checkedEntry.getSlot());
+			}
+		}
+		else if(change>0) {
+			downHeap(checkedEntry.getPos());
+		}
+		else {
+			upHeap(checkedEntry.getPos());
+		}
+		return save;
+	}
+
+	/** 
+	 * Replaces the value of the given entry.
+	 * This method must run in O(1) time.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry cannot have its value replaced
+	 */
+	public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {		
+		MyHeapEntry<K,V> checkedEntry = this.checkAndConvertEntry(entry);
+		if(entry==null) {
+			throw new InvalidEntryException("Entry is invalid.");
+		}
+		V save=checkedEntry.getValue();
+		checkedEntry.setValue(value);
+		return save;
+	}
+	
+
+	/**
+	 * Determines whether a given entry is valid and converts it to a
+	 * MyHeapEntry. Don't change this method.
+	 *
+	 * @param entry to be checked for validity with respect to the heap
+	 * @return the entry cast as a MyHeapEntry if considered valid 
+	 *
+	 * @throws InvalidEntryException if the entry is not of the proper class
+	 */
+	public MyHeapEntry<K,V> checkAndConvertEntry(Entry<K,V> entry)
+			throws InvalidEntryException {
+		if (entry == null || !(entry instanceof MyHeapEntry)) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		return (MyHeapEntry<K, V>) entry;
+	}
+	
+	//rejects a handle whose entry has been reused by a pooling heap since the caller got it
+	private MyHeapEntry<K,V> checkGeneration(Entry<K,V> entry, int generation) throws InvalidEntryException {
+		MyHeapEntry<K,V> checkedEntry = this.checkAndConvertEntry(entry);
+		if(checkedEntry.getGeneration()!=generation) {
+			throw new InvalidEntryException("Entry is not in this heap.");
+		}
+		return checkedEntry;
+	}
+	
+	//orders two entries by their cached longs when the heap has a key extractor
+	private int compareEntries(MyHeapEntry<K,V> one, MyHeapEntry<K,V> two) {
+		if(_primitive) {
+			return Long.compare(one.getSortKey(),two.getSortKey());
+		}
+		return this._compare.compare(one.getKey(),two.getKey());
+	}
+	
+	private void cacheSortKey(MyHeapEntry<K,V> entry) {
+		if(_sortKey!=null) {
+			entry.setSortKey(_sortKey.applyAsLong(entry.getKey()));
+		}
+	}
+	
+	//throws if the comparator cannot handle the key
+	private void checkKey(K key) throws InvalidKeyException {
+		try {
+			this._compare.compare(key,key);
+		}
+		catch(NullPointerException|ClassCastException e){
+			throw new InvalidKeyException("The key is invalid.");
+		}
+	}
+	
+	/*
+	 * Iteration. Tombstones are still in the tree, so all three skip them.
+	 */
+	
+	//splits the array by halving its range of slots
+	private class SlotSpliterator implements Spliterator<Entry<K,V>> {
+		private int slot;
+		private final int end;
+		
+		private SlotSpliterator(int slot_, int end_) {
+			slot=slot_;
+			end=end_;
+		}
+		
+		public boolean tryAdvance(Consumer<? super Entry<K,V>> action) {
+			while(slot<end) {
+				MyHeapEntry<K,V> entry=_array.get(slot++);
+				if(!entry.isTombstone()) {
+					action.accept(entry);
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		public Spliterator<Entry<K,V>> trySplit() {
+			int middle=(slot+end)>>>1;
+			if(middle<=slot) {
+				return null;
+			}
+			Spliterator<Entry<K,V>> front=new SlotSpliterator(slot,middle);
+			slot=middle;
+			return front;
+		}
+		
+		public long estimateSize() {
+			return end-slot;
+		}
+		
+		public int characteristics() {
+			int exact=_tombstones==0 ? Spliterator.SIZED|Spliterator.SUBSIZED : 0;
+			return exact|Spliterator.NONNULL;
+		}
+	}
+	
+	//walks a set of whole subtrees depth first, and splits by giving one of them away
+	private class SubtreeSpliterator implements Spliterator<Entry<K,V>> {
+		private final ArrayDeque<Position<MyHeapEntry<K,V>>> subtrees=new ArrayDeque<Position<MyHeapEntry<K,V>>>();
+		//nodes whose children were split apart before they were visited
+		private final ArrayDeque<MyHeapEntry<K,V>> singles=new ArrayDeque<MyHeapEntry<K,V>>();
+		private long estimate;
+		
+		private SubtreeSpliterator(long estimate_) {
+			estimate=estimate_;
+		}
+		
+		public boolean tryAdvance(Consumer<? super Entry<K,V>> action) {
+			while(!singles.isEmpty()) {
+				MyHeapEntry<K,V> entry=singles.poll();
+				if(!entry.isTombstone()) {
+					action.accept(entry);
+					return true;
+				}
+			}
+			while(!subtrees.isEmpty()) {
+				Position<MyHeapEntry<K,V>> pos=subtrees.pop();
+				pushChildren(pos);
+				if(!pos.element().isTombstone()) {
+					action.accept(pos.element());
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		public Spliterator<Entry<K,V>> trySplit() {
+			if(subtrees.size()==1) {
+				//open up the only subtree so there is something to give away
+				Position<MyHeapEntry<K,V>> pos=subtrees.pop();
+				singles.add(pos.element());
+				pushChildren(pos);
+			}
+			if(subtrees.size()<2) {
+				return null;
+			}
+			//the oldest subtree on the stack is the largest
+			SubtreeSpliterator given=new SubtreeSpliterator(estimate/2);
+			given.subtrees.push(subtrees.removeLast());
+			estimate-=given.estimate;
+			return given;
+		}
+		
+		public long estimateSize() {
+			return estimate;
+		}
+		
+		public int characteristics() {
+			return Spliterator.NONNULL;
+		}
+		
+		private void pushChildren(Position<MyHeapEntry<K,V>> pos) {
+			if(_tree.hasLeft(pos)) {
+				Position<MyHeapEntry<K,V>> right=_tree.right(pos);
+				if(right!=null) {
+					subtrees.push(right);
+				}
+				subtrees.push(_tree.left(pos));
+			}
+		}
+	}
+	
+	/*
+	 * A node can only come out after its parent, so the next entry in key
+	 * order is always the smallest child of one already returned. The
+	 * frontier holds exactly those candidates, keyed like the heap, with
+	 * the slot or position to expand next as the value. It uses the
+	 * comparator as given, so metrics do not count these comparisons.
+	 */
+	private class SortedIterator implements Iterator<Entry<K,V>> {
+		private final MyHeap<K,Object> frontier=new MyHeap<K,Object>(_baseCompare,Layout.ARRAY);
+		private MyHeapEntry<K,V> next;
+		
+		private SortedIterator() {
+			if(node_num!=0) {
+				if(_array!=null) {
+					frontier.insert(_array.get(0).getKey(),0);
+				}
+				else {
+					frontier.insert(_tree.root().element().getKey(),_tree.root());
+				}
+			}
+			advance();
+		}
+		
+		public boolean hasNext() {
+			return next!=null;
+		}
+		
+		public Entry<K,V> next() {
+			if(next==null) {
+				throw new NoSuchElementException();
+			}
+			MyHeapEntry<K,V> entry=next;
+			advance();
+			return entry;
+		}
+		
+		@SuppressWarnings("unchecked")
+		private void advance() {
+			next=null;
+			while(next==null && !frontier.isEmpty()) {
+				Object at=frontier.removeMin().getValue();
+				MyHeapEntry<K,V> entry;
+				if(_array!=null) {
+					int slot=(Integer) at;
+					entry=_array.get(slot);
+					int first=firstChildSlot(slot);
+					int end=childrenEnd(slot,first);
+					for(int child=first;child<end;child++) {
+						frontier.insert(_array.get(child).getKey(),child);
+					}
+				}
+				else {
+					Position<MyHeapEntry<K,V>> pos=(Position<MyHeapEntry<K,V>>) at;
+					entry=pos.element();
+					if(_tree.hasLeft(pos)) {
+						frontier.insert(_tree.left(pos).element().getKey(),_tree.left(pos));
+						Position<MyHeapEntry<K,V>> right=_tree.right(pos);
+						if(right!=null) {
+							frontier.insert(right.element().getKey(),right);
+						}
+					}
+				}
+				if(!entry.isTombstone()) {
+					next=entry;
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Snapshot support for HeapSnapshot. Level order is the order the
+	 * complete tree is filled in, so appending entries in the order they
+	 * were read rebuilds the same tree without any sifting.
+	 */
+	
+	//the entries in level order, i.e. slot order for the array layout
+	Iterator<MyHeapEntry<K,V>> levelOrderIterator() {
+		if(_tombstones!=0) {
+			compact();
+		}
+		if(_array!=null) {
+			return new Iterator<MyHeapEntry<K,V>>() {
+				private int slot=0;
+				
+				public boolean hasNext() {
+					return slot<node_num;
+				}
+				
+				public MyHeapEntry<K,V> next() {
+					if(slot>=node_num) {
+						throw new NoSuchElementException();
+					}
+					return _array.get(slot++);
+				}
+			};
+		}
+		final ArrayDeque<Position<MyHeapEntry<K,V>>> queue=new ArrayDeque<Position<MyHeapEntry<K,V>>>();
+		if(node_num!=0) {
+			queue.add(_tree.root());
+		}
+		return new Iterator<MyHeapEntry<K,V>>() {
+			public boolean hasNext() {
+				return !queue.isEmpty();
+			}
+			
+			public MyHeapEntry<K,V> next() {
+				Position<MyHeapEntry<K,V>> pos=queue.poll();
+				if(pos==null) {
+					throw new NoSuchElementException();
+				}
+				if(_tree.hasLeft(pos)) {
+					queue.add(_tree.left(pos));
+					Position<MyHeapEntry<K,V>> right=_tree.right(pos);
+					if(right!=null) {
+						queue.add(right);
+					}
+				}
+				return pos.element();
+			}
+		};
+	}
+	
+	//makes room for this many more entries up front, where the layout allows it
+	void reserve(int entries) {
+		if(_array!=null) {
+			_array.ensureCapacity(node_num+entries);
+		}
+	}
+	
+	//adds entries in any order to an empty heap and builds it bottom-up
+	void loadUnordered(List<MyHeapEntry<K,V>> entries) throws InvalidKeyException {
+		for(MyHeapEntry<K,V> entry : entries) {
+			checkKey(entry.getKey());
+			cacheSortKey(entry);
+		}
+		addEntries(entries,null);
+	}
+	
+	//adds the entry as the new last node without sifting; returns false, adding
+	//nothing, if that would put it above a larger key
+	boolean appendInLevelOrder(MyHeapEntry<K,V> entry) throws InvalidKeyException {
+		checkKey(entry.getKey());
+		cacheSortKey(entry);
+		if(_array!=null) {
+			if(node_num>0 && compareEntries(entry,_array.get(parentSlot(node_num)))<0) {
+				return false;
+			}
+			entry.setSlot(_array.addLast(entry));
+			node_num++;
+			return true;
+		}
+		Position<MyHeapEntry<K,V>> pos=_tree.add(entry);
+		entry.setPos(pos);
+		node_num++;
+		if(node_num>1 && compareEntries(entry,_tree.parent(pos).element())<0) {
+			_tree.remove();
+			entry.setPos(null);
+			node_num--;
+			return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * Array layout helpers. Entries are tracked by their slot in _array,
+	 * so every move writes the new slot back into the entry.
+	 */
+	
+	//makes sure the entry is actually stored in this heap's array
+	private int checkSlot(MyHeapEntry<K,V> entry) throws InvalidEntryException {
+		int slot=entry.getSlot();
+		if(slot<0 || slot>=node_num || _array.get(slot)!=entry || entry.isTombstone()) {
+			throw new InvalidEntryException("Entry is not in this heap.");
+		}
+		return slot;
+	}
+	
+	//makes sure the entry is still stored in this heap's linked tree
+	private Position<MyHeapEntry<K,V>> checkPos(MyHeapEntry<K,V> entry) throws InvalidEntryException {
+		Position<MyHeapEntry<K,V>> pos=entry.getPos();
+		if(pos==null || pos.element()!=entry || entry.isTombstone()) {
+			throw new InvalidEntryException("Entry is not in this heap.");
+		}
+		return pos;
+	}
+	
+	/*
+	 * Lazy deletion. A tombstone keeps its place in the tree and its
+	 * key, so heap order still holds around it, and is only taken out
+	 * when it reaches the root or when the tree is rebuilt.
+	 */
+	
+	private MyHeapEntry<K,V> markTombstone(MyHeapEntry<K,V> entry) throws InvalidEntryException {
+		if(_array!=null) {
+			checkSlot(entry);
+		}
+		else {
+			checkPos(entry);
+		}
+		entry.setTombstone(true);
+		_tombstones++;
+		if(_tombstones>_lazyRatio*node_num) {
+			compact();
+		}
+		return entry;
+	}
+	
+	//rebuilds the tree from its live entries in O(n) time
+	private void compact() {
+		List<MyHeapEntry<K,V>> live=takeAll(false);
+		heapifyEntries(live,null);
+	}
+	
+	//empties the tree in O(n) time and returns what it held, with or without the tombstones
+	private List<MyHeapEntry<K,V>> takeAll(boolean keepTombstones) {
+		List<MyHeapEntry<K,V>> taken=new ArrayList<MyHeapEntry<K,V>>(keepTombstones ? node_num : node_num-_tombstones);
+		while(node_num!=0) {
+			MyHeapEntry<K,V> last;
+			if(_array!=null) {
+				last=_array.removeLast();
+				last.setSlot(-1);
+			}
+			else {
+				last=_tree.remove();
+				last.setPos(null);
+			}
+			node_num--;
+			if(keepTombstones || !last.isTombstone()) {
+				taken.add(last);
+			}
+			else if(last.isReleased()) {
+				keep(last);
+			}
+		}
+		if(!keepTombstones) {
+			_tombstones=0;
+		}
+		return taken;
+	}
+	
+	//adds entries that are in no tree yet, sifting them in or rebuilding bottom-up, whichever is cheaper
+	private void addEntries(List<MyHeapEntry<K,V>> added, ForkJoinPool pool) {
+		int before=node_num;
+		if(added.size()<before) {
+			if(_array!=null) {
+				_array.ensureCapacity(before+added.size());
+			}
+			for(MyHeapEntry<K,V> newEnt : added) {
+				if(_array!=null) {
+					newEnt.setSlot(_array.addLast(newEnt));
+					node_num++;
+					upHeapSlot(newEnt.getSlot());
+				}
+				else {
+					Position<MyHeapEntry<K,V>> pos=_tree.add(newEnt);
+					newEnt.setPos(pos);
+					node_num++;
+					upHeap(pos);
+				}
+			}
+		}
+		else if(_array!=null) {
+			_array.ensureCapacity(before+added.size());
+			for(MyHeapEntry<K,V> newEnt : added) {
+				newEnt.setSlot(_array.addLast(newEnt));
+			}
+			node_num+=added.size();
+			heapifyTree(null,pool);
+		}
+		else {
+			//the linked tree cannot heapify in place, so take everything out and rebuild
+			List<MyHeapEntry<K,V>> all=takeAll(true);
+			all.addAll(added);
+			heapifyEntries(all,pool);
+		}
+	}
+	
+	//fills an empty tree with the given entries and restores heap order bottom-up
+	private void heapifyEntries(List<MyHeapEntry<K,V>> entries, ForkJoinPool pool) {
+		if(_array!=null) {
+			_array.ensureCapacity(entries.size());
+			for(MyHeapEntry<K,V> newEnt : entries) {
+				newEnt.setSlot(_array.addLast(newEnt));
+			}
+			node_num=entries.size();
+			heapifyTree(null,pool);
+			return;
+		}
+		//positions come back from add in level order, which is what heapify walks
+		List<Position<MyHeapEntry<K,V>>> positions=new ArrayList<Position<MyHeapEntry<K,V>>>(entries.size());
+		for(MyHeapEntry<K,V> newEnt : entries) {
+			Position<MyHeapEntry<K,V>> pos=_tree.add(newEnt);
+			newEnt.setPos(pos);
+			positions.add(pos);
+		}
+		node_num=entries.size();
+		heapifyTree(positions,pool);
+	}
+	
+	//fills the given slot with the last entry and restores heap order around it
+	private MyHeapEntry<K,V> removeSlot(int slot) {
+		MyHeapEntry<K,V> save=_array.get(slot);
+		MyHeapEntry<K,V> last=_array.removeLast();
+		node_num--;
+		save.setSlot(-1);
+		if(last!=save) {
+			_array.set(slot,last);
+			last.setSlot(slot);
+			if(upHeapSlot(slot)==slot) {
+				downHeapSlot(slot);
+			}
+		}
+		if(save.isReleased()) {
+			//a tombstone the caller released while it was still in the tree
+			keep(save);
+		}
+		return save;
+	}
+	
+	//keeps a released entry that has left the array for insert to reuse, when pooling
+	private void keep(MyHeapEntry<K,V> entry) {
+		if(_pool==null) {
+			return;
+		}
+		if(_pooled==_pool.length) {
+			_pool=Arrays.copyOf(_pool,_pooled*2);
+		}
+		_pool[_pooled++]=entry;
+	}
+	
+	/*
+	 * Floyd's bottom-up construction: sift down every internal node, last
+	 * one first. Nodes are numbered in level order, which is the slot for
+	 * the array layout; for the linked layout positions maps the number to
+	 * the node, and the arity is always 2, so the same slot arithmetic
+	 * works for both. The split into subtrees for a parallel build relies
+	 * on level order, so a blocked heap is always built sequentially.
+	 */
+	
+	private void heapifyTree(List<Position<MyHeapEntry<K,V>>> positions, ForkJoinPool pool) {
+		if(node_num<2) {
+			return;
+		}
+		if(pool==null || _metrics!=null || _blockShift!=0 || node_num<PARALLEL_THRESHOLD) {
+			//a B-heap's last internal node can come after the last node's parent
+			for(int i=_blockShift!=0 ? node_num-1 : parentSlot(node_num-1);i>=0;i--) {
+				siftDownAt(positions,i);
+			}
+			return;
+		}
+		pool.invoke(new HeapifyTask(positions,0,0));
+	}
+	
+	private void siftDownAt(List<Position<MyHeapEntry<K,V>>> positions, int i) {
+		if(positions==null) {
+			downHeapSlot(i);
+		}
+		else {
+			downHeap(positions.get(i));
+		}
+	}
+	
+	//heapifies the subtree under root on its own; its nodes on each level are a contiguous run
+	private void heapifySubtree(List<Position<MyHeapEntry<K,V>>> positions, int root) {
+		long[] low=new long[64];
+		long[] high=new long[64];
+		int levels=0;
+		long lo=root;
+		long hi=root;
+		while(lo<node_num) {
+			low[levels]=lo;
+			high[levels]=Math.min(hi,node_num-1);
+			levels++;
+			lo=(lo<<_shift)+1;
+			hi=(hi<<_shift)+(1<<_shift);
+		}
+		//the bottom level is all leaves
+		for(int level=levels-2;level>=0;level--) {
+			for(long i=high[level];i>=low[level];i--) {
+				siftDownAt(positions,(int) i);
+			}
+		}
+	}
+	
+	//a sift only writes inside the subtree it starts in, so sibling subtrees can be built at once
+	private class HeapifyTask extends RecursiveAction {
+		private final List<Position<MyHeapEntry<K,V>>> positions;
+		private final int root;
+		private final int depth;
+		
+		private HeapifyTask(List<Position<MyHeapEntry<K,V>>> positions_, int root_, int depth_) {
+			positions=positions_;
+			root=root_;
+			depth=depth_;
+		}
+		
+		protected void compute() {
+			if((node_num>>>(depth*_shift))<=SEQUENTIAL_SUBTREE) {
+				heapifySubtree(positions,root);
+				return;
+			}
+			List<HeapifyTask> children=new ArrayList<HeapifyTask>(1<<_shift);
+			int first=firstChildSlot(root);
+			int end=Math.min(first+(1<<_shift),node_num);
+			for(int child=first;child<end;child++) {
+				children.add(new HeapifyTask(positions,child,depth+1));
+			}
+			invokeAll(children);
+			siftDownAt(positions,root);
+		}
+	}
+	
+	//package-private, with firstChildSlot, so benchmarks can walk the numbering
+	int parentSlot(int slot) {
+		if(_blockShift!=0) {
+			return MyArrayHeapTree.blockParentSlot(slot,_blockShift);
+		}
+		return MyArrayHeapTree.parentSlot(slot,_shift);
+	}
+	
+	int firstChildSlot(int slot) {
+		if(_blockShift!=0) {
+			return MyArrayHeapTree.blockFirstChildSlot(slot,_blockShift);
+		}
+		return MyArrayHeapTree.firstChildSlot(slot,_shift);
+	}
+	
+	//one past the last child of the slot that exists, given its first child
+	private int childrenEnd(int slot, int first) {
+		if(_blockShift!=0 && MyArrayHeapTree.hasSingleChild(slot,_blockShift)) {
+			return Math.min(first+1,node_num);
+		}
+		return Math.min(first+(1<<_shift),node_num);
+	}
+	
+	/*
+	 * The sifts below move a hole rather than swapping: the entry being
+	 * sifted is held aside, each entry it passes is shifted once into the
+	 * hole, and the held entry is written only where it finally lands.
+	 * That is one array/tree write and one position write per level
+	 * instead of two of each, and the loops never recurse. The held entry
+	 * is written back in a finally, so a comparator that throws midway
+	 * leaves every entry in the tree exactly once, at the slot it records.
+	 */
+	
+	private void downHeapSlot(int slot) {
+		if(_primitive) {
+			downHeapSlotLong(slot);
+			return;
+		}
+		MyHeapEntry<K,V> moving=_array.get(slot);
+		K key=moving.getKey();
+		int levels=0;
+		try {
+			int first=firstChildSlot(slot);
+			while(first<node_num) {
+				//pick the smallest of up to arity children
+				int child=first;
+				MyHeapEntry<K,V> childEntry=_array.get(first);
+				int end=childrenEnd(slot,first);
+				for(int i=first+1;i<end;i++) {
+					MyHeapEntry<K,V> other=_array.get(i);
+					if(this._compare.compare(other.getKey(),childEntry.getKey())<0) {
+						child=i;
+						childEntry=other;
+					}
+				}
+				if(this._compare.compare(childEntry.getKey(),key)>=0) {
+					break;
+				}
+				_array.set(slot,childEntry);
+				childEntry.setSlot(slot);
+				slot=child;
+				first=firstChildSlot(slot);
+				levels++;
+			}
+		}
+		finally {
+			if(levels>0) {
+				_array.set(slot,moving);
+				moving.setSlot(slot);
+			}
+		}
+		recordDownHeap(levels);
+	}
+	
+	//returns the slot the entry ended up in
+	private int upHeapSlot(int slot) {
+		if(_primitive) {
+			return upHeapSlotLong(slot);
+		}
+		MyHeapEntry<K,V> moving=_array.get(slot);
+		K key=moving.getKey();
+		int levels=0;
+		try {
+			while(slot>0) {
+				int parent=parentSlot(slot);
+				MyHeapEntry<K,V> parentEntry=_array.get(parent);
+				if(this._compare.compare(key,parentEntry.getKey())>=0) {
+					break;
+				}
+				_array.set(slot,parentEntry);
+				parentEntry.setSlot(slot);
+				slot=parent;
+				levels++;
+			}
+		}
+		finally {
+			if(levels>0) {
+				_array.set(slot,moving);
+				moving.setSlot(slot);
+			}
+		}
+		recordUpHeap(levels);
+		return slot;
+	}
+	
+	//the same two sifts comparing the cached longs, kept apart so the comparator loops stay as they
+	//were; they call nothing that can throw, so they need no finally
+	
+	private void downHeapSlotLong(int slot) {
+		MyHeapEntry<K,V> moving=_array.get(slot);
+		long key=moving.getSortKey();
+		int levels=0;
+		int first=firstChildSlot(slot);
+		while(first<node_num) {
+			int child=first;
+			MyHeapEntry<K,V> childEntry=_array.get(first);
+			long childKey=childEntry.getSortKey();
+			int end=childrenEnd(slot,first);
+			for(int i=first+1;i<end;i++) {
+				MyHeapEntry<K,V> other=_array.get(i);
+				if(other.getSortKey()<childKey) {
+					child=i;
+					childEntry=other;
+					childKey=other.getSortKey();
+				}
+			}
+			if(childKey>=key) {
+				break;
+			}
+			_array.set(slot,childEntry);
+			childEntry.setSlot(slot);
+			slot=child;
+			first=firstChildSlot(slot);
+			levels++;
+		}
+		if(levels>0) {
+			_array.set(slot,moving);
+			moving.setSlot(slot);
+		}
+		recordDownHeap(levels);
+	}
+	
+	private int upHeapSlotLong(int slot) {
+		MyHeapEntry<K,V> moving=_array.get(slot);
+		long key=moving.getSortKey();
+		int levels=0;
+		while(slot>0) {
+			int parent=parentSlot(slot);
+			MyHeapEntry<K,V> parentEntry=_array.get(parent);
+			if(key>=parentEntry.getSortKey()) {
+				break;
+			}
+			_array.set(slot,parentEntry);
+			parentEntry.setSlot(slot);
+			slot=parent;
+			levels++;
+		}
+		if(levels>0) {
+			_array.set(slot,moving);
+			moving.setSlot(slot);
+		}
+		recordUpHeap(levels);
+		return slot;
+	}
+	
+	private void downHeap(Position<MyHeapEntry<K,V>> pos){
+		MyHeapEntry<K,V> moving=pos.element();
+		int levels=0;
+		try {
+			//a complete tree never has a right child without a left one
+			while(_tree.hasLeft(pos)) {
+				Position<MyHeapEntry<K,V>> child=_tree.left(pos);
+				Position<MyHeapEntry<K,V>> right=_tree.right(pos);
+				if(right!=null && compareEntries(right.element(),child.element())<0) {
+					child=right;
+				}
+				MyHeapEntry<K,V> childEntry=child.element();
+				if(compareEntries(childEntry,moving)>=0) {
+					break;
+				}
+				_tree.replace(pos,childEntry);
+				childEntry.setPos(pos);
+				pos=child;
+				levels++;
+			}
+		}
+		finally {
+			if(levels>0) {
+				_tree.replace(pos,moving);
+				moving.setPos(pos);
+			}
+		}
+		recordDownHeap(levels);
+	}
+	
+	//returns the position the entry ended up in
+	private Position<MyHeapEntry<K,V>> upHeap(Position<MyHeapEntry<K,V>> pos){
+		MyHeapEntry<K,V> moving=pos.element();
+		int levels=0;
+		try {
+			while(pos!=_tree.root()) {
+				Position<MyHeapEntry<K,V>> parent=_tree.parent(pos);
+				MyHeapEntry<K,V> parentEntry=parent.element();
+				if(compareEntries(moving,parentEntry)>=0) {
+					break;
+				}
+				_tree.replace(pos,parentEntry);
+				parentEntry.setPos(pos);
+				pos=parent;
+				levels++;
+			}
+		}
+		finally {
+			if(levels>0) {
+				_tree.replace(pos,moving);
+				moving.setPos(pos);
+			}
+		}
+		recordUpHeap(levels);
+		return pos;
+	}
+	
+	//a sift of n levels writes n shifted positions plus the moving entry's own
+	private void recordDownHeap(int levels) {
+		if(_metrics!=null) {
+			_metrics.recordDownHeap(levels);
+			_metrics.recordPositionWrites(levels==0 ? 0 : levels+1);
 		}
 	}
 	
-	private void upHeap(Position<MyHeapEntry<K,V>> pos_, K key_){
-		Position<MyHeapEntry<K,V>> pos=pos_;
-		K key=key_;
-		while((pos!=_tree.root())&&this._compare.compare(key,_tree.parent(pos).element().getKey())<0) {
-			//updating position data
-			pos.element().setPos(_tree.parent(pos));
-			_tree.parent(pos).element().setPos(pos);
-			//swapping in tree
-			_tree.swap(pos,_tree.parent(pos));
-			//updating for the while loop
-			pos =_tree.parent(pos);
+	private void recordUpHeap(int levels) {
+		if(_metrics!=null) {
+			_metrics.recordUpHeap(levels);
+			_metrics.recordPositionWrites(levels==0 ? 0 : levels+1);
 		}
 	}
 }
@@ -19,6 +19,16 @@ public class MyHeapEntry<K,V> implements Entry<K,V> {
 	private K key;
 	private V val;
 	private Position<MyHeapEntry<K,V>> pos;
+	//slot in a MyArrayHeapTree, -1 when the entry is not in one
+	private int slot=-1;
+	//set when a lazily deleting heap has removed the entry but not yet dropped it from the tree
+	private boolean tombstone=false;
+	//bumped each time a pooling heap reuses the entry for a new key and value
+	private int generation=0;
+	//set when the caller hands the removed entry back to a pooling heap for reuse
+	private boolean released=false;
+	//the key as a long, cached by a heap that orders by a key extractor
+	private long sortKey;
 
 	/** 
 	 * Default constructor. You may wish to modify the parameters.
@@ -57,6 +67,56 @@ public class MyHeapEntry<K,V> implements Entry<K,V> {
 	public Position<MyHeapEntry<K,V>> getPos() {
 		return pos;
 	}
+	
+	public void setSlot(int slot_) {
+		slot=slot_;
+	}
+	
+	public int getSlot() {
+		return slot;
+	}
+	
+	public void setTombstone(boolean tombstone_) {
+		tombstone=tombstone_;
+	}
+	
+	public boolean isTombstone() {
+		return tombstone;
+	}
+	
+	public void setSortKey(long sortKey_) {
+		sortKey=sortKey_;
+	}
+	
+	public long getSortKey() {
+		return sortKey;
+	}
+	
+	public int getGeneration() {
+		return generation;
+	}
+	
+	public void setReleased(boolean released_) {
+		released=released_;
+	}
+	
+	public boolean isReleased() {
+		return released;
+	}
+	
+	/**
+	 * Turns a removed entry into a fresh one, as a pooling heap does
+	 * instead of allocating, and moves it on to the next generation.
+	 */
+	public void recycle(K setKey, V setVal) {
+		key=setKey;
+		val=setVal;
+		pos=null;
+		slot=-1;
+		tombstone=false;
+		released=false;
+		generation++;
+	}
 	/* Add any additional methods here */
 
 }
@@ -6,12 +6,17 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import org.junit.Ignore;
 import org.junit.Test;
 
-import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.AdaptablePriorityQueue;
 import net.datastructures.Entry;
 import net.datastructures.InvalidEntryException;
 import net.datastructures.InvalidKeyException;
@@ -38,202 +43,893 @@ import net.datastructures.Position;
  * general structure of tests.
  */
 
-public class MyHeapTest {
+public class MyHeapTest extends AbstractHeapTest {
+
+	@Override
+	protected AdaptablePriorityQueue<Integer, String> newHeap() {
+		return new MyHeap<Integer, String>(new IntegerComparator());
+	}
+
+	@Override
+	protected void setComparator(AdaptablePriorityQueue<Integer, String> heap, Comparator<Integer> comparator) {
+		((MyHeap<Integer, String>) heap).setComparator(comparator);
+	}
 	
 	/**
-	 * A simple test to ensure that insert() works.
+	 * Runs a mix of inserts, removes and key changes against the array layout
+	 * and checks that removeMin still hands back every key in order.
 	 */
 	@Test
-	public void testInsertOneElement() {
-		// set-up
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		heap.insert(1, "A");
-		
-		// Assert that your data structure is consistent using 
-		// assertThat(actual, is(expected))
-		assertThat(heap.size(), is(1));
-		assertThat(heap.min().getKey(), is(1));
+	public void arrayLayoutKeepsHeapOrder() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		List<Entry<Integer,String>> entries = new ArrayList<Entry<Integer,String>>();
+		for(int i=0;i<100;i++) {
+			entries.add(heap.insert((i*37)%101, "V"+i));
+		}
+		for(int i=0;i<100;i+=3) {
+			heap.remove(entries.get(i));
+		}
+		for(int i=1;i<100;i+=3) {
+			heap.replaceKey(entries.get(i), -i);
+		}
+		assertThat(heap.size(), is(66));
+		int last=Integer.MIN_VALUE;
+		while(!heap.isEmpty()) {
+			int key=heap.removeMin().getKey();
+			assertTrue(key>=last);
+			last=key;
+		}
 	}
-
+	
 	/**
-	 * This is an example to check that the order of the heap is sorted as per the keys
-	 * by comparing a list of the actual and expected keys.
-	 */
-	@Test
-	public void testRemoveMinHeapOrderUsingList() {
-	MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		heap.insert(11, "A");
-		heap.insert(13, "B");
-		heap.insert(64, "C");
-		heap.insert(16, "D");
-		heap.insert(44, "E");
-		
-		// the expected ordering that keys come in
-		List<Integer> expectedKeys = Arrays.asList(11, 13, 16, 44, 64);
-		
-		// the actual ordering of keys in the heap
-		List<Integer> actualKeys = new ArrayList<Integer>();
-		while(!heap.isEmpty()) {
-			actualKeys.add(heap.removeMin().getKey());
+	 * An entry that has already been removed from an array backed heap is rejected.
+	 */
+	@Test(expected=InvalidEntryException.class)
+	public void arrayLayoutRejectsRemovedEntry() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		Entry<Integer,String> one=heap.insert(0, "A");
+		heap.insert(1, "B");
+		heap.remove(one);
+		heap.replaceKey(one, 5);
+	}
+	
+	/**
+	 * The array layout still exposes its tree to the visualizer, with the minimum at the root.
+	 */
+	@Test
+	public void arrayLayoutGetTree() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		heap.insert(5, "A");
+		heap.insert(3, "B");
+		heap.insert(4, "C");
+		assertThat(heap.getTree().size(), is(3));
+		assertThat(heap.getTree().root().element().getKey(), is(3));
+	}
+	
+	/**
+	 * Wider nodes must still give back keys in order, including after key changes.
+	 */
+	@Test
+	public void dAryHeapsKeepHeapOrder() {
+		for(int arity : new int[] {4, 8}) {
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY, arity);
+			List<Entry<Integer,String>> entries = new ArrayList<Entry<Integer,String>>();
+			for(int i=0;i<300;i++) {
+				entries.add(heap.insert((i*113)%307, "V"+i));
+			}
+			for(int i=0;i<300;i+=5) {
+				heap.replaceKey(entries.get(i), 400-i);
+				heap.remove(entries.get(i+1));
+			}
+			assertThat(heap.getArity(), is(arity));
+			int last=Integer.MIN_VALUE;
+			while(!heap.isEmpty()) {
+				int key=heap.removeMin().getKey();
+				assertTrue(key>=last);
+				last=key;
+			}
 		}
-		
-		// check that the actual ordering matches the expected ordering by using one assert
-		// Note that assertThat(actual, is(expected)), when used on lists/ arrays, also checks that the
-		// ordering is the same.
-		assertThat(actualKeys, is(expectedKeys));
 	}
 	
 	/**
-	 * This is an example of testing heap ordering by ensuring that the min key is always at the root
-	 * by checking it explicitly each time, using multiple asserts rather than a list.
+	 * The linked tree is strictly binary, so asking it for another arity is an error.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void linkedLayoutRejectsWideArity() {
+		new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.LINKED, 4);
+	}
+	
+	/**
+	 * insertAll hands back entries in input order, and they can still be used to update the heap,
+	 * whether the batch rebuilds the heap or gets sifted in on top of existing entries.
 	 */
 	@Test
-	public void testRemoveMinHeapOrder() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		heap.insert(11, "A");
-		heap.insert(13, "B");
-		heap.insert(64, "C");
-		heap.insert(16, "D");
-		heap.insert(44, "E");
-		
-		
-		// test the heap ordering by asserting on all elements
-		assertThat(heap.removeMin().getKey(), is(11));
-		assertThat(heap.removeMin().getKey(), is(13));
-		assertThat(heap.removeMin().getKey(), is(16));
-		assertThat(heap.removeMin().getKey(), is(44));
-		assertThat(heap.removeMin().getKey(), is(64));
+	public void insertAllReturnsEntriesInInputOrder() {
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			List<Entry<Integer,String>> pairs = new ArrayList<Entry<Integer,String>>();
+			for(int i=0;i<50;i++) {
+				pairs.add(new MyHeapEntry<Integer,String>((i*17)%53, "V"+i));
+			}
+			List<Entry<Integer,String>> entries = heap.insertAll(pairs);
+			heap.insertAll(pairs.subList(0, 5));
+			assertThat(entries.size(), is(50));
+			for(int i=0;i<50;i++) {
+				assertThat(entries.get(i).getValue(), is("V"+i));
+			}
+			assertThat(heap.size(), is(55));
+			heap.replaceKey(entries.get(49), -1);
+			assertThat(heap.min().getValue(), is("V49"));
+			heap.remove(entries.get(49));
+			int last=Integer.MIN_VALUE;
+			while(!heap.isEmpty()) {
+				int key=heap.removeMin().getKey();
+				assertTrue(key>=last);
+				last=key;
+			}
+		}
 	}
 	
-
 	/**
-	 * This is an example of how to test whether an exception you expect to be thrown on a certain line of code
-	 * is actually thrown. As shown, you'd simply add the expected exception right after the @Test annotation.
-	 * This test will pass if the exception expected is thrown by the test and fail otherwise.
-	 * 
-	 * Here, we're checking to see if an IllegalStateException is being correctly thrown after we try to
-	 * call setComparator on a non-empty heap.
+	 * A bad key anywhere in the batch is rejected before anything is added.
 	 */
-	@Test(expected=IllegalStateException.class)
-	public void testSetComparatorThrowsIllegalStateException() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
+	@Test
+	public void insertAllInvalidKeyLeavesHeapUnchanged() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
 		heap.insert(1, "A");
-		heap.setComparator(new IntegerComparator());
+		List<Entry<Integer,String>> pairs = new ArrayList<Entry<Integer,String>>();
+		pairs.add(new MyHeapEntry<Integer,String>(2, "B"));
+		pairs.add(new MyHeapEntry<Integer,String>(null, "C"));
+		try {
+			heap.insertAll(pairs);
+		}
+		catch(InvalidKeyException e) {
+			assertThat(heap.size(), is(1));
+			return;
+		}
+		assertTrue(false);
 	}
 	
+	/**
+	 * removeMin(k) returns the k smallest entries in order and leaves the rest in a valid heap.
+	 */
+	@Test
+	public void removeMinBatchKeepsOrder() {
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			for(int i=0;i<40;i++) {
+				heap.insert((i*23)%41, "V"+i);
+			}
+			List<Integer> keys = new ArrayList<Integer>();
+			for(Entry<Integer,String> e : heap.removeMin(10)) {
+				keys.add(e.getKey());
+			}
+			assertThat(keys, is(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)));
+			assertThat(heap.size(), is(30));
+			assertThat(heap.removeMin().getKey(), is(10));
+			assertThat(heap.removeMin(100).size(), is(29));
+			assertTrue(heap.isEmpty());
+		}
+	}
 	
 	/**
-	 * TODO: add your tests below!
-	 * Think of edge cases and testing for exceptions (if applicable) for insert, remove, min, removeMin, size and
-	 * your helper methods (if applicable).
+	 * drainWhile stops at the first key that fails the condition, and drainTo respects its limit.
 	 */
+	@Test
+	public void drainWhileAndDrainTo() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		for(int i=20;i>0;i--) {
+			heap.insert(i, "V"+i);
+		}
+		final List<Integer> due = new ArrayList<Integer>();
+		assertThat(heap.drainWhile(key -> key <= 5, e -> due.add(e.getKey())), is(5));
+		assertThat(due, is(Arrays.asList(1, 2, 3, 4, 5)));
+		List<Entry<Integer,String>> batch = new ArrayList<Entry<Integer,String>>();
+		assertThat(heap.drainTo(batch, 3), is(3));
+		assertThat(batch.get(2).getKey(), is(8));
+		assertThat(heap.min().getKey(), is(9));
+	}
 	
 	/**
-	 * This test tests that the min function is operating correctly
+	 * Attached metrics count every operation and the work it did, and detaching them stops recording.
 	 */
 	@Test
-	public void testMinFunction() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		heap.insert(11, "A");
-		heap.insert(13, "B");
-		heap.insert(64, "C");
-		heap.insert(16, "D");
-		heap.insert(44, "E");
-		
-		
-		// test the heap ordering by asserting on all elements
-		assertThat(heap.min().getKey(), is(11));
+	public void metricsRecordOperations() {
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			HeapMetrics metrics = new HeapMetrics();
+			heap.setMetrics(metrics);
+			List<Entry<Integer,String>> entries = new ArrayList<Entry<Integer,String>>();
+			for(int i=15;i>0;i--) {
+				entries.add(heap.insert(i, "V"+i));
+			}
+			heap.replaceKey(entries.get(0), 0);
+			heap.remove(entries.get(5));
+			assertThat(heap.removeMin().getKey(), is(0));
+			HeapMetrics.Snapshot snapshot = metrics.snapshot();
+			assertThat(snapshot.count(HeapMetrics.Op.INSERT), is(15L));
+			assertThat(snapshot.count(HeapMetrics.Op.REPLACE_KEY), is(1L));
+			assertThat(snapshot.count(HeapMetrics.Op.REMOVE), is(1L));
+			assertThat(snapshot.count(HeapMetrics.Op.REMOVE_MIN), is(1L));
+			assertTrue(snapshot.comparisons() > 0);
+			//descending inserts sift every new entry to the root: one write per level, plus the entry itself
+			assertTrue(snapshot.positionWrites() >= (1+1+2+2+2+2+3+3+3+3+3+3+3+3)+14);
+			long sifted = 0;
+			for(long count : snapshot.upHeapDepths()) {
+				sifted+=count;
+			}
+			assertTrue(sifted >= 15);
+			heap.setMetrics(null);
+			heap.insert(99, "Z");
+			assertThat(metrics.snapshot().count(HeapMetrics.Op.INSERT), is(15L));
+			assertThat(metrics.snapshot().comparisons(), is(snapshot.comparisons()));
+			metrics.reset();
+			assertThat(metrics.snapshot().comparisons(), is(0L));
+		}
 	}
+	
 	/**
-	 * This test tests the edge case for when you're looking for a min in an empty tree
+	 * The batch paths are recorded too: loads, melds and drains once per call with their entry counts.
 	 */
-	@Test(expected=EmptyPriorityQueueException.class)
-	public void testMinThrowsEmptyPriority() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		heap.min();
+	@Test
+	public void metricsRecordBatches() {
+		HeapMetrics metrics = new HeapMetrics();
+		List<MyHeapEntry<Integer,String>> pairs = new ArrayList<MyHeapEntry<Integer,String>>();
+		for(int i=0;i<10;i++) {
+			pairs.add(new MyHeapEntry<Integer,String>(i, "V"+i));
+		}
+		MyHeap<Integer, String> heap = MyHeap.heapify(new IntegerComparator(), MyHeap.Layout.ARRAY, pairs, null, metrics);
+		heap.insertAll(pairs);
+		MyHeap<Integer, String> other = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		other.insert(-1, "X");
+		other.insert(-2, "Y");
+		heap.meld(other);
+		assertThat(heap.removeMin(3).size(), is(3));
+		heap.drainTo(new ArrayList<Entry<Integer,String>>(), 2);
+		heap.drainWhile(key -> key < 3, entry -> {});
+		HeapMetrics.Snapshot snapshot = metrics.snapshot();
+		assertThat(snapshot.count(HeapMetrics.Op.INSERT_ALL), is(2L));
+		assertThat(snapshot.entries(HeapMetrics.Op.INSERT_ALL), is(20L));
+		assertThat(snapshot.count(HeapMetrics.Op.MELD), is(1L));
+		assertThat(snapshot.entries(HeapMetrics.Op.MELD), is(2L));
+		//-2 -1 0 | 0 1 | 1 2 2
+		assertThat(snapshot.count(HeapMetrics.Op.DRAIN), is(3L));
+		assertThat(snapshot.entries(HeapMetrics.Op.DRAIN), is(8L));
+		assertThat(snapshot.count(HeapMetrics.Op.REMOVE_MIN), is(0L));
+		assertThat(heap.size(), is(14));
 	}
+	
 	/**
-	 * This test makes sure that if you have an invalid key, it will throw the right exception
+	 * A drain takes its entries out in one pass: the last entries fill the vacated slots and
+	 * each is sifted down once, which writes fewer positions than the same removeMins one by one.
 	 */
-	@Test(expected=InvalidKeyException.class)
-	public void testInsertInvalidKey() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		heap.insert(null,"A");
+	@Test
+	public void drainRemovesInOnePass() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		for(int i=0;i<15;i++) {
+			heap.insert(i, "V"+i);
+		}
+		HeapMetrics metrics = new HeapMetrics();
+		heap.setMetrics(metrics);
+		assertThat(heap.removeMin(3).size(), is(3));
+		HeapMetrics.Snapshot snapshot = metrics.snapshot();
+		assertThat(snapshot.count(HeapMetrics.Op.DRAIN), is(1L));
+		assertThat(snapshot.entries(HeapMetrics.Op.DRAIN), is(3L));
+		assertThat(snapshot.count(HeapMetrics.Op.REMOVE_MIN), is(0L));
+		//14, 13 and 12 fill slots 2, 1 and 0 and sink 2, 2 and 3 levels
+		assertThat(snapshot.positionWrites(), is(3L+3+3+4));
+		long sifted = 0;
+		for(long count : snapshot.downHeapDepths()) {
+			sifted+=count;
+		}
+		assertThat(sifted, is(3L));
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			MyHeap<Integer, String> batch = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			MyHeap<Integer, String> single = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			java.util.Random random = new java.util.Random(5);
+			for(int i=0;i<1023;i++) {
+				int key = random.nextInt(100000);
+				batch.insert(key, "V"+i);
+				single.insert(key, "V"+i);
+			}
+			HeapMetrics batchMetrics = new HeapMetrics();
+			HeapMetrics singleMetrics = new HeapMetrics();
+			batch.setMetrics(batchMetrics);
+			single.setMetrics(singleMetrics);
+			for(Entry<Integer,String> e : batch.removeMin(100)) {
+				assertThat(e.getKey(), is(single.removeMin().getKey()));
+			}
+			assertTrue(batchMetrics.snapshot().positionWrites() < singleMetrics.snapshot().positionWrites());
+			assertThat(batchMetrics.snapshot().count(HeapMetrics.Op.DRAIN), is(1L));
+			while(!single.isEmpty()) {
+				assertThat(batch.removeMin().getKey(), is(single.removeMin().getKey()));
+			}
+			assertTrue(batch.isEmpty());
+		}
 	}
+	
 	/**
-	 * This test simultaneously checks that the remove, insert and size functions are working as expected.
-	 * I wanted to make sure size would get intermediate values, not just the max and 0
+	 * Drains of every size, mixed with inserts and lazy removes, leave a valid heap on every layout,
+	 * and a consumer may insert into the heap it is being drained from.
 	 */
 	@Test
-	public void testRemoveAndInsertAndSize() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		Entry<Integer,String> one=heap.insert(0, "A");
-		Entry<Integer,String> two=heap.insert(13, "B");
-		Entry<Integer,String> three=heap.insert(-14, "C");
-		Entry<Integer,String> four=heap.insert(84, "D");
-		Entry<Integer,String> five=heap.insert(30, "E");
-		heap.insert(48,"F");
-		heap.insert(66,"G");
-		heap.insert(68,"H");
-		
-		assertThat(heap.size(), is(8));
-		assertThat(heap.remove(one).getValue(), is("A"));
-		assertThat(heap.remove(two).getKey(), is(13));
-		assertThat(heap.remove(three).getValue(), is("C"));
-		assertThat(heap.remove(four).getKey(), is(84));
-		assertThat(heap.remove(five).getValue(), is("E"));
+	public void drainsKeepHeapValid() {
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			final MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			heap.setLazyDeleteRatio(0.5);
+			final List<Entry<Integer,String>> entries = new ArrayList<Entry<Integer,String>>();
+			java.util.Random random = new java.util.Random(layout.ordinal());
+			for(int round=0;round<200;round++) {
+				for(int i=random.nextInt(60);i>0;i--) {
+					entries.add(heap.insert(random.nextInt(500), "V"));
+				}
+				for(int i=random.nextInt(10);i>0 && !entries.isEmpty();i--) {
+					heap.remove(entries.remove(random.nextInt(entries.size())));
+				}
+				List<Integer> reference = new ArrayList<Integer>();
+				for(Entry<Integer,String> e : entries) {
+					reference.add(e.getKey());
+				}
+				Collections.sort(reference);
+				final List<Entry<Integer,String>> drained = new ArrayList<Entry<Integer,String>>();
+				if(round%3==0) {
+					drained.addAll(heap.removeMin(random.nextInt(40)));
+				}
+				else if(round%3==1) {
+					final int limit = random.nextInt(500);
+					heap.drainWhile(key -> key < limit, e -> drained.add(e));
+					assertTrue(heap.isEmpty() || heap.min().getKey() >= limit);
+				}
+				else {
+					heap.drainTo(e -> {
+						drained.add(e);
+						if(e.getKey()%7==0) {
+							entries.add(heap.insert(e.getKey()+500, "again"));
+						}
+					}, random.nextInt(40));
+				}
+				for(int i=0;i<drained.size();i++) {
+					assertThat(drained.get(i).getKey(), is(reference.get(i)));
+					assertTrue(entries.remove(drained.get(i)));
+				}
+				assertThat(heap.size(), is(entries.size()));
+			}
+			List<Integer> reference = new ArrayList<Integer>();
+			for(Entry<Integer,String> e : entries) {
+				reference.add(e.getKey());
+			}
+			Collections.sort(reference);
+			for(int key : reference) {
+				assertThat(heap.removeMin().getKey(), is(key));
+			}
+			assertTrue(heap.isEmpty());
+		}
+	}
+	
+	/**
+	 * The comparator can be replaced on an empty heap, and keeps being counted while metrics are attached.
+	 */
+	@Test
+	public void setComparatorOnEmptyHeapKeepsMetrics() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		HeapMetrics metrics = new HeapMetrics();
+		heap.setMetrics(metrics);
+		heap.setComparator(new IntegerComparator());
+		heap.insert(2, "B");
+		heap.insert(1, "A");
+		assertThat(heap.min().getKey(), is(1));
+		assertTrue(metrics.snapshot().comparisons() > 0);
+	}
+	
+	/**
+	 * Removing an entry whose hole is filled by a smaller last entry has to sift it up.
+	 */
+	@Test
+	public void removeSiftsLastEntryUp() {
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			heap.insert(1, "A");
+			heap.insert(10, "B");
+			heap.insert(2, "C");
+			Entry<Integer,String> deep = heap.insert(11, "D");
+			heap.insert(12, "E");
+			heap.insert(3, "F");
+			heap.remove(deep);
+			heap.replaceKey(heap.min(), 0);
+			int[] expected = {0, 2, 3, 10, 12};
+			for(int key : expected) {
+				assertThat(heap.removeMin().getKey(), is(key));
+			}
+		}
+	}
 
-		assertThat(heap.size(), is(3));
+	
+	/**
+	 * A long random mix of every update, checked against a sorted list, on both layouts.
+	 */
+	@Test
+	public void randomOperationsKeepHeapOrder() {
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			List<Entry<Integer,String>> live = new ArrayList<Entry<Integer,String>>();
+			java.util.Random random = new java.util.Random(12);
+			for(int step=0;step<20000;step++) {
+				int op=random.nextInt(5);
+				if(op<2 || live.isEmpty()) {
+					live.add(heap.insert(random.nextInt(1000), null));
+				}
+				else if(op==2) {
+					heap.replaceKey(live.get(random.nextInt(live.size())), random.nextInt(1000));
+				}
+				else if(op==3) {
+					heap.remove(live.remove(random.nextInt(live.size())));
+				}
+				else {
+					int smallest=Integer.MAX_VALUE;
+					for(Entry<Integer,String> e : live) {
+						smallest=Math.min(smallest,e.getKey());
+					}
+					Entry<Integer,String> min = heap.removeMin();
+					assertThat(min.getKey(), is(smallest));
+					assertTrue(live.remove(min));
+				}
+				assertThat(heap.size(), is(live.size()));
+			}
+		}
 	}
+	
 	/**
-	 * This test checks that the remove function throws the correct error when you try to remove from 
-	 * an empty tree
+	 * With lazy deletion, removed entries stay in the tree as tombstones until the ratio is exceeded.
 	 */
-	@Test(expected=EmptyPriorityQueueException.class)
-	public void RemovingFromEmptyHeap() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		Entry<Integer,String> one=heap.insert(0, "A");
-		heap.remove(one);
-		heap.remove(one);
+	@Test
+	public void lazyRemoveLeavesTombstonesUntilCompaction() {
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			heap.setLazyDeleteRatio(0.5);
+			List<Entry<Integer,String>> entries = new ArrayList<Entry<Integer,String>>();
+			for(int i=0;i<10;i++) {
+				entries.add(heap.insert(i, "V"+i));
+			}
+			heap.remove(entries.get(0));
+			heap.remove(entries.get(3));
+			heap.remove(entries.get(7));
+			assertThat(heap.size(), is(7));
+			assertThat(heap.getTree().size(), is(10));
+			assertThat(heap.min().getKey(), is(1));
+			//min dropped the tombstone at the root
+			assertThat(heap.getTree().size(), is(9));
+			heap.remove(entries.get(5));
+			heap.remove(entries.get(9));
+			assertThat(heap.getTree().size(), is(9));
+			heap.remove(entries.get(6));
+			//5 tombstones out of 9 is over half, so the tree was rebuilt
+			assertThat(heap.getTree().size(), is(4));
+			int[] expected = {1, 2, 4, 8};
+			for(int key : expected) {
+				assertThat(heap.removeMin().getKey(), is(key));
+			}
+			assertTrue(heap.isEmpty());
+		}
 	}
+	
 	/**
-	 * This test makes sure the replace key function identifies
-	 * the edge case when there is an invalid key
+	 * A tombstone cannot be removed or updated again.
 	 */
 	@Test(expected=InvalidEntryException.class)
-	public void InvalidEntryExceptionReplaceKey() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		Entry<Integer,String> one=heap.insert(0, "A");
-		heap.replaceKey(null, 10);
+	public void lazyRemovedEntryIsRejected() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		heap.setLazyDeleteRatio(0.9);
+		Entry<Integer,String> entry = heap.insert(5, "A");
+		heap.insert(1, "B");
+		heap.insert(7, "C");
+		heap.remove(entry);
+		heap.replaceKey(entry, 0);
 	}
+	
 	/**
-	 * this test tests the basic function of replace key
+	 * The random mix of updates gives the same answers with lazy deletion, and the tree stays bounded.
 	 */
 	@Test
-	public void replaceKeyTest() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		Entry<Integer,String> one=heap.insert(0, "A");
-		heap.replaceKey(one,9);
-		assertThat(heap.remove(one).getKey(), is(9));
+	public void lazyRandomOperationsKeepHeapOrder() {
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			heap.setLazyDeleteRatio(0.25);
+			List<Entry<Integer,String>> live = new ArrayList<Entry<Integer,String>>();
+			java.util.Random random = new java.util.Random(13);
+			for(int step=0;step<20000;step++) {
+				int op=random.nextInt(6);
+				if(op<2 || live.isEmpty()) {
+					live.add(heap.insert(random.nextInt(1000), null));
+				}
+				else if(op==2) {
+					heap.replaceKey(live.get(random.nextInt(live.size())), random.nextInt(1000));
+				}
+				else if(op<5) {
+					heap.remove(live.remove(random.nextInt(live.size())));
+				}
+				else {
+					int smallest=Integer.MAX_VALUE;
+					for(Entry<Integer,String> e : live) {
+						smallest=Math.min(smallest,e.getKey());
+					}
+					Entry<Integer,String> min = heap.removeMin();
+					assertThat(min.getKey(), is(smallest));
+					assertTrue(live.remove(min));
+				}
+				assertThat(heap.size(), is(live.size()));
+				assertTrue(heap.getTree().size() <= live.size()*4/3+1);
+			}
+			heap.setLazyDeleteRatio(0);
+			assertThat(heap.getTree().size(), is(live.size()));
+		}
 	}
+	
 	/**
-	 * This test makes sure that an invalid entry is raised in the case one is passed into replace key
+	 * meld takes every entry of the other heap, whichever heap is larger, and the
+	 * entries the other heap handed out keep working on the merged one.
 	 */
-	@Test(expected=InvalidEntryException.class)
-	public void InvalidEntryExceptionReplaceValue() {
+	@Test
+	public void meldKeepsEntriesUsable() {
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			for(int otherSize : new int[] {3, 40}) {
+				MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+				MyHeap<Integer, String> other = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+				List<Entry<Integer,String>> mine = new ArrayList<Entry<Integer,String>>();
+				List<Entry<Integer,String>> theirs = new ArrayList<Entry<Integer,String>>();
+				for(int i=0;i<20;i++) {
+					mine.add(heap.insert(2*i+100, "M"+i));
+				}
+				for(int i=0;i<otherSize;i++) {
+					theirs.add(other.insert(2*i+101, "T"+i));
+				}
+				heap.meld(other);
+				assertTrue(other.isEmpty());
+				assertThat(heap.size(), is(20+otherSize));
+				heap.replaceKey(theirs.get(otherSize-1), 0);
+				heap.remove(theirs.get(0));
+				heap.replaceKey(mine.get(5), 1);
+				assertThat(heap.removeMin().getValue(), is("T"+(otherSize-1)));
+				assertThat(heap.removeMin().getValue(), is("M5"));
+				int previous=Integer.MIN_VALUE;
+				int count=0;
+				while(!heap.isEmpty()) {
+					int key=heap.removeMin().getKey();
+					assertTrue(key >= previous);
+					previous=key;
+					count++;
+				}
+				assertThat(count, is(20+otherSize-3));
+			}
+		}
+	}
+	
+	/**
+	 * Melding a heap into itself is rejected.
+	 */
+	@Test(expected=IllegalArgumentException.class)
+	public void meldWithItselfIsRejected() {
 		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		Entry<Integer,String> one=heap.insert(0, "A");
-		heap.replaceKey(null, 10);
+		heap.insert(1, "A");
+		heap.meld(heap);
 	}
 	
 	/**
-	 * This tests the basic function of replace value
+	 * entries() visits every live entry exactly once, also when split down for a parallel stream.
 	 */
 	@Test
-	public void replaceValueTest() {
-		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator());
-		Entry<Integer,String> one=heap.insert(0, "A");
-		heap.replaceValue(one,"B");
-		assertThat(heap.remove(one).getValue(), is("B"));
+	public void entriesSplitCoversEveryEntry() {
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			heap.setLazyDeleteRatio(0.5);
+			List<Entry<Integer,String>> entries = new ArrayList<Entry<Integer,String>>();
+			for(int i=0;i<1000;i++) {
+				entries.add(heap.insert((i*7919)%1000, "V"+i));
+			}
+			heap.remove(entries.get(1));
+			heap.remove(entries.get(500));
+			List<Spliterator<Entry<Integer,String>>> parts = new ArrayList<Spliterator<Entry<Integer,String>>>();
+			parts.add(heap.entries());
+			for(int round=0;round<5;round++) {
+				List<Spliterator<Entry<Integer,String>>> split = new ArrayList<Spliterator<Entry<Integer,String>>>();
+				for(Spliterator<Entry<Integer,String>> part : parts) {
+					Spliterator<Entry<Integer,String>> other = part.trySplit();
+					split.add(part);
+					if(other!=null) {
+						split.add(other);
+					}
+				}
+				parts = split;
+			}
+			assertTrue(parts.size() > 16);
+			final List<Integer> keys = new ArrayList<Integer>();
+			for(Spliterator<Entry<Integer,String>> part : parts) {
+				part.forEachRemaining(e -> keys.add(e.getKey()));
+			}
+			Collections.sort(keys);
+			List<Integer> expected = new ArrayList<Integer>();
+			for(int i=0;i<1000;i++) {
+				if(i!=7919%1000 && i!=(500*7919)%1000) {
+					expected.add(i);
+				}
+			}
+			assertThat(keys, is(expected));
+			assertThat(StreamSupport.stream(heap.entries(), true).count(), is(998L));
+		}
+	}
+	
+	/**
+	 * sortedView() yields entries in key order without changing the heap.
+	 */
+	@Test
+	public void sortedViewIsLazyAndLeavesHeapAlone() {
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			for(int i=0;i<500;i++) {
+				heap.insert((i*37)%500, "V"+i);
+			}
+			List<Integer> firstFive = heap.sortedView().limit(5).map(e -> e.getKey()).collect(Collectors.toList());
+			assertThat(firstFive, is(Arrays.asList(0, 1, 2, 3, 4)));
+			List<Integer> all = heap.sortedView().map(e -> e.getKey()).collect(Collectors.toList());
+			assertThat(all.size(), is(500));
+			for(int i=0;i<500;i++) {
+				assertThat(all.get(i), is(i));
+			}
+			assertThat(heap.size(), is(500));
+			assertThat(heap.removeMin().getKey(), is(0));
+		}
+	}
+	
+	/**
+	 * A build on a ForkJoinPool gives exactly the same tree as the sequential build.
+	 */
+	@Test
+	public void parallelHeapifyMatchesSequential() {
+		java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+		try {
+			for(int arity : new int[] {2, 4}) {
+				for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+					if(layout!=MyHeap.Layout.ARRAY && arity!=2) {
+						continue;
+					}
+					List<Entry<Integer,String>> pairs = new ArrayList<Entry<Integer,String>>();
+					java.util.Random random = new java.util.Random(19);
+					for(int i=0;i<200000;i++) {
+						pairs.add(new MyHeapEntry<Integer,String>(random.nextInt(50000), "V"+i));
+					}
+					MyHeap<Integer, String> sequential = new MyHeap<Integer, String>(new IntegerComparator(), layout, arity);
+					sequential.insertAll(pairs);
+					MyHeap<Integer, String> parallel = new MyHeap<Integer, String>(new IntegerComparator(), layout, arity);
+					List<Entry<Integer,String>> entries = parallel.insertAll(pairs, pool);
+					java.util.Iterator<MyHeapEntry<Integer,String>> one = sequential.levelOrderIterator();
+					java.util.Iterator<MyHeapEntry<Integer,String>> two = parallel.levelOrderIterator();
+					while(one.hasNext()) {
+						assertThat(two.next().getValue(), is(one.next().getValue()));
+					}
+					assertTrue(!two.hasNext());
+					parallel.replaceKey(entries.get(12345), -1);
+					assertThat(parallel.removeMin().getValue(), is("V12345"));
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * A pooling heap hands removed entries out again, and a recorded generation tells a stale handle from a live one.
+	 */
+	@Test
+	public void pooledHeapReusesEntriesAndRejectsStaleHandles() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		heap.setPooled(true);
+		Entry<Integer,String> first = heap.insert(5, "A");
+		int generation = ((MyHeapEntry<Integer,String>) first).getGeneration();
+		heap.insert(3, "B");
+		heap.insert(8, "C");
+		heap.release(heap.removeMin());
+		heap.release(heap.remove(first, generation));
+		Entry<Integer,String> reused = heap.insert(1, "D");
+		Entry<Integer,String> again = heap.insert(2, "E");
+		assertTrue(reused == first || again == first);
+		try {
+			heap.replaceKey(first, generation, 0);
+			assertTrue(false);
+		}
+		catch(InvalidEntryException e) {
+			//reused since, so the old generation no longer names it
+		}
+		assertThat(heap.removeMin().getValue(), is("D"));
+		assertThat(heap.removeMin().getValue(), is("E"));
+		assertThat(heap.removeMin().getValue(), is("C"));
+		assertTrue(heap.isEmpty());
+	}
+	
+	/**
+	 * Entries a pooling heap returns stay the caller's until released, and are released only once.
+	 */
+	@Test
+	public void pooledHeapKeepsEntriesUntilReleased() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		heap.setPooled(true);
+		heap.setLazyDeleteRatio(0.5);
+		Entry<Integer,String> lazy = heap.insert(23, "L");
+		for(int i=0;i<6;i++) {
+			heap.insert(20+2*i, "V"+i);
+		}
+		Entry<Integer,String> min = heap.removeMin();
+		Entry<Integer,String> fresh = heap.insert(1, "F");
+		assertTrue(fresh != min);
+		assertThat(min.getKey(), is(20));
+		assertThat(min.getValue(), is("V0"));
+		heap.release(min);
+		assertTrue(heap.insert(2, "G") == min);
+		//removed lazily, so still a tombstone in the tree until the heap drops it
+		assertThat(heap.remove(lazy).getValue(), is("L"));
+		heap.release(lazy);
+		try {
+			heap.release(lazy);
+			assertTrue(false);
+		}
+		catch(InvalidEntryException e) {
+			//already released
+		}
+		try {
+			heap.release(fresh);
+			assertTrue(false);
+		}
+		catch(InvalidEntryException e) {
+			//still in the heap
+		}
+		assertThat(heap.removeMin().getValue(), is("F"));
+		assertThat(heap.removeMin().getValue(), is("G"));
+		assertThat(heap.removeMin().getValue(), is("V1"));
+		//the tombstone reaches the root and is dropped, which hands it to the pool
+		assertThat(heap.min().getValue(), is("V2"));
+		assertTrue(heap.insert(30, "H") == lazy);
+		assertThat(heap.size(), is(5));
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void linkedHeapCannotPool() {
+		MyHeap<Integer, String> heap = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.LINKED);
+		heap.setPooled(true);
+	}
+	
+	/**
+	 * A heap ordered by extracted longs hands entries out exactly as one using the matching comparator.
+	 */
+	@Test
+	public void longKeyHeapMatchesComparatorHeap() {
+		for(MyHeap.Layout layout : MyHeap.Layout.values()) {
+			MyHeap<Integer, String> fast = MyHeap.withLongKey((Integer key) -> key, layout);
+			MyHeap<Integer, String> plain = new MyHeap<Integer, String>(new IntegerComparator(), layout);
+			List<Entry<Integer,String>> fastEntries = new ArrayList<Entry<Integer,String>>();
+			List<Entry<Integer,String>> plainEntries = new ArrayList<Entry<Integer,String>>();
+			java.util.Random random = new java.util.Random(24);
+			for(int i=0;i<3000;i++) {
+				int key = random.nextInt(500)-250;
+				fastEntries.add(fast.insert(key, "V"+i));
+				plainEntries.add(plain.insert(key, "V"+i));
+			}
+			for(int i=0;i<1000;i++) {
+				int index = random.nextInt(fastEntries.size());
+				int key = random.nextInt(500)-250;
+				assertThat(fast.replaceKey(fastEntries.get(index), key), is(plain.replaceKey(plainEntries.get(index), key)));
+			}
+			List<MyHeapEntry<Integer,String>> more = new ArrayList<MyHeapEntry<Integer,String>>();
+			for(int i=0;i<5000;i++) {
+				more.add(new MyHeapEntry<Integer,String>(random.nextInt(500)-250, "W"+i));
+			}
+			fast.insertAll(more);
+			plain.insertAll(more);
+			while(!plain.isEmpty()) {
+				Entry<Integer,String> expected = plain.removeMin();
+				Entry<Integer,String> actual = fast.removeMin();
+				assertThat(actual.getKey(), is(expected.getKey()));
+			}
+			assertTrue(fast.isEmpty());
+		}
+	}
+	
+	@Test
+	public void doubleKeyHeapOrdersLikeDoubleCompare() {
+		MyHeap<Double, String> heap = MyHeap.withDoubleKey((Double key) -> key, MyHeap.Layout.ARRAY, 4);
+		double[] keys = {Double.NaN, 2.5, -0.0, Double.NEGATIVE_INFINITY, 0.0, -7.25, 1e300, -1e-300};
+		for(double key : keys) {
+			heap.insert(key, "V"+key);
+		}
+		Arrays.sort(keys);
+		for(double key : keys) {
+			assertThat(heap.removeMin().getKey(), is(key));
+		}
+	}
+	
+	/**
+	 * The blocked layout numbers slots differently but hands entries out as the array layout does,
+	 * across many blocks and through arbitrary removes from the middle.
+	 */
+	@Test
+	public void blockedHeapMatchesArrayHeap() {
+		MyHeap<Integer, String> blocked = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.BLOCKED);
+		MyHeap<Integer, String> array = new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.ARRAY);
+		assertThat(blocked.getLayout(), is(MyHeap.Layout.BLOCKED));
+		List<Entry<Integer,String>> blockedEntries = new ArrayList<Entry<Integer,String>>();
+		List<Entry<Integer,String>> arrayEntries = new ArrayList<Entry<Integer,String>>();
+		java.util.Random random = new java.util.Random(25);
+		for(int i=0;i<20000;i++) {
+			int key = random.nextInt(100000);
+			blockedEntries.add(blocked.insert(key, "V"+i));
+			arrayEntries.add(array.insert(key, "V"+i));
+		}
+		for(int i=0;i<5000;i++) {
+			int index = random.nextInt(blockedEntries.size());
+			if(i%2==0) {
+				int key = random.nextInt(100000);
+				blocked.replaceKey(blockedEntries.get(index), key);
+				array.replaceKey(arrayEntries.get(index), key);
+			}
+			else {
+				assertThat(blocked.remove(blockedEntries.remove(index)).getValue(), is(array.remove(arrayEntries.remove(index)).getValue()));
+			}
+		}
+		assertThat(blocked.size(), is(array.size()));
+		while(!array.isEmpty()) {
+			assertThat(blocked.removeMin().getKey(), is(array.removeMin().getKey()));
+		}
+		assertTrue(blocked.isEmpty());
+	}
+	
+	/**
+	 * A batch the comparator fails on partway is taken back out, whether it was being sifted in
+	 * or built bottom-up, and leaves every slot as it was.
+	 */
+	@Test
+	public void failedBatchIsTakenBack() {
+		Comparator<Integer> poisoned = new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if(!a.equals(b) && (a==7 || b==7)) {
+					throw new IllegalStateException("poisoned");
+				}
+				return a.compareTo(b);
+			}
+		};
+		for(int batchSize : new int[] {3, 30}) {
+			MyHeap<Integer, String> heap = new MyHeap<Integer, String>(poisoned, MyHeap.Layout.ARRAY);
+			for(int i=20;i>8;i--) {
+				heap.insert(i, "V"+i);
+			}
+			List<MyHeapEntry<Integer,String>> before = new ArrayList<MyHeapEntry<Integer,String>>();
+			heap.levelOrderIterator().forEachRemaining(before::add);
+			List<Entry<Integer,String>> batch = new ArrayList<Entry<Integer,String>>();
+			for(int i=0;i<batchSize;i++) {
+				batch.add(new MyHeapEntry<Integer,String>(i==batchSize-1 ? 7 : -i, "B"+i));
+			}
+			try {
+				heap.insertAllOrNothing(batch);
+				assertTrue(false);
+			}
+			catch(IllegalStateException e) {
+				assertThat(e.getMessage(), is("poisoned"));
+			}
+			List<MyHeapEntry<Integer,String>> after = new ArrayList<MyHeapEntry<Integer,String>>();
+			heap.levelOrderIterator().forEachRemaining(after::add);
+			assertThat(after, is(before));
+			for(int i=0;i<after.size();i++) {
+				assertThat(after.get(i).getSlot(), is(i));
+			}
+			assertThat(heap.size(), is(12));
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void blockedHeapMustBeBinary() {
+		new MyHeap<Integer, String>(new IntegerComparator(), MyHeap.Layout.BLOCKED, 4);
+	}
+	
+	@Test(expected=InvalidKeyException.class)
+	public void longKeyHeapRejectsNullKey() {
+		MyHeap<Integer, String> heap = MyHeap.withLongKey((Integer key) -> key, MyHeap.Layout.LINKED);
+		heap.insert(null, "A");
 	}
 }
@@ -94,17 +94,18 @@ public class MyLinkedHeapTree<E> extends LinkedBinaryTree<E>
 			node_num=0;
 			return save1;
 		}
-		//adding its parent to the front of the Deque
 		Position<E> toRemove=line.removeLast();
 		Position<E> parent=tree_.parent(toRemove);
 		if(tree_.hasRight(parent)) {
+			//the parent is missing its right child again, so it goes back
+			//to the front of the Deque as the next node to fill
 			node_num--;
+			line.addFirst(parent);
 			return tree_.remove(tree_.right(parent));
 		}
 		else {
+			//the parent is already at the front, it only had a left child
 			node_num--;
-			line.addFirst(parent);
-			
 			return tree_.remove(tree_.left(parent));
 		}
 	}
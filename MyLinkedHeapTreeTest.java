@@ -129,4 +129,30 @@ public class MyLinkedHeapTreeTest {
 		assertTrue(tree.size() == 0);
 		assertThat(save7, is(1));
 	}
+	
+	/**
+	 * Alternates removes and adds so that the tree has to refill nodes it
+	 * emptied, both right and left children, and checks the shape by walking it.
+	 */
+	@Test
+	public void addAfterRemoveRefillsLastNode() {
+		MyLinkedHeapTree<Integer> tree = new MyLinkedHeapTree<Integer>();
+		for(int i=1;i<=7;i++) {
+			tree.add(i);
+		}
+		assertThat(tree.remove(), is(7));
+		assertThat(tree.remove(), is(6));
+		tree.add(8);
+		tree.add(9);
+		assertThat(tree.size(), is(7));
+		assertThat(tree.right(tree.root()).element(), is(3));
+		assertThat(tree.left(tree.right(tree.root())).element(), is(8));
+		assertThat(tree.right(tree.right(tree.root())).element(), is(9));
+		for(int i=0;i<6;i++) {
+			tree.remove();
+		}
+		tree.add(10);
+		assertThat(tree.size(), is(2));
+		assertThat(tree.left(tree.root()).element(), is(10));
+	}
 }
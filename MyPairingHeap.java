@@ -0,0 +1,320 @@
+
+import java.util.Comparator;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * An implementation of an adaptable priority queue by means of a
+ * pairing heap, for workloads where replaceKey (mostly decreasing a
+ * key, as in Dijkstra's algorithm) is far more common than removeMin.
+ *
+ * insert and decreasing a key run in O(1) time: the entry is linked
+ * under the root, or cut from its parent and linked under the root.
+ * removeMin, remove and increasing a key run in O(log n) amortized
+ * time, using the usual two-pass pairing of the removed node's children.
+ *
+ * It offers the same methods, exceptions and entry handling as MyHeap,
+ * so the two can be swapped by changing the constructor call.
+ */
+
+public class MyPairingHeap<K,V> implements AdaptablePriorityQueue<K,V> {
+
+	private MyPairingHeapEntry<K,V> _root;
+	private Comparator<K> _compare;
+	private int node_num=0;
+
+	/**
+	 * Creates an empty heap with the given comparator.
+	 *
+	 * @param comparator to be used for heap keys
+	 */
+	public MyPairingHeap(Comparator<K> comparator) {
+		this._compare=comparator;
+	}
+
+	/**
+	 * Sets the comparator used for comparing items in the heap to the
+	 * comparator passed in.
+	 *
+	 * @param comparator, the comparator to be used for heap keys
+	 * @throws IllegalStateException if priority queue is not empty
+	 * @throws IllegalArgumentException if null comparator is passed in
+	 */
+	public void setComparator(Comparator<K> comparator)
+			throws IllegalStateException, IllegalArgumentException {
+		if(comparator==null) {
+			throw new IllegalArgumentException("Comparator cannot be null.");
+		}
+		if(node_num!=0) {
+			throw new IllegalStateException("A heap is already in place!");
+		}
+		this._compare=comparator;
+	}
+
+	/**
+	 * Returns the size of the heap.
+	 * This method must run in O(1) time.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return node_num;
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 * This method must run in O(1) time.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return node_num==0;
+	}
+
+	/**
+	 * Returns but does not remove the entry with minimum key.
+	 * This method must run in O(1) time.
+	 *
+	 * @return the entry with the minimum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> min() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("The heap is empty!");
+		}
+		return _root;
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created.
+	 * This method must run in O(1) time.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the entry created using the key/value parameters
+	 * @throws InvalidKeyException if the key is not suitable for this heap
+	 */
+	public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
+		checkKey(key);
+		MyPairingHeapEntry<K,V> newEnt=new MyPairingHeapEntry<K,V>(key,value);
+		newEnt.owner=this;
+		_root=link(_root,newEnt);
+		node_num++;
+		return newEnt;
+	}
+
+	/**
+	 * Removes and returns the entry with the minimum key.
+	 * This method must run in O(log n) amortized time.
+	 *
+	 * @return the entry with the with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Entry<K,V> removeMin() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("Heap is empty.");
+		}
+		MyPairingHeapEntry<K,V> save=_root;
+		_root=pair(save.child);
+		release(save);
+		return save;
+	}
+
+	/**
+	 * Removes and returns the given entry from the heap.
+	 * This method must run in O(log n) amortized time.
+	 *
+	 * @param entry to be removed from the heap
+	 * @return the entry specified for removal by the parameter, now removed
+	 * @throws InvalidEntryException if the entry cannot be removed from this heap
+	 */
+	public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+		MyPairingHeapEntry<K,V> checkedEntry=this.checkAndConvertEntry(entry);
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("Heap is empty.");
+		}
+		checkOwner(checkedEntry);
+		if(checkedEntry==_root) {
+			return removeMin();
+		}
+		cut(checkedEntry);
+		_root=link(_root,pair(checkedEntry.child));
+		release(checkedEntry);
+		return checkedEntry;
+	}
+
+	/**
+	 * Replaces the key of the given entry. A smaller key runs in O(1)
+	 * time, a larger one in O(log n) amortized time.
+	 *
+	 * @param entry within which the key will be replaced
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if the entry is invalid
+	 * @throws InvalidKeyException if the key is invalid
+	 */
+	public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+		checkKey(key);
+		MyPairingHeapEntry<K,V> checkedEntry=this.checkAndConvertEntry(entry);
+		checkOwner(checkedEntry);
+		K save=checkedEntry.getKey();
+		int order=this._compare.compare(key,save);
+		checkedEntry.setKey(key);
+		if(order<0) {
+			//decrease-key: only the link to the parent can be out of order
+			if(checkedEntry!=_root) {
+				cut(checkedEntry);
+				_root=link(_root,checkedEntry);
+			}
+		}
+		else if(order>0) {
+			//increase-key: the children may now be smaller, so reinsert them separately
+			MyPairingHeapEntry<K,V> children=pair(checkedEntry.child);
+			checkedEntry.child=null;
+			if(checkedEntry==_root) {
+				_root=null;
+			}
+			else {
+				cut(checkedEntry);
+			}
+			_root=link(link(_root,children),checkedEntry);
+		}
+		return save;
+	}
+
+	/**
+	 * Replaces the value of the given entry.
+	 * This method must run in O(1) time.
+	 *
+	 * @param entry within which the value will be replaced
+	 * @param value to replace the existing value in the entry
+	 * @return the old value formerly associated with the entry
+	 * @throws InvalidEntryException if the entry cannot have its value replaced
+	 */
+	public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {
+		MyPairingHeapEntry<K,V> checkedEntry=this.checkAndConvertEntry(entry);
+		checkOwner(checkedEntry);
+		V save=checkedEntry.getValue();
+		checkedEntry.setValue(value);
+		return save;
+	}
+
+	/**
+	 * Determines whether a given entry is valid and converts it to a
+	 * MyPairingHeapEntry, the same way MyHeap does for MyHeapEntry.
+	 *
+	 * @param entry to be checked for validity with respect to the heap
+	 * @return the entry cast as a MyPairingHeapEntry if considered valid
+	 * @throws InvalidEntryException if the entry is not of the proper class
+	 */
+	public MyPairingHeapEntry<K,V> checkAndConvertEntry(Entry<K,V> entry)
+			throws InvalidEntryException {
+		if (entry == null || !(entry instanceof MyPairingHeapEntry)) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		return (MyPairingHeapEntry<K, V>) entry;
+	}
+
+	//throws if the comparator cannot handle the key
+	private void checkKey(K key) throws InvalidKeyException {
+		try {
+			this._compare.compare(key,key);
+		}
+		catch(NullPointerException|ClassCastException e){
+			throw new InvalidKeyException("The key is invalid.");
+		}
+	}
+
+	private void checkOwner(MyPairingHeapEntry<K,V> entry) throws InvalidEntryException {
+		if(entry.owner!=this) {
+			throw new InvalidEntryException("Entry is not in this heap.");
+		}
+	}
+
+	//clears a removed entry's links so it cannot be used with the heap again
+	private void release(MyPairingHeapEntry<K,V> entry) {
+		entry.owner=null;
+		entry.child=null;
+		entry.next=null;
+		entry.prev=null;
+		node_num--;
+	}
+
+	//makes the root with the larger key the leftmost child of the other; both must be roots
+	private MyPairingHeapEntry<K,V> link(MyPairingHeapEntry<K,V> a, MyPairingHeapEntry<K,V> b) {
+		if(a==null) {
+			return b;
+		}
+		if(b==null) {
+			return a;
+		}
+		if(this._compare.compare(b.getKey(),a.getKey())<0) {
+			MyPairingHeapEntry<K,V> save=a;
+			a=b;
+			b=save;
+		}
+		b.prev=a;
+		b.next=a.child;
+		if(a.child!=null) {
+			a.child.prev=b;
+		}
+		a.child=b;
+		return a;
+	}
+
+	//unlinks a non-root entry, with its subtree, from its parent and siblings
+	private void cut(MyPairingHeapEntry<K,V> entry) {
+		if(entry.prev.child==entry) {
+			entry.prev.child=entry.next;
+		}
+		else {
+			entry.prev.next=entry.next;
+		}
+		if(entry.next!=null) {
+			entry.next.prev=entry.prev;
+		}
+		entry.next=null;
+		entry.prev=null;
+	}
+
+	//two-pass pairing of a sibling list: link pairs left to right, then fold them right to left
+	private MyPairingHeapEntry<K,V> pair(MyPairingHeapEntry<K,V> first) {
+		if(first==null) {
+			return null;
+		}
+		//the linked pairs are kept on a stack threaded through next
+		MyPairingHeapEntry<K,V> stack=null;
+		MyPairingHeapEntry<K,V> cur=first;
+		while(cur!=null) {
+			MyPairingHeapEntry<K,V> a=cur;
+			MyPairingHeapEntry<K,V> b=a.next;
+			a.prev=null;
+			a.next=null;
+			if(b==null) {
+				a.next=stack;
+				stack=a;
+				break;
+			}
+			cur=b.next;
+			b.prev=null;
+			b.next=null;
+			MyPairingHeapEntry<K,V> linked=link(a,b);
+			linked.next=stack;
+			stack=linked;
+		}
+		MyPairingHeapEntry<K,V> result=stack;
+		stack=stack.next;
+		result.next=null;
+		while(stack!=null) {
+			MyPairingHeapEntry<K,V> save=stack;
+			stack=stack.next;
+			save.next=null;
+			result=link(result,save);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,20 @@
+
+/**
+ * An entry of a MyPairingHeap. Besides the key and value it inherits
+ * from MyHeapEntry, it is also the node of the pairing heap: it points
+ * to its leftmost child, its right sibling, and back to either its left
+ * sibling or, for a leftmost child, its parent. All methods run in O(1)
+ * time.
+ */
+
+public class MyPairingHeapEntry<K,V> extends MyHeapEntry<K,V> {
+	//the heap this entry is currently in, null once it has been removed
+	MyPairingHeap<K,V> owner;
+	MyPairingHeapEntry<K,V> child;
+	MyPairingHeapEntry<K,V> next;
+	MyPairingHeapEntry<K,V> prev;
+
+	public MyPairingHeapEntry(K setKey, V setVal) {
+		super(setKey,setVal);
+	}
+}
@@ -0,0 +1,81 @@
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.Entry;
+
+/**
+ * Runs the shared heap cases against MyPairingHeap, so it stays
+ * interchangeable with MyHeap, plus a decrease-key heavy workload
+ * checked against a sorted map.
+ */
+
+public class MyPairingHeapTest extends AbstractHeapTest {
+
+	@Override
+	protected AdaptablePriorityQueue<Integer, String> newHeap() {
+		return new MyPairingHeap<Integer, String>(new IntegerComparator());
+	}
+
+	@Override
+	protected void setComparator(AdaptablePriorityQueue<Integer, String> heap, Comparator<Integer> comparator) {
+		((MyPairingHeap<Integer, String>) heap).setComparator(comparator);
+	}
+	
+	/**
+	 * Random inserts, decrease-keys, increase-keys and removes, checked after every
+	 * removeMin against a TreeMap holding the same entries.
+	 */
+	@Test
+	public void randomWorkloadMatchesSortedMap() {
+		MyPairingHeap<Integer, String> heap = new MyPairingHeap<Integer, String>(new IntegerComparator());
+		TreeMap<Integer, Entry<Integer,String>> expected = new TreeMap<Integer, Entry<Integer,String>>();
+		List<Entry<Integer,String>> live = new ArrayList<Entry<Integer,String>>();
+		Random random = new Random(7);
+		for(int step=0;step<20000;step++) {
+			int op=random.nextInt(10);
+			if(op<4 || live.isEmpty()) {
+				Entry<Integer,String> e=heap.insert(freshKey(random, expected, 0, 1000000000), "V");
+				live.add(e);
+				expected.put(e.getKey(), e);
+			}
+			else if(op<7) {
+				//mostly decrease-key, sometimes increase-key
+				Entry<Integer,String> e=live.get(random.nextInt(live.size()));
+				expected.remove(e.getKey());
+				int key=(op==6 ? freshKey(random, expected, e.getKey(), 1000000000) : freshKey(random, expected, 0, e.getKey()+1));
+				heap.replaceKey(e, key);
+				expected.put(key, e);
+			}
+			else if(op<8) {
+				Entry<Integer,String> e=live.remove(random.nextInt(live.size()));
+				expected.remove(e.getKey());
+				heap.remove(e);
+			}
+			else {
+				Entry<Integer,String> e=heap.removeMin();
+				assertThat(e, is(expected.pollFirstEntry().getValue()));
+				live.remove(e);
+			}
+			assertThat(heap.size(), is(expected.size()));
+		}
+	}
+	
+	//a key in [low, high) that is not in the map yet, so the map can mirror the heap
+	private int freshKey(Random random, TreeMap<Integer, Entry<Integer,String>> used, int low, int high) {
+		int key;
+		do {
+			key=low+random.nextInt(high-low);
+		} while(used.containsKey(key));
+		return key;
+	}
+}
@@ -0,0 +1,649 @@
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+
+/**
+ * A heap of long keys and long values (a row id, a file offset) whose
+ * array lives in a memory-mapped file, so a restarted process reopens
+ * the file and carries on without rebuilding anything.
+ *
+ * The file is a one-page header followed by fixed-size rows. Row i
+ * holds the heap record in slot i (key, value, id) and, separately, the
+ * slot of the entry with id i, which is how replaceKey and remove find
+ * an entry. insert hands out the id; ids of removed entries are reused.
+ *
+ * The header records the size and a checksum over every row. The
+ * checksum is a sum of per-row hashes, so each row write adjusts it in
+ * O(1) time, and an update writes only the rows along its sift path plus
+ * the header page: O(log n) pages.
+ *
+ * The header page also holds an undo journal. An update first saves the
+ * header, and then the old contents of each row just before writing it;
+ * the journal is cleared once the new header is written. Writes reach
+ * the page cache in that order, so if the process dies partway through
+ * an update, open() finds the journal and rolls the update back.
+ *
+ * A machine crash is different: the system writes dirty pages back in
+ * any order, so the file on disk may hold some pages of an update and
+ * not others. force() and close() are checkpoints. They flush every
+ * page and then mark the file clean, and the first update after a
+ * checkpoint marks it dirty, and flushes that mark, before it touches
+ * a row. So a clean file is exactly as of the last checkpoint, and
+ * open() reads only its header. A dirty file is rolled back and then
+ * checked in full against the checksum. If a crash left the rows and
+ * the header out of step, open() throws rather than hand back a broken
+ * heap, since the state before the crash cannot be recovered. Call
+ * force() as often as losing the updates since the last one would cost.
+ *
+ * A single mapping is limited to 2GB, which caps the heap at about 89
+ * million entries. Like MyHeap, this class is not thread-safe.
+ */
+
+public class PersistentLongHeap implements Closeable {
+
+	private static final int MAGIC=0x48454150;
+	private static final int VERSION=2;
+	private static final int HEADER=4096;
+	private static final int ROW=24;
+	private static final int MAX_CAPACITY=(Integer.MAX_VALUE-HEADER)/ROW;
+
+	//header fields
+	private static final int MAGIC_AT=0;
+	private static final int VERSION_AT=4;
+	private static final int CAPACITY_AT=8;
+	private static final int SIZE_AT=12;
+	private static final int NEXT_ID_AT=16;
+	private static final int FREE_ID_AT=20;
+	private static final int CHECKSUM_AT=24;
+	private static final int STATE_AT=32;
+	//the number of rows in the journal, or -1 when no update is in progress
+	private static final int JOURNAL_COUNT_AT=36;
+	//the header fields as they were before the update in progress
+	private static final int SAVED_CAPACITY_AT=40;
+	private static final int SAVED_SIZE_AT=44;
+	private static final int SAVED_NEXT_ID_AT=48;
+	private static final int SAVED_FREE_ID_AT=52;
+	private static final int SAVED_CHECKSUM_AT=56;
+	//each journal entry is a row number and the row's old contents
+	private static final int JOURNAL_AT=64;
+	private static final int JOURNAL_ENTRY=4+ROW;
+	//room for 144 entries; an update saves two rows per level it sifts, and at most 28 levels fit under MAX_CAPACITY
+	private static final int MAX_JOURNAL=(HEADER-JOURNAL_AT)/JOURNAL_ENTRY;
+
+	private static final int CLEAN=0;
+	private static final int DIRTY=1;
+
+	//row fields
+	private static final int KEY_AT=0;
+	private static final int VALUE_AT=8;
+	private static final int ID_AT=16;
+	private static final int SLOT_OF_AT=20;
+
+	private final FileChannel _channel;
+	private MappedByteBuffer _map;
+	private int _capacity;
+	private int node_num;
+	//ids below _nextId have been handed out; removed ones form a list through their slot fields
+	private int _nextId;
+	private int _freeId;
+	private long _checksum;
+	//whether the header says DIRTY, i.e. something changed since the last checkpoint
+	private boolean _dirty;
+	//rows saved in the journal by the update in progress
+	private int _journaled;
+	//for tests: the journal entry at which to stop as if the process had died, or -1
+	private int _crashAt=-1;
+
+	/**
+	 * A copy of one entry, as returned by min, removeMin and remove.
+	 */
+	public static final class Record implements Entry<Long,Long> {
+		private final long key;
+		private final long val;
+		private final int id;
+
+		private Record(long key_, long val_, int id_) {
+			key=key_;
+			val=val_;
+			id=id_;
+		}
+
+		/**
+		 * @return the key stored in this record, without boxing
+		 */
+		public long longKey() {
+			return key;
+		}
+
+		/**
+		 * @return the value stored in this record, without boxing
+		 */
+		public long longValue() {
+			return val;
+		}
+
+		/**
+		 * @return the id insert handed out for this entry
+		 */
+		public int id() {
+			return id;
+		}
+
+		/**
+		 * @return the key stored in this record
+		 */
+		public Long getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the value stored in this record
+		 */
+		public Long getValue() {
+			return val;
+		}
+	}
+
+	private PersistentLongHeap(FileChannel channel) {
+		_channel=channel;
+	}
+
+	/**
+	 * Creates an empty heap in the given file, replacing anything the
+	 * file held before.
+	 *
+	 * @param file to keep the heap in
+	 * @param capacity entries to make room for before the file has to grow
+	 * @return the new heap
+	 * @throws IOException if the file cannot be created or mapped
+	 * @throws IllegalArgumentException if capacity is not positive or too large to map
+	 */
+	public static PersistentLongHeap create(Path file, int capacity) throws IOException {
+		if(capacity<1 || capacity>MAX_CAPACITY) {
+			throw new IllegalArgumentException("Capacity must be between 1 and "+MAX_CAPACITY+".");
+		}
+		FileChannel channel=FileChannel.open(file,StandardOpenOption.CREATE,StandardOpenOption.READ,
+				StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			PersistentLongHeap heap=new PersistentLongHeap(channel);
+			heap._freeId=-1;
+			heap._map=channel.map(FileChannel.MapMode.READ_WRITE,0,HEADER+(long) capacity*ROW);
+			heap._map.putInt(MAGIC_AT,MAGIC);
+			heap._map.putInt(VERSION_AT,VERSION);
+			heap._map.putInt(JOURNAL_COUNT_AT,-1);
+			heap.addZeroRows(0,capacity);
+			heap._capacity=capacity;
+			heap.writeHeader();
+			heap._dirty=true;
+			heap.force();
+			return heap;
+		}
+		catch(IOException|RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reopens a heap kept in the given file. An update the process died
+	 * in the middle of is rolled back. If the file was closed or forced
+	 * since it last changed, and verify is not set, this reads only the
+	 * header, so the heap is usable right away; otherwise it recomputes
+	 * the checksum over every row first.
+	 *
+	 * @param file the heap was created in
+	 * @param verify whether to recompute the checksum even for a clean file
+	 * @return the heap as it was after the last update that completed
+	 * @throws IOException if the file is not a heap, or the checksum does
+	 *         not match, as after a machine crash between checkpoints
+	 */
+	public static PersistentLongHeap open(Path file, boolean verify) throws IOException {
+		FileChannel channel=FileChannel.open(file,StandardOpenOption.READ,StandardOpenOption.WRITE);
+		try {
+			PersistentLongHeap heap=new PersistentLongHeap(channel);
+			if(channel.size()<HEADER) {
+				throw new IOException("Not a heap file: "+file);
+			}
+			heap._map=channel.map(FileChannel.MapMode.READ_WRITE,0,HEADER);
+			if(heap._map.getInt(MAGIC_AT)!=MAGIC || heap._map.getInt(VERSION_AT)!=VERSION) {
+				throw new IOException("Not a heap file: "+file);
+			}
+			int journaled=heap._map.getInt(JOURNAL_COUNT_AT);
+			if(journaled<-1 || journaled>MAX_JOURNAL) {
+				throw new IOException("Heap file journal is damaged: "+file);
+			}
+			if(journaled>=0) {
+				heap.restoreHeader();
+			}
+			int capacity=heap._map.getInt(CAPACITY_AT);
+			if(capacity<1 || capacity>MAX_CAPACITY || channel.size()<HEADER+(long) capacity*ROW) {
+				throw new IOException("Heap file is truncated: "+file);
+			}
+			heap._capacity=capacity;
+			heap.node_num=heap._map.getInt(SIZE_AT);
+			heap._nextId=heap._map.getInt(NEXT_ID_AT);
+			heap._freeId=heap._map.getInt(FREE_ID_AT);
+			heap._checksum=heap._map.getLong(CHECKSUM_AT);
+			heap._dirty=heap._map.getInt(STATE_AT)!=CLEAN;
+			heap._map=channel.map(FileChannel.MapMode.READ_WRITE,0,HEADER+(long) capacity*ROW);
+			if(journaled>=0) {
+				heap.restoreRows(journaled);
+			}
+			if((verify || heap._dirty) && heap.computeChecksum()!=heap._checksum) {
+				throw new IOException("Heap file checksum does not match: "+file);
+			}
+			if(heap._dirty) {
+				//the rows now match the header, so this is a checkpoint
+				heap.force();
+			}
+			return heap;
+		}
+		catch(IOException|RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the size of the heap.
+	 * This method must run in O(1) time.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return node_num;
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 * This method must run in O(1) time.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return node_num==0;
+	}
+
+	/**
+	 * Returns but does not remove the entry with minimum key.
+	 * This method must run in O(1) time.
+	 *
+	 * @return a copy of the entry with the minimum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Record min() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("The heap is empty!");
+		}
+		return record(0);
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the id of the entry created.
+	 * This method must run in O(log n) time, plus an occasional O(n)
+	 * when the file has to grow.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the id to pass to replaceKey or remove
+	 * @throws IOException if the file has to grow and cannot
+	 */
+	public int insert(long key, long value) throws IOException {
+		if(node_num==_capacity) {
+			grow();
+		}
+		//after grow, so the saved header already covers the new rows
+		begin();
+		int id;
+		if(_freeId>=0) {
+			id=_freeId;
+			_freeId=-slotOf(id)-2;
+		}
+		else {
+			id=_nextId++;
+		}
+		node_num++;
+		upHeap(node_num-1,key,value,id);
+		commit();
+		return id;
+	}
+
+	/**
+	 * Removes and returns the entry with the minimum key.
+	 * This method must run in O(log n) time.
+	 *
+	 * @return a copy of the entry with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Record removeMin() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("Heap is empty.");
+		}
+		return removeSlot(0);
+	}
+
+	/**
+	 * Removes and returns the entry with the given id.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param id that insert returned for the entry
+	 * @return a copy of the entry, now removed
+	 * @throws InvalidEntryException if no entry in the heap has the id
+	 */
+	public Record remove(int id) throws InvalidEntryException {
+		return removeSlot(checkId(id));
+	}
+
+	/**
+	 * Replaces the key of the entry with the given id.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param id that insert returned for the entry
+	 * @param key to replace the existing key in the entry
+	 * @return the old key formerly associated with the entry
+	 * @throws InvalidEntryException if no entry in the heap has the id
+	 */
+	public long replaceKey(int id, long key) throws InvalidEntryException {
+		int slot=checkId(id);
+		long save=keyAt(slot);
+		long value=valueAt(slot);
+		begin();
+		if(key<save) {
+			upHeap(slot,key,value,id);
+		}
+		else if(key>save) {
+			downHeap(slot,key,value,id);
+		}
+		commit();
+		return save;
+	}
+
+	/**
+	 * Returns a copy of the entry with the given id.
+	 * This method must run in O(1) time.
+	 *
+	 * @param id that insert returned for the entry
+	 * @return a copy of the entry
+	 * @throws InvalidEntryException if no entry in the heap has the id
+	 */
+	public Record get(int id) throws InvalidEntryException {
+		return record(checkId(id));
+	}
+
+	/**
+	 * Writes every change made so far through to the disk, so that it
+	 * survives the machine going down, not just the process, and marks
+	 * the file clean so that open() can trust its header.
+	 */
+	public void force() {
+		_map.force();
+		if(_dirty) {
+			_map.putInt(STATE_AT,CLEAN);
+			_map.force(0,HEADER);
+			_dirty=false;
+		}
+	}
+
+	/**
+	 * Forces the heap to disk and closes the file. The heap cannot be
+	 * used afterwards.
+	 *
+	 * @throws IOException if the file cannot be closed
+	 */
+	public void close() throws IOException {
+		force();
+		_channel.close();
+	}
+
+	/**
+	 * For tests: makes the update in progress stop, as if the process had
+	 * died, just before it saves the given journal entry, leaving the
+	 * file as a killed process would.
+	 */
+	void crashAt(int entry) {
+		_crashAt=entry;
+	}
+
+	//makes sure an entry with the id is in the heap and returns its slot
+	private int checkId(int id) throws InvalidEntryException {
+		if(id<0 || id>=_nextId) {
+			throw new InvalidEntryException("Invalid entry");
+		}
+		int slot=slotOf(id);
+		if(slot<0 || slot>=node_num || idAt(slot)!=id) {
+			throw new InvalidEntryException("Entry is not in this heap.");
+		}
+		return slot;
+	}
+
+	private Record record(int slot) {
+		return new Record(keyAt(slot),valueAt(slot),idAt(slot));
+	}
+
+	//fills the given slot with the last entry and restores heap order around it
+	private Record removeSlot(int slot) {
+		Record save=record(slot);
+		begin();
+		int last=--node_num;
+		if(slot!=last) {
+			long key=keyAt(last);
+			long value=valueAt(last);
+			int id=idAt(last);
+			if(upHeap(slot,key,value,id)==slot) {
+				downHeap(slot,key,value,id);
+			}
+		}
+		//the removed id joins the free list
+		setSlotOf(save.id,-_freeId-2);
+		_freeId=save.id;
+		commit();
+		return save;
+	}
+
+	/*
+	 * The journal. begin() saves the header, journal() saves a row just
+	 * before it is written, and commit() writes the new header and then
+	 * clears the journal. Until it is cleared, open() can undo the update.
+	 */
+
+	private void begin() {
+		if(!_dirty) {
+			//on disk before any row changes, so a clean file is never newer than its header says
+			_map.putInt(STATE_AT,DIRTY);
+			_map.force(0,HEADER);
+			_dirty=true;
+		}
+		_map.putInt(SAVED_CAPACITY_AT,_capacity);
+		_map.putInt(SAVED_SIZE_AT,node_num);
+		_map.putInt(SAVED_NEXT_ID_AT,_nextId);
+		_map.putInt(SAVED_FREE_ID_AT,_freeId);
+		_map.putLong(SAVED_CHECKSUM_AT,_checksum);
+		_journaled=0;
+		_map.putInt(JOURNAL_COUNT_AT,0);
+	}
+
+	private void journal(int row) {
+		if(_journaled==_crashAt) {
+			try {
+				_channel.close();
+			}
+			catch(IOException e) {
+				//the simulated crash goes ahead regardless
+			}
+			throw new IllegalStateException("Simulated crash.");
+		}
+		int at=JOURNAL_AT+_journaled*JOURNAL_ENTRY;
+		int from=rowAt(row);
+		_map.putInt(at,row);
+		_map.putLong(at+4,_map.getLong(from));
+		_map.putLong(at+12,_map.getLong(from+8));
+		_map.putLong(at+20,_map.getLong(from+16));
+		//counted only once the entry is whole
+		_map.putInt(JOURNAL_COUNT_AT,++_journaled);
+	}
+
+	private void commit() {
+		writeHeader();
+		_map.putInt(JOURNAL_COUNT_AT,-1);
+	}
+
+	private void restoreHeader() {
+		_map.putInt(CAPACITY_AT,_map.getInt(SAVED_CAPACITY_AT));
+		_map.putInt(SIZE_AT,_map.getInt(SAVED_SIZE_AT));
+		_map.putInt(NEXT_ID_AT,_map.getInt(SAVED_NEXT_ID_AT));
+		_map.putInt(FREE_ID_AT,_map.getInt(SAVED_FREE_ID_AT));
+		_map.putLong(CHECKSUM_AT,_map.getLong(SAVED_CHECKSUM_AT));
+	}
+
+	//puts the journalled rows back, latest first so a row saved twice ends up as it was before the update
+	private void restoreRows(int journaled) throws IOException {
+		for(int i=journaled-1;i>=0;i--) {
+			int at=JOURNAL_AT+i*JOURNAL_ENTRY;
+			int row=_map.getInt(at);
+			if(row<0 || row>=_capacity) {
+				throw new IOException("Heap file journal is damaged.");
+			}
+			int to=rowAt(row);
+			_map.putLong(to,_map.getLong(at+4));
+			_map.putLong(to+8,_map.getLong(at+12));
+			_map.putLong(to+16,_map.getLong(at+20));
+		}
+		_map.putInt(JOURNAL_COUNT_AT,-1);
+	}
+
+	/*
+	 * The sifts move a hole: the entry being placed is passed in rather
+	 * than read from its slot, each entry passed over is written once,
+	 * and the placed entry is written only where it lands. So an update
+	 * touches the rows on one root-to-leaf path and nothing else.
+	 */
+
+	private void downHeap(int slot, long key, long value, int id) {
+		int left=2*slot+1;
+		while(left<node_num) {
+			int child=left;
+			if(left+1<node_num && keyAt(left+1)<keyAt(left)) {
+				child=left+1;
+			}
+			long childKey=keyAt(child);
+			if(childKey>=key) {
+				break;
+			}
+			place(slot,childKey,valueAt(child),idAt(child));
+			slot=child;
+			left=2*slot+1;
+		}
+		place(slot,key,value,id);
+	}
+
+	//returns the slot the entry ended up in
+	private int upHeap(int slot, long key, long value, int id) {
+		while(slot>0) {
+			int parent=(slot-1)>>>1;
+			long parentKey=keyAt(parent);
+			if(key>=parentKey) {
+				break;
+			}
+			place(slot,parentKey,valueAt(parent),idAt(parent));
+			slot=parent;
+		}
+		place(slot,key,value,id);
+		return slot;
+	}
+
+	private void place(int slot, long key, long value, int id) {
+		int at=rowAt(slot);
+		journal(slot);
+		_checksum-=rowHash(slot);
+		_map.putLong(at+KEY_AT,key);
+		_map.putLong(at+VALUE_AT,value);
+		_map.putInt(at+ID_AT,id);
+		_checksum+=rowHash(slot);
+		setSlotOf(id,slot);
+	}
+
+	private void setSlotOf(int id, int slot) {
+		journal(id);
+		_checksum-=rowHash(id);
+		_map.putInt(rowAt(id)+SLOT_OF_AT,slot);
+		_checksum+=rowHash(id);
+	}
+
+	private long keyAt(int slot) {
+		return _map.getLong(rowAt(slot)+KEY_AT);
+	}
+
+	private long valueAt(int slot) {
+		return _map.getLong(rowAt(slot)+VALUE_AT);
+	}
+
+	private int idAt(int slot) {
+		return _map.getInt(rowAt(slot)+ID_AT);
+	}
+
+	private int slotOf(int id) {
+		return _map.getInt(rowAt(id)+SLOT_OF_AT);
+	}
+
+	private static int rowAt(int row) {
+		return HEADER+row*ROW;
+	}
+
+	private void writeHeader() {
+		_map.putInt(CAPACITY_AT,_capacity);
+		_map.putInt(SIZE_AT,node_num);
+		_map.putInt(NEXT_ID_AT,_nextId);
+		_map.putInt(FREE_ID_AT,_freeId);
+		_map.putLong(CHECKSUM_AT,_checksum);
+	}
+
+	//doubles the rows in the file; the mapping has to be replaced to cover them, and the header catches up at the next commit
+	private void grow() throws IOException {
+		if(_capacity==MAX_CAPACITY) {
+			throw new IllegalStateException("The heap is full.");
+		}
+		int capacity=(int) Math.min((long) _capacity*2,MAX_CAPACITY);
+		_map=_channel.map(FileChannel.MapMode.READ_WRITE,0,HEADER+(long) capacity*ROW);
+		addZeroRows(_capacity,capacity);
+		_capacity=capacity;
+	}
+
+	//new rows come zero-filled from the file system, but still count towards the checksum
+	private void addZeroRows(int from, int to) {
+		for(int row=from;row<to;row++) {
+			_checksum+=rowHash(row);
+		}
+	}
+
+	private long computeChecksum() {
+		long sum=0;
+		for(int row=0;row<_capacity;row++) {
+			sum+=rowHash(row);
+		}
+		return sum;
+	}
+
+	//mixes the row's contents with its number, so that rows swapped around do not cancel out
+	private long rowHash(int row) {
+		int at=rowAt(row);
+		long h=row*0x9E3779B97F4A7C15L;
+		h=mix(h^_map.getLong(at+KEY_AT));
+		h=mix(h^_map.getLong(at+VALUE_AT));
+		h=mix(h^_map.getLong(at+ID_AT));
+		return h;
+	}
+
+	private static long mix(long h) {
+		h=(h^(h>>>33))*0xFF51AFD7ED558CCDL;
+		h=(h^(h>>>33))*0xC4CEB9FE1A85EC53L;
+		return h^(h>>>33);
+	}
+}
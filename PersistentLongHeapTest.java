@@ -0,0 +1,242 @@
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.InvalidEntryException;
+
+/**
+ * Tests the memory-mapped PersistentLongHeap, including reopening it.
+ */
+public class PersistentLongHeapTest {
+
+	/**
+	 * Entries written before closing come back out of a reopened heap in order,
+	 * including entries added after the file had to grow.
+	 */
+	@Test
+	public void reopenedHeapKeepsEntries() throws IOException {
+		Path file = Files.createTempFile("heap", ".bin");
+		try {
+			PersistentLongHeap heap = PersistentLongHeap.create(file, 4);
+			PriorityQueue<Long> expected = new PriorityQueue<Long>();
+			Random random = new Random(15);
+			for(int i=0;i<1000;i++) {
+				long key=random.nextInt(100000);
+				heap.insert(key, key*2);
+				expected.add(key);
+			}
+			for(int i=0;i<100;i++) {
+				assertThat(heap.removeMin().longKey(), is(expected.poll()));
+			}
+			heap.close();
+			heap = PersistentLongHeap.open(file, true);
+			assertThat(heap.size(), is(900));
+			while(!heap.isEmpty()) {
+				PersistentLongHeap.Record min = heap.removeMin();
+				assertThat(min.longKey(), is(expected.poll()));
+				assertThat(min.longValue(), is(min.longKey()*2));
+			}
+			heap.close();
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Ids stay valid for replaceKey and remove while entries move, and across a reopen.
+	 */
+	@Test
+	public void replaceKeyAndRemoveById() throws IOException {
+		Path file = Files.createTempFile("heap", ".bin");
+		try {
+			PersistentLongHeap heap = PersistentLongHeap.create(file, 16);
+			List<Integer> ids = new ArrayList<Integer>();
+			for(int i=0;i<50;i++) {
+				ids.add(heap.insert(100+i, i));
+			}
+			heap.replaceKey(ids.get(30), 1);
+			assertThat(heap.remove(ids.get(10)).longValue(), is(10L));
+			heap.close();
+			heap = PersistentLongHeap.open(file, true);
+			assertThat(heap.min().id(), is((int) ids.get(30)));
+			heap.replaceKey(ids.get(30), 1000);
+			assertThat(heap.get(ids.get(30)).longKey(), is(1000L));
+			assertThat(heap.removeMin().longKey(), is(100L));
+			assertThat(heap.removeMin().longKey(), is(101L));
+			assertThat(heap.removeMin().longKey(), is(102L));
+			heap.close();
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * A byte flipped in a row is caught by the checksum when reopening with verification.
+	 */
+	@Test
+	public void corruptedFileFailsVerification() throws IOException {
+		Path file = Files.createTempFile("heap", ".bin");
+		try {
+			PersistentLongHeap heap = PersistentLongHeap.create(file, 16);
+			for(int i=0;i<10;i++) {
+				heap.insert(i, i);
+			}
+			heap.close();
+			RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw");
+			raw.seek(4096+24*3+2);
+			raw.write(0x7F);
+			raw.close();
+			PersistentLongHeap.open(file, false).close();
+			try {
+				PersistentLongHeap.open(file, true);
+			}
+			catch(IOException e) {
+				return;
+			}
+			assertTrue(false);
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected=InvalidEntryException.class)
+	public void removedIdIsRejected() throws IOException {
+		Path file = Files.createTempFile("heap", ".bin");
+		try {
+			PersistentLongHeap heap = PersistentLongHeap.create(file, 16);
+			int id = heap.insert(1, 1);
+			heap.insert(2, 2);
+			heap.remove(id);
+			try {
+				heap.remove(id);
+			}
+			finally {
+				heap.close();
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expected=EmptyPriorityQueueException.class)
+	public void testMinThrowsEmptyPriority() throws IOException {
+		Path file = Files.createTempFile("heap", ".bin");
+		try {
+			PersistentLongHeap heap = PersistentLongHeap.create(file, 16);
+			try {
+				heap.min();
+			}
+			finally {
+				heap.close();
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * An update cut short at any point is rolled back by a plain reopen, which then
+	 * carries on from the last update that completed.
+	 */
+	@Test
+	public void interruptedUpdateIsRolledBack() throws IOException {
+		Path file = Files.createTempFile("heap", ".bin");
+		try {
+			for(int crash=0;crash<12;crash++) {
+				PersistentLongHeap heap = PersistentLongHeap.create(file, 64);
+				List<Integer> ids = new ArrayList<Integer>();
+				for(int i=0;i<40;i++) {
+					ids.add(heap.insert(1000-i*7, i));
+				}
+				heap.remove(ids.get(3));
+				heap.crashAt(crash);
+				boolean crashed = false;
+				try {
+					switch(crash%3) {
+					case 0:
+						heap.removeMin();
+						break;
+					case 1:
+						heap.replaceKey(ids.get(30), 5000);
+						break;
+					default:
+						heap.insert(-1, -1);
+						break;
+					}
+				}
+				catch(IllegalStateException e) {
+					crashed = true;
+				}
+				if(!crashed) {
+					//the update needed fewer journal entries than that, so it completed
+					heap.close();
+				}
+				heap = PersistentLongHeap.open(file, true);
+				int change = crashed || crash%3==1 ? 0 : crash%3==0 ? -1 : 1;
+				assertThat(heap.size(), is(39+change));
+				assertThat(heap.get(ids.get(30)).longKey(), is(crashed || crash%3!=1 ? 790L : 5000L));
+				int id = heap.insert(-2, -2);
+				assertThat(heap.removeMin().id(), is(id));
+				long last = Long.MIN_VALUE;
+				while(!heap.isEmpty()) {
+					long key = heap.removeMin().longKey();
+					assertTrue(key>=last);
+					last = key;
+				}
+				heap.close();
+			}
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * A file changed since its last checkpoint is checked in full on a plain reopen, so
+	 * rows a machine crash left out of step with the header are caught.
+	 */
+	@Test(expected=IOException.class)
+	public void dirtyFileIsVerifiedOnOpen() throws IOException {
+		Path file = Files.createTempFile("heap", ".bin");
+		try {
+			PersistentLongHeap heap = PersistentLongHeap.create(file, 16);
+			for(int i=0;i<10;i++) {
+				heap.insert(i, i);
+			}
+			heap.force();
+			heap.crashAt(0);
+			try {
+				heap.insert(-1, -1);
+			}
+			catch(IllegalStateException e) {
+				//the simulated crash, after the file was marked dirty
+			}
+			RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw");
+			raw.seek(4096+24*5+2);
+			raw.write(0x7F);
+			raw.close();
+			PersistentLongHeap.open(file, false);
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+}
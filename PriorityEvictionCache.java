@@ -0,0 +1,281 @@
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleBiFunction;
+import java.util.function.ToLongBiFunction;
+
+import net.datastructures.Entry;
+
+/**
+ * A cache that evicts by priority: a HashMap from keys to MyHeap entries,
+ * with the heap ordered by a pluggable score so that removeMin always
+ * yields the entry to evict next. Capacity is a total weight, one per
+ * entry unless a weigher says otherwise.
+ *
+ * Hits do not touch the heap. A get counts the hit in the entry and
+ * marks it stale, which costs about as much as the HashMap lookup
+ * itself. A stale entry is only re-scored, with one replaceKey, when it
+ * comes up for eviction; it then stays if its fresh score moved it away
+ * from the bottom. This is exact for scores that only grow with use, as
+ * all the provided ones do: a stale score is never too high, so nothing
+ * is evicted that a fresh score would have kept.
+ *
+ * Like MyHeap, it is not safe for use by several threads at once.
+ */
+
+public class PriorityEvictionCache<K,V> {
+
+	private static final Comparator<Double> SCORE=new Comparator<Double>() {
+		public int compare(Double a, Double b) {
+			return Double.compare(a,b);
+		}
+	};
+
+	/**
+	 * Scores an entry for eviction; the lowest score is evicted first.
+	 * Scores must not shrink as hits grow or as the clock moves on.
+	 */
+	public interface Scorer<K,V> {
+		/**
+		 * @param key of the entry
+		 * @param value of the entry
+		 * @param weight of the entry
+		 * @param hits reads and writes of the entry so far, at least 1
+		 * @param writtenAt nanoseconds from the cache's creation to the last put of the entry
+		 * @param clock the score of the last eviction as of the entry's last hit,
+		 *        the inflation term of GDSF
+		 * @return the entry's score
+		 */
+		double score(K key, V value, long weight, long hits, long writtenAt, double clock);
+	}
+
+	/**
+	 * @return least frequently used: the entry with the fewest hits goes first
+	 */
+	public static <K,V> Scorer<K,V> lfu() {
+		return (key,value,weight,hits,writtenAt,clock) -> hits;
+	}
+
+	/**
+	 * @return GreedyDual-Size-Frequency with every miss costing the same,
+	 *         which favours keeping small, popular, recently used entries
+	 */
+	public static <K,V> Scorer<K,V> gdsf() {
+		return (key,value,weight,hits,writtenAt,clock) -> clock+(double) hits/weight;
+	}
+
+	/**
+	 * @param cost of missing an entry, e.g. the time it took to load
+	 * @return GreedyDual-Size-Frequency weighing in the cost of a miss
+	 */
+	public static <K,V> Scorer<K,V> gdsf(ToDoubleBiFunction<? super K,? super V> cost) {
+		return (key,value,weight,hits,writtenAt,clock) -> clock+hits*cost.applyAsDouble(key,value)/weight;
+	}
+
+	/**
+	 * Orders eviction by deadline, the earliest first. Entries are not
+	 * expired by get; an entry past its deadline stays until evicted.
+	 *
+	 * @param ttl how long after its last put an entry is due
+	 * @param unit of the ttl
+	 * @return the entry closest to its deadline goes first
+	 */
+	public static <K,V> Scorer<K,V> deadline(long ttl, TimeUnit unit) {
+		final long nanos=unit.toNanos(ttl);
+		return (key,value,weight,hits,writtenAt,clock) -> (double) (writtenAt+nanos);
+	}
+
+	//what the cache keeps per key; dirty means the score in the heap is out of date
+	private static final class Node<K,V> {
+		private final K key;
+		private V value;
+		private long weight;
+		private long hits;
+		private long writtenAt;
+		private double clock;
+		private boolean dirty;
+		private Entry<Double,Node<K,V>> entry;
+
+		private Node(K key_) {
+			key=key_;
+		}
+	}
+
+	private final HashMap<K,Node<K,V>> _map=new HashMap<K,Node<K,V>>();
+	private final MyHeap<Double,Node<K,V>> _heap=new MyHeap<Double,Node<K,V>>(SCORE,MyHeap.Layout.ARRAY);
+	private final Scorer<? super K,? super V> _scorer;
+	private final ToLongBiFunction<? super K,? super V> _weigher;
+	private final long _capacity;
+	private final long _epoch=System.nanoTime();
+	private long _weight=0;
+	private double _clock=0;
+	private long _evictions=0;
+
+	/**
+	 * Creates a cache holding up to capacity entries.
+	 *
+	 * @param capacity the number of entries to keep
+	 * @param scorer the eviction order
+	 * @throws IllegalArgumentException if capacity is not positive or scorer is null
+	 */
+	public PriorityEvictionCache(long capacity, Scorer<? super K,? super V> scorer) {
+		this(capacity,scorer,null);
+	}
+
+	/**
+	 * Creates a cache holding entries up to a total weight.
+	 *
+	 * @param capacity the total weight to keep
+	 * @param scorer the eviction order
+	 * @param weigher the weight of an entry, which must be positive, or null to count entries
+	 * @throws IllegalArgumentException if capacity is not positive or scorer is null
+	 */
+	public PriorityEvictionCache(long capacity, Scorer<? super K,? super V> scorer,
+			ToLongBiFunction<? super K,? super V> weigher) {
+		if(capacity<1) {
+			throw new IllegalArgumentException("Capacity must be positive.");
+		}
+		if(scorer==null) {
+			throw new IllegalArgumentException("Scorer cannot be null.");
+		}
+		_capacity=capacity;
+		_scorer=scorer;
+		_weigher=weigher;
+	}
+
+	/**
+	 * Returns the value cached for the key and counts a hit, leaving the
+	 * eviction order to be brought up to date later.
+	 * This method must run in O(1) time.
+	 *
+	 * @param key to look up
+	 * @return the cached value, or null if there is none
+	 */
+	public V get(K key) {
+		Node<K,V> node=_map.get(key);
+		if(node==null) {
+			return null;
+		}
+		node.hits++;
+		node.clock=_clock;
+		node.dirty=true;
+		return node.value;
+	}
+
+	/**
+	 * Caches a value, evicting by score until the total weight fits. An
+	 * entry heavier than the whole capacity is not cached, and takes any
+	 * older value for its key out with it. Replacing a value counts as a hit.
+	 * This method must run in O((e+1) log n) time for e entries evicted or re-scored.
+	 *
+	 * @param key to cache the value under
+	 * @param value to cache
+	 * @return the value previously cached for the key, or null if there was none
+	 * @throws IllegalArgumentException if key or value is null, or the weight is not positive
+	 */
+	public V put(K key, V value) {
+		if(key==null || value==null) {
+			throw new IllegalArgumentException("Keys and values cannot be null.");
+		}
+		long weight=_weigher==null ? 1 : _weigher.applyAsLong(key,value);
+		if(weight<1) {
+			throw new IllegalArgumentException("Weight must be positive.");
+		}
+		if(weight>_capacity) {
+			return remove(key);
+		}
+		Node<K,V> node=_map.get(key);
+		V old=null;
+		if(node==null) {
+			node=new Node<K,V>(key);
+			_map.put(key,node);
+		}
+		else {
+			old=node.value;
+			_weight-=node.weight;
+		}
+		node.value=value;
+		node.weight=weight;
+		node.hits++;
+		node.writtenAt=System.nanoTime()-_epoch;
+		node.clock=_clock;
+		node.dirty=false;
+		double score=_scorer.score(key,value,weight,node.hits,node.writtenAt,node.clock);
+		if(node.entry==null) {
+			node.entry=_heap.insert(score,node);
+		}
+		else {
+			_heap.replaceKey(node.entry,score);
+		}
+		_weight+=weight;
+		evict();
+		return old;
+	}
+
+	/**
+	 * Removes the value cached for the key.
+	 * This method must run in O(log n) time.
+	 *
+	 * @param key to remove
+	 * @return the value that was cached, or null if there was none
+	 */
+	public V remove(K key) {
+		Node<K,V> node=_map.remove(key);
+		if(node==null) {
+			return null;
+		}
+		_heap.remove(node.entry);
+		_weight-=node.weight;
+		return node.value;
+	}
+
+	/**
+	 * @return the number of entries cached
+	 */
+	public int size() {
+		return _map.size();
+	}
+
+	/**
+	 * @return the total weight of the entries cached
+	 */
+	public long weight() {
+		return _weight;
+	}
+
+	/**
+	 * @return the total weight the cache keeps
+	 */
+	public long capacity() {
+		return _capacity;
+	}
+
+	/**
+	 * @return the number of entries evicted so far
+	 */
+	public long evictions() {
+		return _evictions;
+	}
+
+	//each stale entry is re-scored at most once, so this ends
+	private void evict() {
+		while(_weight>_capacity) {
+			Entry<Double,Node<K,V>> lowest=_heap.min();
+			Node<K,V> node=lowest.getValue();
+			if(node.dirty) {
+				node.dirty=false;
+				double score=_scorer.score(node.key,node.value,node.weight,node.hits,node.writtenAt,node.clock);
+				if(score>lowest.getKey()) {
+					_heap.replaceKey(lowest,score);
+					continue;
+				}
+			}
+			_heap.removeMin();
+			_map.remove(node.key);
+			_weight-=node.weight;
+			_clock=lowest.getKey();
+			_evictions++;
+		}
+	}
+}
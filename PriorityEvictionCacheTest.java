@@ -0,0 +1,97 @@
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests PriorityEvictionCache with each of the provided scorers.
+ */
+public class PriorityEvictionCacheTest {
+
+	/**
+	 * Hits recorded since the last eviction still count, though they were never pushed into the heap.
+	 */
+	@Test
+	public void lfuEvictsLeastUsedCountingDeferredHits() {
+		PriorityEvictionCache<String, Integer> cache = new PriorityEvictionCache<String, Integer>(3, PriorityEvictionCache.<String, Integer>lfu());
+		cache.put("A", 1);
+		cache.put("B", 2);
+		cache.put("C", 3);
+		cache.get("A");
+		cache.get("A");
+		cache.get("C");
+		cache.put("D", 4);
+		assertThat(cache.size(), is(3));
+		assertTrue(cache.get("B") == null);
+		cache.get("D");
+		cache.get("D");
+		//a newcomer has the fewest hits of all, so it is the one to go
+		cache.put("E", 5);
+		assertTrue(cache.get("E") == null);
+		assertThat(cache.get("C"), is(3));
+		assertThat(cache.get("A"), is(1));
+		assertThat(cache.get("D"), is(4));
+		assertThat(cache.evictions(), is(2L));
+	}
+
+	/**
+	 * Capacity is a total weight, and GDSF gives up one big entry before several small ones.
+	 */
+	@Test
+	public void gdsfEvictsHeavyEntriesFirst() {
+		PriorityEvictionCache<String, String> cache = new PriorityEvictionCache<String, String>(10,
+				PriorityEvictionCache.<String, String>gdsf(), (key, value) -> value.length());
+		cache.put("big", "xxxxxx");
+		cache.put("a", "x");
+		cache.put("b", "x");
+		cache.put("c", "x");
+		assertThat(cache.weight(), is(9L));
+		cache.put("d", "xx");
+		assertTrue(cache.get("big") == null);
+		assertThat(cache.size(), is(4));
+		assertThat(cache.weight(), is(5L));
+		cache.put("huge", "xxxxxxxxxxx");
+		assertTrue(cache.get("huge") == null);
+		assertThat(cache.size(), is(4));
+	}
+
+	@Test
+	public void deadlineEvictsEarliestWritten() throws InterruptedException {
+		PriorityEvictionCache<String, Integer> cache = new PriorityEvictionCache<String, Integer>(2,
+				PriorityEvictionCache.<String, Integer>deadline(1, TimeUnit.MINUTES));
+		cache.put("A", 1);
+		Thread.sleep(2);
+		cache.put("B", 2);
+		Thread.sleep(2);
+		cache.get("A");
+		cache.put("A", 10);
+		Thread.sleep(2);
+		cache.put("C", 3);
+		assertTrue(cache.get("B") == null);
+		assertThat(cache.get("A"), is(10));
+	}
+
+	@Test
+	public void removeAndReplaceKeepWeight() {
+		PriorityEvictionCache<String, String> cache = new PriorityEvictionCache<String, String>(100,
+				PriorityEvictionCache.<String, String>lfu(), (key, value) -> value.length());
+		cache.put("A", "xxx");
+		assertTrue(cache.put("A", "xxxxx").equals("xxx"));
+		cache.put("B", "xx");
+		assertThat(cache.weight(), is(7L));
+		assertThat(cache.remove("A"), is("xxxxx"));
+		assertTrue(cache.remove("A") == null);
+		assertThat(cache.weight(), is(2L));
+		assertThat(cache.size(), is(1));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void nullValueIsRejected() {
+		PriorityEvictionCache<String, String> cache = new PriorityEvictionCache<String, String>(1, PriorityEvictionCache.<String, String>lfu());
+		cache.put("A", null);
+	}
+}
@@ -0,0 +1,193 @@
+
+import java.util.Arrays;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.Entry;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * A monotone priority queue for long keys, as used by event simulators
+ * where nothing is ever scheduled before the current time. Every key
+ * inserted must be at least the last minimum returned by min() or
+ * removeMin(), which is the simulator's current time.
+ *
+ * Entries are kept in 65 buckets by the highest bit in which their key
+ * differs from that last minimum: bucket 0 holds keys equal to
+ * it, bucket i holds keys whose highest differing bit is i-1. When
+ * bucket 0 runs out, the first non-empty bucket is scanned for its
+ * minimum, which becomes the new reference, and its entries are spread
+ * over strictly lower buckets. An entry can only move down, so each
+ * operation costs O(log C) amortized for keys spanning a range of C,
+ * with plain long comparisons and no Comparator.
+ */
+
+public class RadixHeap<V> {
+
+	private static final int BUCKETS=65;
+
+	/**
+	 * An entry of a RadixHeap.
+	 */
+	public static final class Item<V> implements Entry<Long,V> {
+		private final long key;
+		private final V val;
+
+		private Item(long key_, V val_) {
+			key=key_;
+			val=val_;
+		}
+
+		/**
+		 * @return the key stored in this entry, without boxing
+		 */
+		public long longKey() {
+			return key;
+		}
+
+		public Long getKey() {
+			return key;
+		}
+
+		public V getValue() {
+			return val;
+		}
+	}
+
+	private final Item<V>[][] _buckets;
+	private final int[] _counts=new int[BUCKETS];
+	//the last minimum returned by min or removeMin; every key in the heap is at least this
+	private long _last=Long.MIN_VALUE;
+	private int node_num=0;
+
+	/**
+	 * Creates an empty heap. The first key inserted may be any long.
+	 */
+	@SuppressWarnings("unchecked")
+	public RadixHeap() {
+		_buckets=(Item<V>[][]) new Item[BUCKETS][];
+		for(int i=0;i<BUCKETS;i++) {
+			_buckets[i]=(Item<V>[]) new Item[4];
+		}
+	}
+
+	/**
+	 * Returns the size of the heap.
+	 * This method must run in O(1) time.
+	 *
+	 * @return an int representing the number of entries stored
+	 */
+	public int size() {
+		return node_num;
+	}
+
+	/**
+	 * Returns whether the heap is empty.
+	 * This method must run in O(1) time.
+	 *
+	 * @return true if the heap is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return node_num==0;
+	}
+
+	/**
+	 * @return the last minimum returned, the smallest key that may still be inserted
+	 */
+	public long lastMinKey() {
+		return _last;
+	}
+
+	/**
+	 * Inserts a key-value pair and returns the entry created.
+	 * This method must run in O(1) time.
+	 *
+	 * @param key to be used as the key the heap is sorting with
+	 * @param value stored with the associated key in the heap
+	 * @return the entry created using the key/value parameters
+	 * @throws InvalidKeyException if the key is smaller than the last minimum returned
+	 */
+	public Item<V> insert(long key, V value) throws InvalidKeyException {
+		if(key<_last) {
+			throw new InvalidKeyException("Key "+key+" is smaller than the last minimum returned, "+_last
+					+"; a radix heap only accepts monotone keys.");
+		}
+		Item<V> item=new Item<V>(key,value);
+		push(bucketOf(key),item);
+		node_num++;
+		return item;
+	}
+
+	/**
+	 * Returns but does not remove an entry with minimum key. After this,
+	 * keys smaller than the returned one can no longer be inserted.
+	 * This method runs in O(log C) amortized time.
+	 *
+	 * @return an entry with the minimum key in the heap
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Item<V> min() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("The heap is empty!");
+		}
+		settle();
+		return _buckets[0][_counts[0]-1];
+	}
+
+	/**
+	 * Removes and returns an entry with the minimum key. After this,
+	 * keys smaller than the removed one can no longer be inserted.
+	 * This method runs in O(log C) amortized time.
+	 *
+	 * @return an entry with the minimum key, now removed
+	 * @throws EmptyPriorityQueueException if the heap is empty
+	 */
+	public Item<V> removeMin() throws EmptyPriorityQueueException {
+		if(node_num==0) {
+			throw new EmptyPriorityQueueException("Heap is empty.");
+		}
+		settle();
+		int top=--_counts[0];
+		Item<V> save=_buckets[0][top];
+		_buckets[0][top]=null;
+		node_num--;
+		return save;
+	}
+
+	//bucket 0 for the reference key itself, otherwise one past the highest differing bit
+	private int bucketOf(long key) {
+		return key==_last ? 0 : 64-Long.numberOfLeadingZeros(key^_last);
+	}
+
+	private void push(int bucket, Item<V> item) {
+		if(_counts[bucket]==_buckets[bucket].length) {
+			_buckets[bucket]=Arrays.copyOf(_buckets[bucket],_counts[bucket]*2);
+		}
+		_buckets[bucket][_counts[bucket]++]=item;
+	}
+
+	//makes sure bucket 0 holds the minimum; the heap must not be empty
+	private void settle() {
+		if(_counts[0]>0) {
+			return;
+		}
+		int bucket=1;
+		while(_counts[bucket]==0) {
+			bucket++;
+		}
+		Item<V>[] items=_buckets[bucket];
+		int count=_counts[bucket];
+		long min=items[0].key;
+		for(int i=1;i<count;i++) {
+			if(items[i].key<min) {
+				min=items[i].key;
+			}
+		}
+		//with the minimum as the new reference every entry lands in a lower bucket
+		_last=min;
+		_counts[bucket]=0;
+		for(int i=0;i<count;i++) {
+			push(bucketOf(items[i].key),items[i]);
+			items[i]=null;
+		}
+	}
+}
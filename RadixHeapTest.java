@@ -0,0 +1,83 @@
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.datastructures.EmptyPriorityQueueException;
+import net.datastructures.InvalidKeyException;
+
+/**
+ * Tests the monotone RadixHeap.
+ */
+public class RadixHeapTest {
+
+	@Test
+	public void testRemoveMinHeapOrder() {
+		RadixHeap<String> heap = new RadixHeap<String>();
+		heap.insert(11, "A");
+		heap.insert(13, "B");
+		heap.insert(64, "C");
+		heap.insert(16, "D");
+		heap.insert(-44, "E");
+		assertThat(heap.min().longKey(), is(-44L));
+		assertThat(heap.removeMin().getValue(), is("E"));
+		assertThat(heap.removeMin().longKey(), is(11L));
+		assertThat(heap.removeMin().longKey(), is(13L));
+		assertThat(heap.removeMin().longKey(), is(16L));
+		assertThat(heap.removeMin().longKey(), is(64L));
+		assertThat(heap.size(), is(0));
+	}
+
+	@Test(expected=EmptyPriorityQueueException.class)
+	public void testMinThrowsEmptyPriority() {
+		RadixHeap<String> heap = new RadixHeap<String>();
+		heap.min();
+	}
+
+	/**
+	 * Inserting below the current time breaks monotonicity and is rejected.
+	 */
+	@Test(expected=InvalidKeyException.class)
+	public void insertBelowLastMinIsRejected() {
+		RadixHeap<String> heap = new RadixHeap<String>();
+		heap.insert(10, "A");
+		heap.insert(20, "B");
+		heap.removeMin();
+		heap.insert(10, "C");
+		heap.insert(9, "D");
+	}
+
+	/**
+	 * A discrete-event style run, where each removed event schedules new ones
+	 * in the future, checked against java.util.PriorityQueue.
+	 */
+	@Test
+	public void eventTraceMatchesPriorityQueue() {
+		RadixHeap<String> heap = new RadixHeap<String>();
+		PriorityQueue<Long> expected = new PriorityQueue<Long>();
+		Random random = new Random(3);
+		for(int i=0;i<100;i++) {
+			long key=random.nextInt(1000);
+			heap.insert(key, null);
+			expected.add(key);
+		}
+		for(int step=0;step<50000;step++) {
+			long now=heap.removeMin().longKey();
+			assertThat(now, is(expected.poll()));
+			int spawn=random.nextInt(3);
+			for(int i=0;i<spawn && heap.size()<5000;i++) {
+				long key=now+(random.nextInt(4)==0 ? 0 : random.nextInt(1<<random.nextInt(30)));
+				heap.insert(key, null);
+				expected.add(key);
+			}
+			if(heap.isEmpty()) {
+				heap.insert(now, null);
+				expected.add(now);
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+import java.util.HashSet;
+import java.util.Random;
+
+import heapbench.Counted;
+import heapbench.Workload;
+
+/**
+ * The array layout of MyHeap against the blocked one on a hold workload,
+ * for heapbench.BlockedHeapBenchmark: every run() is a removeMin followed
+ * by an insert, so each operation sifts the length of the tree. Both
+ * heaps order by a cached long key so the comparisons themselves do not
+ * chase the keys.
+ *
+ * With no hardware counters to hand, setup() also models what a
+ * root-to-leaf path touches in the layout: the distinct 4KB pages and
+ * 64-byte lines of the slot array, at 4 bytes a slot as with compressed
+ * references. The entries the slots point to are not in the model.
+ *
+ * Parameters: layout, size. Counts, summed over the sampled paths:
+ * "paths", "slots", "pages" and "lines".
+ */
+
+public class BlockedHeapWorkload implements Workload, Counted {
+
+	private static final int PATHS=10000;
+
+	private final Long[] keys=new Long[1<<20];
+	private MyHeap<Long,String> heap;
+	private int step;
+	private long slots;
+	private long pages;
+	private long lines;
+
+	public void setup(String... params) {
+		Random random=new Random(25);
+		for(int i=0;i<keys.length;i++) {
+			keys[i]=random.nextLong();
+		}
+		heap=MyHeap.withLongKey((Long key) -> key,MyHeap.Layout.valueOf(params[0]));
+		int size=Integer.parseInt(params[1]);
+		for(int i=0;i<size;i++) {
+			heap.insert(keys[i&(keys.length-1)]^i,"v");
+		}
+		model(random);
+	}
+
+	public void reset() {
+	}
+
+	public long run() {
+		//keys only grow, as due times do, so inserts land near the leaves
+		Long key=heap.removeMin().getKey();
+		heap.insert(key+(keys[step++&(keys.length-1)]>>>40),"v");
+		return key;
+	}
+
+	public long count(String name) throws IllegalArgumentException {
+		switch(name) {
+		case "paths":
+			return PATHS;
+		case "slots":
+			return slots;
+		case "pages":
+			return pages;
+		case "lines":
+			return lines;
+		default:
+			throw new IllegalArgumentException("No count named "+name+".");
+		}
+	}
+
+	//sums the distinct pages and lines over paths from random leaves to the root
+	private void model(Random random) {
+		HashSet<Integer> seenPages=new HashSet<Integer>();
+		HashSet<Integer> seenLines=new HashSet<Integer>();
+		for(int i=0;i<PATHS;) {
+			int slot=random.nextInt(heap.size());
+			if(heap.firstChildSlot(slot)<heap.size()) {
+				continue;
+			}
+			seenPages.clear();
+			seenLines.clear();
+			for(;;slot=heap.parentSlot(slot)) {
+				slots++;
+				seenPages.add(slot>>>10);
+				seenLines.add(slot>>>4);
+				if(slot==0) {
+					break;
+				}
+			}
+			pages+=seenPages.size();
+			lines+=seenLines.size();
+			i++;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.datastructures.AdaptablePriorityQueue;
+import net.datastructures.Entry;
+import net.datastructures.InvalidEntryException;
+import net.datastructures.InvalidKeyException;
+
+import heapbench.Workload;
+
+/**
+ * ConcurrentAdaptableHeap (flat combining) or a MyHeap guarded by one
+ * ReentrantLock, shared by every benchmark thread, for
+ * heapbench.FlatCombiningBenchmark. Each run() is two inserts followed
+ * by two removeMins, so the heap stays at its starting size and
+ * consecutive inserts from many threads can share a pass.
+ *
+ * Parameters: heap, either COMBINING or LOCKED.
+ */
+
+public class FlatCombiningWorkload implements Workload {
+
+	private static final int PREFILL=1<<18;
+	private static final Comparator<Long> COMPARE=new Comparator<Long>() {
+		public int compare(Long a, Long b) {
+			return a.compareTo(b);
+		}
+	};
+
+	private AdaptablePriorityQueue<Long,Long> heap;
+
+	public void setup(String... params) {
+		if(params[0].equals("LOCKED")) {
+			heap=new LockedHeap<Long,Long>(COMPARE);
+		}
+		else {
+			heap=new ConcurrentAdaptableHeap<Long,Long>(COMPARE);
+		}
+		Random random=new Random(42);
+		for(int i=0;i<PREFILL;i++) {
+			heap.insert((long) random.nextInt(),null);
+		}
+	}
+
+	public void reset() {
+	}
+
+	public long run() {
+		ThreadLocalRandom random=ThreadLocalRandom.current();
+		heap.insert((long) random.nextInt(),null);
+		heap.insert((long) random.nextInt(),null);
+		return heap.removeMin().getKey()+heap.removeMin().getKey();
+	}
+
+	//the baseline: every operation takes one global lock
+	private static class LockedHeap<K,V> implements AdaptablePriorityQueue<K,V> {
+		private final MyHeap<K,V> _heap;
+		private final ReentrantLock _lock=new ReentrantLock();
+
+		LockedHeap(Comparator<K> comparator) {
+			_heap=new MyHeap<K,V>(comparator,MyHeap.Layout.ARRAY);
+		}
+
+		public int size() {
+			_lock.lock();
+			try {
+				return _heap.size();
+			}
+			finally {
+				_lock.unlock();
+			}
+		}
+
+		public boolean isEmpty() {
+			return size()==0;
+		}
+
+		public Entry<K,V> min() {
+			_lock.lock();
+			try {
+				return _heap.min();
+			}
+			finally {
+				_lock.unlock();
+			}
+		}
+
+		public Entry<K,V> insert(K key, V value) throws InvalidKeyException {
+			_lock.lock();
+			try {
+				return _heap.insert(key,value);
+			}
+			finally {
+				_lock.unlock();
+			}
+		}
+
+		public Entry<K,V> removeMin() {
+			_lock.lock();
+			try {
+				return _heap.removeMin();
+			}
+			finally {
+				_lock.unlock();
+			}
+		}
+
+		public Entry<K,V> remove(Entry<K,V> entry) throws InvalidEntryException {
+			_lock.lock();
+			try {
+				return _heap.remove(entry);
+			}
+			finally {
+				_lock.unlock();
+			}
+		}
+
+		public K replaceKey(Entry<K,V> entry, K key) throws InvalidEntryException, InvalidKeyException {
+			_lock.lock();
+			try {
+				return _heap.replaceKey(entry,key);
+			}
+			finally {
+				_lock.unlock();
+			}
+		}
+
+		public V replaceValue(Entry<K,V> entry, V value) throws InvalidEntryException {
+			_lock.lock();
+			try {
+				return _heap.replaceValue(entry,value);
+			}
+			finally {
+				_lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import heapbench.Counted;
+import heapbench.Workload;
+
+/**
+ * How late HeapScheduler fires timers while a large number of them are
+ * pending, and how often its timer thread wakes to do so, for
+ * heapbench.HeapSchedulerBenchmark. setup() schedules the background
+ * timers, far enough out that they only make the heap big; each run()
+ * schedules a sample of timers spread over three seconds and waits for
+ * them all to fire.
+ *
+ * Parameters: pending, sampled. Counts, for the last run: lateness "p50",
+ * "p99", "p999" and "max" in nanoseconds, and "wakeups" of the timer.
+ */
+
+public class HeapSchedulerWorkload implements Workload, Counted {
+
+	private HeapScheduler scheduler;
+	private long[] lateness;
+	private final Random random=new Random(20);
+	private long wakeups;
+
+	public void setup(String... params) {
+		int pending=Integer.parseInt(params[0]);
+		lateness=new long[Integer.parseInt(params[1])];
+		scheduler=new HeapScheduler(Runnable::run);
+		long start=System.nanoTime();
+		for(int i=0;i<pending;i++) {
+			scheduler.schedule(() -> {},start+TimeUnit.MINUTES.toNanos(10)+random.nextInt(1<<30));
+		}
+	}
+
+	public void reset() {
+	}
+
+	public long run() {
+		final CountDownLatch done=new CountDownLatch(lateness.length);
+		long base=System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(200);
+		long before=scheduler.wakeups();
+		for(int i=0;i<lateness.length;i++) {
+			final int index=i;
+			final long due=base+(long) (random.nextDouble()*TimeUnit.SECONDS.toNanos(3));
+			scheduler.schedule(() -> {
+				lateness[index]=System.nanoTime()-due;
+				done.countDown();
+			},due);
+		}
+		try {
+			done.await();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the timers.",e);
+		}
+		wakeups=scheduler.wakeups()-before;
+		Arrays.sort(lateness);
+		return lateness[lateness.length-1];
+	}
+
+	public long count(String name) throws IllegalArgumentException {
+		int sampled=lateness.length;
+		switch(name) {
+		case "p50":
+			return lateness[sampled/2];
+		case "p99":
+			return lateness[(int) (sampled*0.99)];
+		case "p999":
+			return lateness[(int) (sampled*0.999)];
+		case "max":
+			return lateness[sampled-1];
+		case "wakeups":
+			return wakeups;
+		default:
+			throw new IllegalArgumentException("No count named "+name+".");
+		}
+	}
+}
@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Random;
+
+import heapbench.Workload;
+
+/**
+ * Saving a MyHeap of Long keys and values to a local file with
+ * HeapSnapshot and loading it back, against building the same heap from
+ * the same entries one insert at a time, which is what a reload without
+ * snapshots amounts to; for heapbench.HeapSnapshotBenchmark.
+ *
+ * INSERT reuses the keys and values boxed in setup, so unlike LOAD it is
+ * not charged for creating them.
+ *
+ * Parameters: op (SAVE, LOAD or INSERT), layout, entries. The snapshot
+ * file is a temporary file, deleted when the JVM exits.
+ */
+
+public class HeapSnapshotWorkload implements Workload {
+
+	private static final Comparator<Long> COMPARE=new Comparator<Long>() {
+		public int compare(Long a, Long b) {
+			return a.compareTo(b);
+		}
+	};
+
+	private String op;
+	private MyHeap.Layout layout;
+	private Long[] keys;
+	private Long[] values;
+	private MyHeap<Long,Long> heap;
+	private Path file;
+
+	public void setup(String... params) {
+		op=params[0];
+		layout=MyHeap.Layout.valueOf(params[1]);
+		int entries=Integer.parseInt(params[2]);
+		Random random=new Random(16);
+		keys=new Long[entries];
+		values=new Long[entries];
+		heap=new MyHeap<Long,Long>(COMPARE,layout);
+		for(int i=0;i<entries;i++) {
+			keys[i]=random.nextLong();
+			values[i]=(long) i;
+			heap.insert(keys[i],values[i]);
+		}
+		try {
+			file=Files.createTempFile("heap",".snapshot");
+			file.toFile().deleteOnExit();
+			save();
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void reset() {
+	}
+
+	public long run() {
+		try {
+			if(op.equals("SAVE")) {
+				return save();
+			}
+			if(op.equals("LOAD")) {
+				try(FileChannel in=FileChannel.open(file,StandardOpenOption.READ)) {
+					return HeapSnapshot.read(in,COMPARE,layout,HeapSnapshot.LONG,HeapSnapshot.LONG).size();
+				}
+			}
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		MyHeap<Long,Long> built=new MyHeap<Long,Long>(COMPARE,layout);
+		for(int i=0;i<keys.length;i++) {
+			built.insert(keys[i],values[i]);
+		}
+		return built.size();
+	}
+
+	private long save() throws IOException {
+		try(FileChannel out=FileChannel.open(file,StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING)) {
+			HeapSnapshot.write(heap,out,HeapSnapshot.LONG,HeapSnapshot.LONG);
+			return out.size();
+		}
+	}
+}
@@ -0,0 +1,46 @@
+import heapbench.Workload;
+
+/**
+ * Fills a heap tree to the given size with add and empties it again with
+ * remove, for heapbench.HeapTreeBenchmark. The tree is empty after every
+ * run, so reset() has nothing to do. Parameters: tree (LINKED or ARRAY), size.
+ */
+
+public class HeapTreeWorkload implements Workload {
+
+	private boolean linked;
+	private int size;
+	private MyLinkedHeapTree<Integer> linkedTree;
+	private MyArrayHeapTree<Integer> arrayTree;
+
+	public void setup(String... params) {
+		linked=params[0].equals("LINKED");
+		size=Integer.parseInt(params[1]);
+		linkedTree=new MyLinkedHeapTree<Integer>();
+		arrayTree=new MyArrayHeapTree<Integer>();
+	}
+
+	public void reset() {
+	}
+
+	public long run() {
+		Integer element=1;
+		if(linked) {
+			for(int i=0;i<size;i++) {
+				linkedTree.add(element);
+			}
+			for(int i=0;i<size;i++) {
+				linkedTree.remove();
+			}
+			return linkedTree.size();
+		}
+		for(int i=0;i<size;i++) {
+			arrayTree.addLast(element);
+		}
+		long sum=0;
+		for(int i=0;i<size;i++) {
+			sum+=arrayTree.removeLast();
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import net.datastructures.Entry;
+
+import heapbench.Workload;
+
+/**
+ * A MyHeap ordered by a Comparator over heavy key objects, or by a long
+ * extracted from the same keys, for heapbench.KeyExtractorBenchmark. The
+ * keys are jobs whose deadline sits in a separate object, so every
+ * comparator call chases two pointers per key, as keys reached through a
+ * getter chain do. setup() fills the heap; run() is one step of a cycle
+ * of a removeMin with an insert, then two replaceKeys.
+ *
+ * Parameters: order (COMPARATOR or EXTRACTOR), layout, size.
+ */
+
+public class KeyExtractorWorkload implements Workload {
+
+	//jobs beyond the initial fill, reused as a ring
+	private static final int SPARE=1<<20;
+
+	private static final class Deadline {
+		private final long at;
+
+		private Deadline(long at_) {
+			at=at_;
+		}
+	}
+
+	private static final class Job {
+		private final Deadline deadline;
+
+		private Job(long at) {
+			deadline=new Deadline(at);
+		}
+	}
+
+	private static final Comparator<Job> BY_DEADLINE=new Comparator<Job>() {
+		public int compare(Job a, Job b) {
+			return Long.compare(a.deadline.at,b.deadline.at);
+		}
+	};
+
+	private MyHeap<Job,Integer> heap;
+	private Job[] jobs;
+	private List<Entry<Job,Integer>> entries;
+	private Random random;
+	private int size;
+	private int next;
+	private int step;
+
+	public void setup(String... params) {
+		MyHeap.Layout layout=MyHeap.Layout.valueOf(params[1]);
+		if(params[0].equals("EXTRACTOR")) {
+			heap=MyHeap.<Job,Integer>withLongKey(job -> job.deadline.at,layout);
+		}
+		else {
+			heap=new MyHeap<Job,Integer>(BY_DEADLINE,layout);
+		}
+		size=Integer.parseInt(params[2]);
+		random=new Random(24);
+		jobs=new Job[size+SPARE];
+		for(int i=0;i<jobs.length;i++) {
+			jobs[i]=new Job(random.nextLong());
+		}
+		entries=new ArrayList<Entry<Job,Integer>>(size);
+		for(int i=0;i<size;i++) {
+			entries.add(heap.insert(jobs[i],i));
+		}
+		next=size;
+	}
+
+	public void reset() {
+	}
+
+	public long run() {
+		if((step++&3)==0) {
+			//the new job takes over the removed one's index
+			int index=heap.removeMin().getValue();
+			entries.set(index,heap.insert(jobs[next],index));
+			next=next+1==jobs.length ? 0 : next+1;
+			return index;
+		}
+		heap.replaceKey(entries.get(random.nextInt(size)),jobs[random.nextInt(jobs.length)]);
+		return step;
+	}
+}
@@ -0,0 +1,68 @@
+import java.util.Comparator;
+import java.util.Random;
+
+import heapbench.Workload;
+
+/**
+ * Consolidates many small heaps into one large one, with meld or with
+ * the removeMin/insert loop meld replaces, for heapbench.MeldBenchmark.
+ * run() does the consolidation only; reset() fills the small heaps again.
+ *
+ * Parameters: method (MELD or REINSERT), layout, heaps, entries per heap.
+ */
+
+public class MeldWorkload implements Workload {
+
+	private static final Comparator<Integer> COMPARE=new Comparator<Integer>() {
+		public int compare(Integer a, Integer b) {
+			return a.compareTo(b);
+		}
+	};
+
+	private boolean meld;
+	private MyHeap.Layout layout;
+	private int heaps;
+	private Integer[] keys;
+	private MyHeap<Integer,Integer>[] parts;
+
+	@SuppressWarnings("unchecked")
+	public void setup(String... params) {
+		meld=params[0].equals("MELD");
+		layout=MyHeap.Layout.valueOf(params[1]);
+		heaps=Integer.parseInt(params[2]);
+		keys=new Integer[heaps*Integer.parseInt(params[3])];
+		Random random=new Random(17);
+		for(int i=0;i<keys.length;i++) {
+			keys[i]=random.nextInt();
+		}
+		parts=(MyHeap<Integer,Integer>[]) new MyHeap[heaps];
+	}
+
+	public void reset() {
+		int perHeap=keys.length/heaps;
+		for(int h=0;h<heaps;h++) {
+			parts[h]=new MyHeap<Integer,Integer>(COMPARE,layout);
+			for(int i=h*perHeap;i<(h+1)*perHeap;i++) {
+				parts[h].insert(keys[i],i);
+			}
+		}
+	}
+
+	public long run() {
+		MyHeap<Integer,Integer> all=parts[0];
+		for(int h=1;h<heaps;h++) {
+			if(meld) {
+				all.meld(parts[h]);
+			}
+			else {
+				while(!parts[h].isEmpty()) {
+					all.insert(parts[h].removeMin().getKey(),0);
+				}
+			}
+		}
+		if(all.size()!=keys.length) {
+			throw new IllegalStateException("lost entries");
+		}
+		return all.min().getKey();
+	}
+}
@@ -0,0 +1,118 @@
+import java.util.Comparator;
+import java.util.Random;
+
+import net.datastructures.Entry;
+
+import heapbench.Workload;
+
+/**
+ * MinMaxHeap against the two cross-linked MyHeaps it replaces, one
+ * ordered each way with every entry's value pointing at its twin in the
+ * other heap, on an admission queue shedding under load; for
+ * heapbench.MinMaxHeapBenchmark. Requests arrive faster than they are
+ * served, the most urgent is served from the min end, the least valuable
+ * is shed from the max end once the queue is full, and some queued
+ * requests are re-prioritised. setup() runs the queue until it is full,
+ * so every run() is one step of the shedding steady state.
+ *
+ * Parameters: queue (MINMAX or DUAL), capacity.
+ */
+
+public class MinMaxHeapWorkload implements Workload {
+
+	private static final Comparator<Long> ASCENDING=new Comparator<Long>() {
+		public int compare(Long a, Long b) {
+			return a.compareTo(b);
+		}
+	};
+
+	private static final Comparator<Long> DESCENDING=new Comparator<Long>() {
+		public int compare(Long a, Long b) {
+			return b.compareTo(a);
+		}
+	};
+
+	private int capacity;
+	private boolean dual;
+	private final Random random=new Random(21);
+	private int step;
+	private MinMaxHeap<Long,Long> heap;
+	private Entry<Long,Long> recent;
+	private MyHeap<Long,Entry<Long,?>> min;
+	private MyHeap<Long,Entry<Long,?>> max;
+	private Entry<Long,Entry<Long,?>> recentTwin;
+
+	public void setup(String... params) {
+		dual=params[0].equals("DUAL");
+		capacity=Integer.parseInt(params[1]);
+		if(dual) {
+			min=new MyHeap<Long,Entry<Long,?>>(ASCENDING,MyHeap.Layout.ARRAY);
+			max=new MyHeap<Long,Entry<Long,?>>(DESCENDING,MyHeap.Layout.ARRAY);
+		}
+		else {
+			heap=new MinMaxHeap<Long,Long>(ASCENDING);
+		}
+		//each four steps add two requests net, so this fills the queue
+		for(long i=0;i<2L*capacity+64;i++) {
+			run();
+		}
+	}
+
+	public void reset() {
+	}
+
+	//arrivals outnumber services three to one, every eighth arrival bumps a queued request
+	public long run() {
+		return dual ? dualStep(step++) : minMaxStep(step++);
+	}
+
+	private long minMaxStep(int i) {
+		int op=i&3;
+		if(op==3 && !heap.isEmpty()) {
+			recent=null;
+			return heap.removeMin().getKey();
+		}
+		else if(op==2 && recent!=null && (i&31)==2) {
+			heap.replaceKey(recent,random.nextLong()>>>20);
+		}
+		else {
+			recent=heap.insert(random.nextLong()>>>20,(long) i);
+			if(heap.size()>capacity) {
+				if(heap.removeMax()==recent) {
+					recent=null;
+				}
+			}
+		}
+		return 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private long dualStep(int i) {
+		int op=i&3;
+		if(op==3 && !min.isEmpty()) {
+			Entry<Long,Entry<Long,?>> first=min.removeMin();
+			max.remove((Entry<Long,Entry<Long,?>>) first.getValue());
+			recentTwin=null;
+			return first.getKey();
+		}
+		else if(op==2 && recentTwin!=null && (i&31)==2) {
+			long key=random.nextLong()>>>20;
+			min.replaceKey(recentTwin,key);
+			max.replaceKey((Entry<Long,Entry<Long,?>>) recentTwin.getValue(),key);
+		}
+		else {
+			long key=random.nextLong()>>>20;
+			recentTwin=min.insert(key,null);
+			Entry<Long,Entry<Long,?>> twin=max.insert(key,recentTwin);
+			min.replaceValue(recentTwin,twin);
+			if(min.size()>capacity) {
+				Entry<Long,Entry<Long,?>> last=max.removeMin();
+				min.remove((Entry<Long,Entry<Long,?>>) last.getValue());
+				if(last.getValue()==recentTwin) {
+					recentTwin=null;
+				}
+			}
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,95 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.datastructures.Entry;
+
+import heapbench.Counted;
+import heapbench.Workload;
+
+/**
+ * The rank error of MultiQueueHeap, for heapbench.MultiQueueRankBenchmark.
+ * reset() loads the keys 0..n-1; run() has the given number of threads
+ * drain the queue concurrently, every removal taking a ticket from a
+ * shared counter. Replaying the removals in ticket order, the rank error
+ * of a removal is how many smaller keys were still in the queue.
+ *
+ * Parameters: threads. Counts, for the last run: "removals", and the
+ * "total" and "max" rank error over them.
+ */
+
+public class MultiQueueRankWorkload implements Workload, Counted {
+
+	private static final int PREFILL=MultiQueueWorkload.PREFILL;
+
+	private int threads;
+	private MultiQueueHeap<Long,Long> queue;
+	private final long[] byTicket=new long[PREFILL];
+	private long total;
+	private long max;
+
+	public void setup(String... params) {
+		threads=Integer.parseInt(params[0]);
+	}
+
+	public void reset() {
+		queue=new MultiQueueHeap<Long,Long>(MultiQueueWorkload.COMPARE,threads,2);
+		for(long key=0;key<PREFILL;key++) {
+			queue.insert(key,null);
+		}
+	}
+
+	public long run() {
+		final AtomicInteger tickets=new AtomicInteger();
+		Thread[] workers=new Thread[threads];
+		for(int t=0;t<threads;t++) {
+			workers[t]=new Thread(new Runnable() {
+				public void run() {
+					Entry<Long,Long> min;
+					while((min=queue.pollMin())!=null) {
+						byTicket[tickets.getAndIncrement()]=min.getKey();
+					}
+				}
+			});
+			workers[t].start();
+		}
+		try {
+			for(Thread worker : workers) {
+				worker.join();
+			}
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while draining.",e);
+		}
+		//Fenwick tree over keys counts how many smaller keys are already gone
+		int[] removed=new int[PREFILL+1];
+		total=0;
+		max=0;
+		for(int i=0;i<PREFILL;i++) {
+			int key=(int) byTicket[i];
+			int gone=0;
+			for(int j=key;j>0;j-=j&-j) {
+				gone+=removed[j];
+			}
+			long error=key-gone;
+			total+=error;
+			max=Math.max(max,error);
+			for(int j=key+1;j<=PREFILL;j+=j&-j) {
+				removed[j]++;
+			}
+		}
+		return total;
+	}
+
+	public long count(String name) throws IllegalArgumentException {
+		if(name.equals("total")) {
+			return total;
+		}
+		if(name.equals("removals")) {
+			return PREFILL;
+		}
+		if(name.equals("max")) {
+			return max;
+		}
+		throw new IllegalArgumentException("No count named "+name+".");
+	}
+}
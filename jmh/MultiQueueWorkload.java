@@ -0,0 +1,74 @@
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.datastructures.Entry;
+
+import heapbench.Workload;
+
+/**
+ * The hold model on a queue shared by every benchmark thread, for
+ * heapbench.MultiQueueBenchmark: run() removes the (approximate) minimum
+ * and inserts a new key slightly larger than it. run() is called from
+ * all benchmark threads at once.
+ *
+ * Parameters: queue, either MULTIQUEUE or LOCKED for a single MyHeap
+ * behind one global lock, and the number of threads, which sizes the
+ * MultiQueueHeap at two shards per thread.
+ */
+
+public class MultiQueueWorkload implements Workload {
+
+	static final int PREFILL=1<<20;
+	static final Comparator<Long> COMPARE=new Comparator<Long>() {
+		public int compare(Long a, Long b) {
+			return a.compareTo(b);
+		}
+	};
+
+	private MultiQueueHeap<Long,Long> queue;
+	private MyHeap<Long,Long> heap;
+	private final ReentrantLock lock=new ReentrantLock();
+
+	public void setup(String... params) {
+		if(params[0].equals("LOCKED")) {
+			heap=new MyHeap<Long,Long>(COMPARE,MyHeap.Layout.ARRAY);
+		}
+		else {
+			queue=new MultiQueueHeap<Long,Long>(COMPARE,Integer.parseInt(params[1]),2);
+		}
+		Random random=new Random(42);
+		for(int i=0;i<PREFILL;i++) {
+			long key=random.nextInt(PREFILL);
+			if(heap!=null) {
+				heap.insert(key,null);
+			}
+			else {
+				queue.insert(key,null);
+			}
+		}
+	}
+
+	public void reset() {
+	}
+
+	public long run() {
+		long key=1+ThreadLocalRandom.current().nextInt(1024);
+		if(heap==null) {
+			Entry<Long,Long> min=queue.pollMin();
+			key+=min==null ? 0 : min.getKey();
+			queue.insert(key,null);
+			return key;
+		}
+		lock.lock();
+		try {
+			key+=heap.removeMin().getKey();
+			heap.insert(key,null);
+		}
+		finally {
+			lock.unlock();
+		}
+		return key;
+	}
+}
@@ -0,0 +1,62 @@
+import java.util.Comparator;
+import java.util.Random;
+
+import heapbench.Workload;
+
+/**
+ * An array heap of one arity under one of two operation mixes, for
+ * heapbench.MyHeapArityBenchmark. Each run() builds a fresh heap:
+ *
+ * 	- insert heavy: three inserts for every removeMin until the heap
+ * 	  reaches the size, so most of the work is upHeap, which only gets
+ * 	  cheaper with arity
+ * 	- removeMin heavy: fill the heap then drain it, so most of the work is
+ * 	  downHeap, where a wider node trades fewer levels for more comparisons
+ *
+ * Parameters: arity, mix (INSERT_HEAVY or REMOVEMIN_HEAVY), size.
+ */
+
+public class MyHeapArityWorkload implements Workload {
+
+	private static final Comparator<Integer> COMPARE=new Comparator<Integer>() {
+		public int compare(Integer a, Integer b) {
+			return a.compareTo(b);
+		}
+	};
+
+	private int arity;
+	private boolean insertHeavy;
+	private int size;
+	private Random random;
+
+	public void setup(String... params) {
+		arity=Integer.parseInt(params[0]);
+		insertHeavy=params[1].equals("INSERT_HEAVY");
+		size=Integer.parseInt(params[2]);
+		random=new Random(1);
+	}
+
+	public void reset() {
+	}
+
+	public long run() {
+		MyHeap<Integer,Integer> heap=new MyHeap<Integer,Integer>(COMPARE,MyHeap.Layout.ARRAY,arity);
+		if(insertHeavy) {
+			while(heap.size()<size) {
+				heap.insert(random.nextInt(),null);
+				heap.insert(random.nextInt(),null);
+				heap.insert(random.nextInt(),null);
+				heap.removeMin();
+			}
+			return heap.min().getKey();
+		}
+		for(int i=0;i<size;i++) {
+			heap.insert(random.nextInt(),null);
+		}
+		long sum=0;
+		while(!heap.isEmpty()) {
+			sum+=heap.removeMin().getKey();
+		}
+		return sum;
+	}
+}
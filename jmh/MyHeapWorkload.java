@@ -0,0 +1,170 @@
+import java.util.Comparator;
+import java.util.Random;
+
+import net.datastructures.Entry;
+
+import heapbench.Workload;
+
+/**
+ * MyHeap under one key distribution and operation mix, for
+ * heapbench.MyHeapBenchmark. Parameters: layout, mix, keys, size.
+ *
+ * The mixes:
+ * 	hold     removeMin then insert a slightly larger key, size constant;
+ * 	         run() is one such pair
+ * 	dijkstra removeMin then decrease the keys of a few random entries,
+ * 	         until empty
+ * 	drain    insert everything, then removeMin until empty
+ * 	cancel   remove 90% of the entries in random order, then drain
+ * 	         the rest; lazycancel does the same with lazy deletion
+ * Every mix but hold uses its heap up, so reset() loads it again.
+ *
+ * The keys loaded up front are boxed before measuring, so for drain the
+ * allocation figure is what the heap itself allocates; the new keys of
+ * hold and dijkstra are boxed inside the run, as they would be in use.
+ */
+
+public class MyHeapWorkload implements Workload {
+
+	private static final Comparator<Integer> COMPARE=new Comparator<Integer>() {
+		public int compare(Integer a, Integer b) {
+			return a.compareTo(b);
+		}
+	};
+
+	private enum Keys { RANDOM, ASCENDING, DESCENDING, DUPLICATES }
+
+	private enum Mix { HOLD, DIJKSTRA, DRAIN, CANCEL, LAZYCANCEL }
+
+	private MyHeap.Layout layout;
+	private Mix mix;
+	private Integer[] data;
+	private final Integer[] later=new Integer[1024];
+	private MyHeap<Integer,Integer> heap;
+	private Entry<Integer,Integer>[] entries;
+	private Random random;
+	private int[] order;
+	private int step;
+
+	public void setup(String... params) {
+		layout=MyHeap.Layout.valueOf(params[0]);
+		mix=Mix.valueOf(params[1]);
+		data=keys(Keys.valueOf(params[2]),Integer.parseInt(params[3]));
+		for(int i=0;i<later.length;i++) {
+			later[i]=i;
+		}
+		reset();
+	}
+
+	//all mixes start from a heap loaded with data, except drain which loads it as part of the run
+	@SuppressWarnings("unchecked")
+	public void reset() {
+		heap=new MyHeap<Integer,Integer>(COMPARE,layout);
+		random=new Random(1);
+		entries=(Entry<Integer,Integer>[]) new Entry[data.length];
+		if(mix!=Mix.DRAIN) {
+			for(int i=0;i<data.length;i++) {
+				entries[i]=heap.insert(data[i],i);
+			}
+		}
+		if(mix==Mix.LAZYCANCEL) {
+			heap.setLazyDeleteRatio(0.5);
+		}
+		if(mix==Mix.CANCEL || mix==Mix.LAZYCANCEL) {
+			order=new int[data.length];
+			for(int i=0;i<order.length;i++) {
+				order[i]=i;
+			}
+			for(int i=order.length-1;i>0;i--) {
+				int j=random.nextInt(i+1);
+				int save=order[i];
+				order[i]=order[j];
+				order[j]=save;
+			}
+		}
+	}
+
+	public long run() {
+		switch(mix) {
+		case HOLD:
+			return hold();
+		case DIJKSTRA:
+			return dijkstra();
+		case CANCEL:
+		case LAZYCANCEL:
+			return cancel();
+		default:
+			return drain();
+		}
+	}
+
+	private static Integer[] keys(Keys keys, int size) {
+		Random random=new Random(size);
+		Integer[] data=new Integer[size];
+		for(int i=0;i<size;i++) {
+			switch(keys) {
+			case ASCENDING:
+				data[i]=i;
+				break;
+			case DESCENDING:
+				data[i]=size-i;
+				break;
+			case DUPLICATES:
+				data[i]=random.nextInt(16);
+				break;
+			default:
+				data[i]=random.nextInt();
+				break;
+			}
+		}
+		return data;
+	}
+
+	private long hold() {
+		Entry<Integer,Integer> min=heap.removeMin();
+		heap.insert(min.getKey()+later[step++&1023],min.getValue());
+		return min.getKey();
+	}
+
+	private long dijkstra() {
+		long ops=0;
+		while(!heap.isEmpty()) {
+			Entry<Integer,Integer> min=heap.removeMin();
+			entries[min.getValue()]=null;
+			ops++;
+			//relax a few random neighbours still in the queue
+			for(int i=0;i<4;i++) {
+				Entry<Integer,Integer> next=entries[random.nextInt(entries.length)];
+				if(next!=null && next.getKey()>min.getKey()) {
+					int key=min.getKey()+(next.getKey()-min.getKey())/2;
+					heap.replaceKey(next,key);
+					ops++;
+				}
+			}
+		}
+		return ops;
+	}
+
+	private long cancel() {
+		int cancelled=order.length-order.length/10;
+		for(int i=0;i<cancelled;i++) {
+			heap.remove(entries[order[i]]);
+		}
+		long sum=0;
+		while(!heap.isEmpty()) {
+			sum+=heap.removeMin().getKey();
+		}
+		return sum;
+	}
+
+	private long drain() {
+		for(int i=0;i<data.length;i++) {
+			heap.insert(data[i],i);
+		}
+		long sum=0;
+		while(!heap.isEmpty()) {
+			sum+=heap.removeMin().getKey();
+		}
+		return sum;
+	}
+}
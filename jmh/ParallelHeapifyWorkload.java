@@ -0,0 +1,52 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import net.datastructures.Entry;
+
+import heapbench.Workload;
+
+/**
+ * A full insertAll into an empty MyHeap, built bottom-up either
+ * sequentially or in parallel, for heapbench.ParallelHeapifyBenchmark.
+ * It includes creating the entries on the calling thread, so the speedup
+ * is bounded by that sequential part as well as by the machine.
+ *
+ * Parameters: threads (0 for the sequential build), layout, entries.
+ */
+
+public class ParallelHeapifyWorkload implements Workload {
+
+	private static final Comparator<Integer> COMPARE=new Comparator<Integer>() {
+		public int compare(Integer a, Integer b) {
+			return a.compareTo(b);
+		}
+	};
+
+	private ForkJoinPool pool;
+	private MyHeap.Layout layout;
+	private List<Entry<Integer,Integer>> pairs;
+
+	public void setup(String... params) {
+		int threads=Integer.parseInt(params[0]);
+		pool=threads==0 ? null : new ForkJoinPool(threads);
+		layout=MyHeap.Layout.valueOf(params[1]);
+		int entries=Integer.parseInt(params[2]);
+		pairs=new ArrayList<Entry<Integer,Integer>>(entries);
+		Random random=new Random(19);
+		for(int i=0;i<entries;i++) {
+			pairs.add(new MyHeapEntry<Integer,Integer>(random.nextInt(),i));
+		}
+	}
+
+	public void reset() {
+	}
+
+	public long run() {
+		MyHeap<Integer,Integer> heap=new MyHeap<Integer,Integer>(COMPARE,layout);
+		heap.insertAll(pairs,pool);
+		return heap.min().getKey();
+	}
+}
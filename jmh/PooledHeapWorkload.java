@@ -0,0 +1,56 @@
+import java.util.Comparator;
+import java.util.Random;
+
+import net.datastructures.Entry;
+
+import heapbench.Workload;
+
+/**
+ * The steady state of an array MyHeap, with and without entry pooling,
+ * for heapbench.PooledHeapBenchmark: each run() is a removeMin, whose
+ * entry is released straight back to the heap, and an insert. Keys are
+ * boxed up front and reused as a ring, so that only the heap's own
+ * allocation is counted.
+ *
+ * Parameters: pooled (true or false), size.
+ */
+
+public class PooledHeapWorkload implements Workload {
+
+	//keys are drawn up front and reused in a ring of this many
+	private static final int KEYS=1<<20;
+	private static final Comparator<Long> COMPARE=new Comparator<Long>() {
+		public int compare(Long a, Long b) {
+			return a.compareTo(b);
+		}
+	};
+
+	private final Long[] keys=new Long[KEYS];
+	private final String value="v";
+	private MyHeap<Long,String> heap;
+	private int step;
+
+	public void setup(String... params) {
+		Random random=new Random(23);
+		for(int i=0;i<keys.length;i++) {
+			keys[i]=random.nextLong();
+		}
+		heap=new MyHeap<Long,String>(COMPARE,MyHeap.Layout.ARRAY);
+		heap.setPooled(Boolean.parseBoolean(params[0]));
+		int size=Integer.parseInt(params[1]);
+		for(step=0;step<size;step++) {
+			heap.insert(keys[step&(KEYS-1)],value);
+		}
+	}
+
+	public void reset() {
+	}
+
+	public long run() {
+		Entry<Long,String> min=heap.removeMin();
+		long key=min.getKey();
+		heap.release(min);
+		heap.insert(keys[step++&(KEYS-1)],value);
+		return key;
+	}
+}
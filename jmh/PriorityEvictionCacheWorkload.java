@@ -0,0 +1,112 @@
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Random;
+
+import net.datastructures.Entry;
+
+import heapbench.Counted;
+import heapbench.Workload;
+
+/**
+ * One read of a skewed key, for heapbench.PriorityEvictionCacheBenchmark,
+ * down one of four paths:
+ * 	HASHMAP     a plain HashMap get, the floor for a hit
+ * 	CACHE       a PriorityEvictionCache hit
+ * 	REPLACEKEY  the hand-rolled LFU the cache replaces, which calls
+ * 	            replaceKey on every hit
+ * 	READTHROUGH a cache holding half the keys, so misses load and evict
+ * The keys are drawn and boxed in setup and reused as a ring.
+ *
+ * Parameters: path, entries. Counts: "reads", "misses" and "evictions"
+ * since setup.
+ */
+
+public class PriorityEvictionCacheWorkload implements Workload, Counted {
+
+	//reads are drawn up front and reused in a ring of this many
+	private static final int READS=1<<22;
+	private static final Comparator<Long> COMPARE=new Comparator<Long>() {
+		public int compare(Long a, Long b) {
+			return a.compareTo(b);
+		}
+	};
+
+	private String path;
+	private final Integer[] keys=new Integer[READS];
+	private HashMap<Integer,Integer> map;
+	private PriorityEvictionCache<Integer,Integer> cache;
+	private HashMap<Integer,Entry<Long,Integer>> handles;
+	private MyHeap<Long,Integer> heap;
+	private long reads;
+	private long misses;
+
+	public void setup(String... params) {
+		path=params[0];
+		int entries=Integer.parseInt(params[1]);
+		Random random=new Random(22);
+		for(int i=0;i<READS;i++) {
+			//squaring a uniform pick skews reads towards the low keys
+			double pick=random.nextDouble();
+			keys[i]=(int) (pick*pick*entries);
+		}
+		if(path.equals("HASHMAP")) {
+			map=new HashMap<Integer,Integer>();
+		}
+		else if(path.equals("REPLACEKEY")) {
+			handles=new HashMap<Integer,Entry<Long,Integer>>();
+			heap=new MyHeap<Long,Integer>(COMPARE,MyHeap.Layout.ARRAY);
+		}
+		else {
+			cache=new PriorityEvictionCache<Integer,Integer>(path.equals("READTHROUGH") ? entries/2 : entries,
+					PriorityEvictionCache.<Integer,Integer>lfu());
+		}
+		if(!path.equals("READTHROUGH")) {
+			for(int i=0;i<entries;i++) {
+				if(map!=null) {
+					map.put(i,i);
+				}
+				else if(heap!=null) {
+					handles.put(i,heap.insert(1L,i));
+				}
+				else {
+					cache.put(i,i);
+				}
+			}
+		}
+	}
+
+	public void reset() {
+	}
+
+	public long run() {
+		Integer key=keys[(int) (reads++&(READS-1))];
+		if(map!=null) {
+			return map.get(key);
+		}
+		if(heap!=null) {
+			Entry<Long,Integer> handle=handles.get(key);
+			heap.replaceKey(handle,handle.getKey()+1);
+			return handle.getValue();
+		}
+		Integer value=cache.get(key);
+		if(value==null) {
+			cache.put(key,key);
+			misses++;
+			return 0;
+		}
+		return value;
+	}
+
+	public long count(String name) throws IllegalArgumentException {
+		if(name.equals("reads")) {
+			return reads;
+		}
+		if(name.equals("misses")) {
+			return misses;
+		}
+		if(name.equals("evictions")) {
+			return cache==null ? 0 : cache.evictions();
+		}
+		throw new IllegalArgumentException("No count named "+name+".");
+	}
+}
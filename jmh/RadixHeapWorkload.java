@@ -0,0 +1,82 @@
+import java.util.Comparator;
+import java.util.Random;
+
+import heapbench.Workload;
+
+/**
+ * A discrete-event trace, for heapbench.RadixHeapBenchmark. The
+ * simulation holds a fixed number of pending events; each run() pops the
+ * next event, advances the clock to it, and schedules a replacement an
+ * exponentially distributed delay later, which is the classic hold model
+ * for event simulators.
+ *
+ * Parameters: heap (MYHEAP for the array layout with boxed Long keys,
+ * LONGKEY or RADIX), events.
+ */
+
+public class RadixHeapWorkload implements Workload {
+
+	//delays are drawn up front and reused in a ring of this many
+	private static final int DELAYS=1<<22;
+	private static final Comparator<Long> COMPARE=new Comparator<Long>() {
+		public int compare(Long a, Long b) {
+			return a.compareTo(b);
+		}
+	};
+
+	private final long[] delays=new long[DELAYS];
+	private MyHeap<Long,Object> myHeap;
+	private LongKeyHeap<Object> longKeyHeap;
+	private RadixHeap<Object> radixHeap;
+	private int step;
+
+	public void setup(String... params) {
+		int events=Integer.parseInt(params[1]);
+		Random random=new Random(11);
+		for(int i=0;i<delays.length;i++) {
+			//mean delay of 1ms in nanoseconds
+			delays[i]=(long) (-Math.log(1-random.nextDouble())*1000000);
+		}
+		if(params[0].equals("MYHEAP")) {
+			myHeap=new MyHeap<Long,Object>(COMPARE,MyHeap.Layout.ARRAY);
+		}
+		else if(params[0].equals("LONGKEY")) {
+			longKeyHeap=new LongKeyHeap<Object>(events);
+		}
+		else {
+			radixHeap=new RadixHeap<Object>();
+		}
+		for(step=0;step<events;step++) {
+			if(myHeap!=null) {
+				myHeap.insert(delays[step],null);
+			}
+			else if(longKeyHeap!=null) {
+				longKeyHeap.insert(delays[step],null);
+			}
+			else {
+				radixHeap.insert(delays[step],null);
+			}
+		}
+	}
+
+	public void reset() {
+	}
+
+	public long run() {
+		long delay=delays[step++&(DELAYS-1)];
+		long now;
+		if(myHeap!=null) {
+			now=myHeap.removeMin().getKey();
+			myHeap.insert(now+delay,null);
+		}
+		else if(longKeyHeap!=null) {
+			now=longKeyHeap.removeMin().longKey();
+			longKeyHeap.insert(now+delay,null);
+		}
+		else {
+			now=radixHeap.removeMin().longKey();
+			radixHeap.insert(now+delay,null);
+		}
+		return now;
+	}
+}
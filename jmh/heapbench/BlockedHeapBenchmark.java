@@ -0,0 +1,79 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The array layout against the blocked one, per removeMin+insert, with
+ * the modelled slots, pages and lines of an average root-to-leaf path
+ * reported next to the time. See BlockedHeapWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+public class BlockedHeapBenchmark {
+
+	@Param({"1000000"})
+	public int size;
+
+	@Param({"ARRAY", "BLOCKED"})
+	public String layout;
+
+	private Workload workload;
+	private Counted counts;
+
+	/**
+	 * The path model, averaged over the sampled paths. JMH reads it once at
+	 * the end of each iteration.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Path {
+		private Counted counts;
+
+		public double pathSlots() {
+			return average("slots");
+		}
+
+		public double pathPages() {
+			return average("pages");
+		}
+
+		public double pathLines() {
+			return average("lines");
+		}
+
+		private double average(String name) {
+			return counts==null ? 0 : (double) counts.count(name)/counts.count("paths");
+		}
+	}
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("BlockedHeapWorkload");
+		workload.setup(layout,Integer.toString(size));
+		counts=(Counted) workload;
+	}
+
+	@Benchmark
+	public long hold(Path path) {
+		//a plain store; JMH cannot inject this state into Path without making a second one
+		path.counts=counts;
+		return workload.run();
+	}
+}
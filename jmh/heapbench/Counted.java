@@ -0,0 +1,16 @@
+package heapbench;
+
+/**
+ * A workload that tallies figures other than time, such as how far a
+ * relaxed queue strays from the true minimum, for its benchmark to
+ * report alongside the timing through JMH's @AuxCounters.
+ */
+public interface Counted {
+
+	/**
+	 * @param name one of the figures the workload documents
+	 * @return that figure for the last run()
+	 * @throws IllegalArgumentException if the workload keeps no such figure
+	 */
+	long count(String name) throws IllegalArgumentException;
+}
@@ -0,0 +1,49 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ConcurrentAdaptableHeap against a MyHeap behind one ReentrantLock, with
+ * every benchmark thread sharing the heap. Set the thread count with -t.
+ * Scores are per heap operation. See FlatCombiningWorkload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@Threads(4)
+public class FlatCombiningBenchmark {
+
+	@Param({"LOCKED", "COMBINING"})
+	public String heap;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("FlatCombiningWorkload");
+		workload.setup(heap);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(4)
+	public long insertsThenRemoves() {
+		return workload.run();
+	}
+}
@@ -0,0 +1,70 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Timer lateness of HeapScheduler with many timers pending. The time of
+ * each operation is mostly the three seconds the sampled timers are
+ * spread over; the figures that matter are the lateness percentiles and
+ * timer wakeups reported next to it. See HeapSchedulerWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=1)
+@Measurement(iterations=3)
+@Fork(value=1, jvmArgsAppend="-Xmx3g")
+public class HeapSchedulerBenchmark {
+
+	@Param({"1000000"})
+	public int pending;
+
+	@Param({"2000"})
+	public int sampled;
+
+	private Workload workload;
+
+	/**
+	 * The figures reported next to the time of each sample, lateness in microseconds.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Lateness {
+		public double latenessP50;
+		public double latenessP99;
+		public double latenessP999;
+		public double latenessMax;
+		public long wakeups;
+	}
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("HeapSchedulerWorkload");
+		workload.setup(Integer.toString(pending),Integer.toString(sampled));
+	}
+
+	@Benchmark
+	public long sample(Lateness lateness) {
+		long max=workload.run();
+		Counted counts=(Counted) workload;
+		lateness.latenessP50=counts.count("p50")/1e3;
+		lateness.latenessP99=counts.count("p99")/1e3;
+		lateness.latenessP999=counts.count("p999")/1e3;
+		lateness.latenessMax=counts.count("max")/1e3;
+		lateness.wakeups=counts.count("wakeups");
+		return max;
+	}
+}
@@ -0,0 +1,50 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving and loading a whole MyHeap with HeapSnapshot, against building
+ * it again one insert at a time. See HeapSnapshotWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+public class HeapSnapshotBenchmark {
+
+	@Param({"1000000", "10000000"})
+	public int entries;
+
+	@Param({"SAVE", "LOAD", "INSERT"})
+	public String op;
+
+	@Param({"ARRAY", "LINKED", "BLOCKED"})
+	public String layout;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("HeapSnapshotWorkload");
+		workload.setup(op,layout,Integer.toString(entries));
+	}
+
+	@Benchmark
+	public long whole() {
+		return workload.run();
+	}
+}
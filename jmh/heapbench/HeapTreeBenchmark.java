@@ -0,0 +1,47 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MyLinkedHeapTree and MyArrayHeapTree on their own: each operation
+ * adds size elements and removes them again. See HeapTreeWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+public class HeapTreeBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000", "10000000"})
+	public int size;
+
+	@Param({"LINKED", "ARRAY"})
+	public String tree;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("HeapTreeWorkload");
+		workload.setup(tree,Integer.toString(size));
+	}
+
+	@Benchmark
+	public long addRemove() {
+		return workload.run();
+	}
+}
@@ -0,0 +1,50 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A Comparator over heavy keys against an extracted long key, one heap
+ * update per operation. See KeyExtractorWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Xmx3g")
+public class KeyExtractorBenchmark {
+
+	@Param({"1000000"})
+	public int size;
+
+	@Param({"COMPARATOR", "EXTRACTOR"})
+	public String order;
+
+	@Param({"ARRAY", "LINKED", "BLOCKED"})
+	public String layout;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("KeyExtractorWorkload");
+		workload.setup(order,layout,Integer.toString(size));
+	}
+
+	@Benchmark
+	public long update() {
+		return workload.run();
+	}
+}
@@ -0,0 +1,61 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Consolidating many small heaps into one, by meld and by reinserting
+ * every entry, in each layout. Each operation is one whole consolidation;
+ * the small heaps are filled again before each, outside the timing, but
+ * the gc profiler counts that refill too. See MeldWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+public class MeldBenchmark {
+
+	@Param({"1000"})
+	public int heaps;
+
+	@Param({"1000"})
+	public int perHeap;
+
+	@Param({"MELD", "REINSERT"})
+	public String method;
+
+	@Param({"ARRAY", "LINKED", "BLOCKED"})
+	public String layout;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("MeldWorkload");
+		workload.setup(method,layout,Integer.toString(heaps),Integer.toString(perHeap));
+	}
+
+	@Setup(Level.Invocation)
+	public void reset() {
+		workload.reset();
+	}
+
+	@Benchmark
+	public long consolidate() {
+		return workload.run();
+	}
+}
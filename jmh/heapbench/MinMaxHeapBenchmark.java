@@ -0,0 +1,48 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MinMaxHeap against two cross-linked MyHeaps as a full admission queue
+ * that serves from one end and sheds from the other, one queue step per
+ * operation. See MinMaxHeapWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Xmx2g")
+public class MinMaxHeapBenchmark {
+
+	@Param({"1000", "1000000"})
+	public int capacity;
+
+	@Param({"MINMAX", "DUAL"})
+	public String queue;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("MinMaxHeapWorkload");
+		workload.setup(queue,Integer.toString(capacity));
+	}
+
+	@Benchmark
+	public long step() {
+		return workload.run();
+	}
+}
@@ -0,0 +1,50 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Throughput of MultiQueueHeap against a single MyHeap behind one global
+ * lock, in the hold model, with every benchmark thread sharing the queue.
+ * Set the thread count with -t; the MultiQueueHeap gets two shards per
+ * thread. See MultiQueueWorkload, and MultiQueueRankBenchmark for how far
+ * the relaxed queue strays from the true minimum.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@Threads(4)
+public class MultiQueueBenchmark {
+
+	@Param({"LOCKED", "MULTIQUEUE"})
+	public String queue;
+
+	private Workload workload;
+
+	@Setup
+	public void setup(BenchmarkParams params) {
+		workload=Workloads.load("MultiQueueWorkload");
+		workload.setup(queue,Integer.toString(params.getThreads()));
+	}
+
+	@Benchmark
+	public long hold() {
+		return workload.run();
+	}
+}
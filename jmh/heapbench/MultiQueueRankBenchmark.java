@@ -0,0 +1,68 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The rank error of MultiQueueHeap: how many smaller keys were still in
+ * the queue, on average and at most, when each key was removed by a
+ * concurrent drain of the keys 0..n-1. The drain runs on its own worker
+ * threads, so run this with a single benchmark thread. The time is that
+ * of the whole drain. See MultiQueueRankWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3)
+@Measurement(iterations=5)
+@Fork(1)
+public class MultiQueueRankBenchmark {
+
+	@Param({"1", "2", "4", "8", "16", "32", "64"})
+	public int threads;
+
+	private Workload workload;
+
+	/**
+	 * The figures reported next to the time of each drain.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class RankError {
+		public double meanRankError;
+		public long maxRankError;
+	}
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("MultiQueueRankWorkload");
+		workload.setup(Integer.toString(threads));
+	}
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		workload.reset();
+	}
+
+	@Benchmark
+	public long drain(RankError error) {
+		long total=workload.run();
+		Counted counts=(Counted) workload;
+		error.meanRankError=(double) total/counts.count("removals");
+		error.maxRankError=counts.count("max");
+		return total;
+	}
+}
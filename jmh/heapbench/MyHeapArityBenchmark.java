@@ -0,0 +1,52 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Binary, 4-ary and 8-ary array heaps on an insert heavy and a removeMin
+ * heavy mix; each operation is one pass that builds the heap to its size.
+ * The crossover is the smallest size at which arity 4 beats arity 2 on
+ * the removeMin heavy mix. See MyHeapArityWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+public class MyHeapArityBenchmark {
+
+	@Param({"1024", "16384", "262144", "4194304"})
+	public int size;
+
+	@Param({"INSERT_HEAVY", "REMOVEMIN_HEAVY"})
+	public String mix;
+
+	@Param({"2", "4", "8"})
+	public int arity;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("MyHeapArityWorkload");
+		workload.setup(Integer.toString(arity),mix,Integer.toString(size));
+	}
+
+	@Benchmark
+	public long pass() {
+		return workload.run();
+	}
+}
@@ -0,0 +1,53 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MyHeap in the hold model: the heap stays at its size while each
+ * operation is a removeMin followed by an insert of a slightly larger
+ * key. This is the steady state, so the gc profiler's
+ * gc.alloc.rate.norm is what one removeMin+insert allocates.
+ * See MyHeapWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+public class MyHeapBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000", "10000000"})
+	public int size;
+
+	@Param({"RANDOM", "ASCENDING", "DESCENDING", "DUPLICATES"})
+	public String keys;
+
+	@Param({"ARRAY", "LINKED", "BLOCKED"})
+	public String layout;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("MyHeapWorkload");
+		workload.setup(layout,"HOLD",keys,Integer.toString(size));
+	}
+
+	@Benchmark
+	public long hold() {
+		return workload.run();
+	}
+}
@@ -0,0 +1,63 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MyHeap under the operation mixes that use the heap up: Dijkstra-style
+ * decrease-key, a plain drain, and cancelling most entries before the
+ * drain, eagerly or lazily. Each operation is one whole pass over the
+ * heap, and the heap is loaded again before each, outside the timing.
+ * JMH's gc profiler counts the whole iteration, so for every mix but
+ * DRAIN the allocation figure includes that reload. See MyHeapWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Xmx4g")
+public class MyHeapMixBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000", "10000000"})
+	public int size;
+
+	@Param({"RANDOM", "ASCENDING", "DESCENDING", "DUPLICATES"})
+	public String keys;
+
+	@Param({"DIJKSTRA", "DRAIN", "CANCEL", "LAZYCANCEL"})
+	public String mix;
+
+	@Param({"ARRAY", "LINKED", "BLOCKED"})
+	public String layout;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("MyHeapWorkload");
+		workload.setup(layout,mix,keys,Integer.toString(size));
+	}
+
+	@Setup(Level.Invocation)
+	public void reset() {
+		workload.reset();
+	}
+
+	@Benchmark
+	public long pass() {
+		return workload.run();
+	}
+}
@@ -0,0 +1,52 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scaling of MyHeap's parallel bottom-up build against the sequential
+ * one (threads=0), one whole insertAll per operation. Thread counts past
+ * the machine's cores show the cost of oversubscribing it.
+ * See ParallelHeapifyWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgsAppend="-Xmx8g")
+public class ParallelHeapifyBenchmark {
+
+	@Param({"10000000"})
+	public int entries;
+
+	@Param({"0", "1", "2", "4", "8", "16"})
+	public int threads;
+
+	@Param({"ARRAY", "LINKED", "BLOCKED"})
+	public String layout;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("ParallelHeapifyWorkload");
+		workload.setup(Integer.toString(threads),layout,Integer.toString(entries));
+	}
+
+	@Benchmark
+	public long insertAll() {
+		return workload.run();
+	}
+}
@@ -0,0 +1,48 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What MyHeap allocates per removeMin+insert in a steady state, with and
+ * without entry pooling. With pooling, gc.alloc.rate.norm should be 0
+ * B/op. See PooledHeapWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class PooledHeapBenchmark {
+
+	@Param({"1000", "100000"})
+	public int size;
+
+	@Param({"false", "true"})
+	public boolean pooled;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("PooledHeapWorkload");
+		workload.setup(Boolean.toString(pooled),Integer.toString(size));
+	}
+
+	@Benchmark
+	public long removeMinInsert() {
+		return workload.run();
+	}
+}
@@ -0,0 +1,73 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The hit path of PriorityEvictionCache against a HashMap get and against
+ * a replaceKey per hit, and a read-through where misses load and evict;
+ * one read per operation. The miss rate is reported next to the time.
+ * See PriorityEvictionCacheWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(value=1, jvmArgsAppend="-Xmx2g")
+public class PriorityEvictionCacheBenchmark {
+
+	@Param({"100000"})
+	public int entries;
+
+	@Param({"HASHMAP", "CACHE", "REPLACEKEY", "READTHROUGH"})
+	public String path;
+
+	private Workload workload;
+	private Counted counts;
+
+	/**
+	 * The share of reads that missed, in percent, and the evictions so far.
+	 * JMH reads them once at the end of each iteration, so working them out
+	 * costs the reads nothing.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Misses {
+		private Counted counts;
+
+		public double missPercent() {
+			return counts==null ? 0 : 100.0*counts.count("misses")/Math.max(1,counts.count("reads"));
+		}
+
+		public long evictions() {
+			return counts==null ? 0 : counts.count("evictions");
+		}
+	}
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("PriorityEvictionCacheWorkload");
+		workload.setup(path,Integer.toString(entries));
+		counts=(Counted) workload;
+	}
+
+	@Benchmark
+	public long read(Misses misses) {
+		//a plain store; JMH cannot inject this state into Misses without making a second one
+		misses.counts=counts;
+		return workload.run();
+	}
+}
@@ -0,0 +1,47 @@
+package heapbench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RadixHeap against MyHeap and LongKeyHeap on a discrete-event trace,
+ * one simulation step per operation. See RadixHeapWorkload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=3, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class RadixHeapBenchmark {
+
+	@Param({"1024", "1048576"})
+	public int events;
+
+	@Param({"MYHEAP", "LONGKEY", "RADIX"})
+	public String heap;
+
+	private Workload workload;
+
+	@Setup
+	public void setup() {
+		workload=Workloads.load("RadixHeapWorkload");
+		workload.setup(heap,Integer.toString(events));
+	}
+
+	@Benchmark
+	public long step() {
+		return workload.run();
+	}
+}
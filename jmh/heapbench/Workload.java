@@ -0,0 +1,35 @@
+package heapbench;
+
+/**
+ * One benchmark case, seen from the JMH side. JMH will not generate code
+ * for benchmarks in the default package, and a named package cannot
+ * import the heaps, which live in the default package. So each benchmark
+ * here loads its workload by class name through Workloads.load, and the
+ * workload classes sit in the default package of the jmh source set,
+ * where they can use the heaps directly.
+ *
+ * The benchmark calls setup() once per trial, reset() before each
+ * invocation if it consumes its state, and run() as the measured work.
+ */
+public interface Workload {
+
+	/**
+	 * Builds the workload from the benchmark's parameters. Not measured.
+	 *
+	 * @param params the benchmark's @Param values, in the order the workload documents
+	 */
+	void setup(String... params);
+
+	/**
+	 * Brings the state back to where run() expects it, for workloads that
+	 * use it up. Not measured.
+	 */
+	void reset();
+
+	/**
+	 * Does the measured work once.
+	 *
+	 * @return a value computed from the work, for the benchmark to return so it is not optimized away
+	 */
+	long run();
+}
@@ -0,0 +1,24 @@
+package heapbench;
+
+/**
+ * Loads the default-package workload classes for the benchmarks; see Workload.
+ */
+public final class Workloads {
+
+	private Workloads() {
+	}
+
+	/**
+	 * @param name the workload's class name, in the default package
+	 * @return a new instance of the workload
+	 * @throws IllegalStateException if the class is missing or cannot be built
+	 */
+	public static Workload load(String name) throws IllegalStateException {
+		try {
+			return (Workload) Class.forName(name).getDeclaredConstructor().newInstance();
+		}
+		catch(ReflectiveOperationException e) {
+			throw new IllegalStateException("Cannot load workload "+name+".",e);
+		}
+	}
+}